@@ -5,6 +5,8 @@ import market.*;
 import util.*;
 import account.*;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -15,8 +17,8 @@ public class Main {
 
     public static void main(String[] args) {
         try {
-            // Initialize
-            DatabaseConfig.getConnection();
+            // Initialize, failing fast if MySQL is unreachable
+            DatabaseConfig.getConnection().close();
             marketPlace = new MarketPlace();
           //  IndexUsageCheck.check();
             System.out.println("\n+-----------------------------------------------------------+");
@@ -32,10 +34,13 @@ public class Main {
                 }
             }
 
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             System.out.println(e.getMessage());
             e.printStackTrace();
         } finally {
+            if (marketPlace != null) {
+                marketPlace.shutdown();
+            }
             DatabaseConfig.closeConnection();
         }
     }
@@ -58,6 +63,7 @@ public class Main {
             case 3 -> resetDatabase();
             case 0 -> {
                 System.out.println("Exiting!");
+                marketPlace.shutdown();
                 System.exit(0);
             }
         }
@@ -137,21 +143,25 @@ public class Main {
         }
 
 
-        double initialBalance = 1000 + Math.random() * 4000;
+        long initialBalance = 100_000 + (long) (Math.random() * 400_000);   // paise
         marketPlace.getTradingAccountDAO().createTradingAccount(user.getUserId(), initialBalance);
         System.out.println("\n+---------------------------------------+");
         System.out.println("+        REGISTRATION SUCCESSFUL        +");
         System.out.println("+---------------------------------------+");
         System.out.printf("+  User ID       : %-20d +%n", user.getUserId());
         System.out.printf("+  Username      : %-20s +%n", user.getUserName());
-        System.out.printf("+  Initial Balance: Rs.%-16.2f +%n", initialBalance);
+        System.out.printf("+  Initial Balance: Rs.%-16s +%n", Money.format(initialBalance));
         System.out.println("+---------------------------------------+");
 
     }
 
     private static void resetDatabase() throws SQLException {
         if (InputHandler.getYesNo("Sure you want to reset the database? Y to confirm")) {
-            DatabaseConfig.resetDatabase();
+            try {
+                marketPlace.resetDatabase();
+            } catch (IOException e) {
+                System.out.println("Failed to reset the journal: " + e.getMessage());
+            }
         }
     }
 
@@ -172,6 +182,9 @@ public class Main {
         System.out.println("+ 11. View Portfolio                                        +");
         System.out.println("+ 12. View Available Stocks                                 +");
         System.out.println("+ 13. Delete My account                                     +");
+        System.out.println("+ 14. Cancel All My Orders                                  +");
+        System.out.println("+ 15. Place STOP Order                                      +");
+        System.out.println("+ 16. Export My Transactions (CSV)                          +");
         System.out.println("+  0. Logout                                                +");
         System.out.println("+-----------------------------------------------------------+");
 
@@ -183,24 +196,51 @@ public class Main {
             case 4 -> modifyOrder();
             case 5 -> cancelOrder();
             case 6 -> viewOrderBook();
-            case 7 -> marketPlace.showTransactions(currentUser.getUserId());
-            case 8 -> marketPlace.showAllTransactions();
+            case 7 -> showTransactions();
+            case 8 -> showAllTransactions();
             case 9 -> marketPlace.showBalance(currentUser.getUserId());
             case 10 -> addBalance();
             case 11 -> marketPlace.showPortfolio(currentUser.getUserId());
             case 12 -> showAvailableStocks();
             case 13 -> deleteAccount(currentUser.getUserId());
+            case 14 -> cancelAllOrders();
+            case 15 -> placeStopOrder();
+            case 16 -> exportTransactions();
             case 0 -> logout();
         }
     }
 
+    private static void showTransactions() throws SQLException {
+        String token = marketPlace.showTransactions(currentUser.getUserId(), null);
+        while (token != null && InputHandler.getYesNo("Show older transactions? Y for the next page")) {
+            token = marketPlace.showTransactions(currentUser.getUserId(), token);
+        }
+    }
+
+    private static void showAllTransactions() throws SQLException {
+        String token = marketPlace.showAllTransactions(null);
+        while (token != null && InputHandler.getYesNo("Show older transactions? Y for the next page")) {
+            token = marketPlace.showAllTransactions(token);
+        }
+    }
+
+    private static void exportTransactions() throws SQLException {
+        String file = InputHandler.getString("Export to file (e.g. trades.csv): ");
+        try {
+            int rows = marketPlace.exportTransactions(currentUser.getUserId(), Paths.get(file));
+            System.out.println(rows + " transaction(s) written to " + file);
+        } catch (IOException e) {
+            System.out.println("Export failed: " + e.getMessage());
+        }
+    }
+
     private static void placeBuyOrder() throws SQLException {
         System.out.println("\n--- PLACE BUY ORDER ---");
         showAvailableStocks();
 
         String stockName = InputHandler.getString("Enter Stock Name: ").toUpperCase();
         int quantity = InputHandler.getPositiveInteger("Enter Quantity: ");
-        double price = InputHandler.getPositiveDouble("Enter Price per share: Rs.");
+        long price = InputHandler.getPositiveAmount("Enter Price per share: Rs.");
         marketPlace.placeBuyOrder(currentUser.getUserId(), stockName, quantity, price);
     }
 
@@ -210,17 +250,32 @@ public class Main {
 
         String stockName = InputHandler.getString("Enter Stock Name: ").toUpperCase();
         int quantity = InputHandler.getPositiveInteger("Enter Quantity: ");
-        double price = InputHandler.getPositiveDouble("Enter Price per share: Rs.");
+        long price = InputHandler.getPositiveAmount("Enter Price per share: Rs.");
         marketPlace.placeSellOrder(currentUser.getUserId(), stockName, quantity, price);
     }
 
+    private static void placeStopOrder() throws SQLException {
+        System.out.println("\n--- PLACE STOP ORDER ---");
+        showAvailableStocks();
+
+        boolean isBuy = InputHandler.getYesNo("Buy stop? Y for BUY, N for SELL");
+        String stockName = InputHandler.getString("Enter Stock Name: ").toUpperCase();
+        int quantity = InputHandler.getPositiveInteger("Enter Quantity: ");
+        long trigger = InputHandler.getPositiveAmount("Enter Trigger Price: Rs.");
+        long limit = 0;
+        if (isBuy || !InputHandler.getYesNo("Stop-loss at market? Y for market, N to give a limit")) {
+            limit = InputHandler.getPositiveAmount("Enter Limit Price: Rs.");
+        }
+        marketPlace.placeStopOrder(currentUser.getUserId(), stockName, isBuy, quantity, trigger, limit);
+    }
+
     private static void modifyOrder() throws SQLException {
         System.out.println("\n--- MODIFY ORDER ---");
         marketPlace.showUserOrders(currentUser.getUserId());
 
         int orderId = InputHandler.getPositiveInteger("Enter Order ID to modify: ");
         int newQuantity = InputHandler.getPositiveInteger("Enter New Quantity: ");
-        double newPrice = InputHandler.getPositiveDouble("Enter New Price: Rs.");
+        long newPrice = InputHandler.getPositiveAmount("Enter New Price: Rs.");
         marketPlace.modifyOrder(currentUser.getUserId(), orderId, newQuantity, newPrice);
     }
 
@@ -246,28 +301,26 @@ public class Main {
         System.out.println("\n--- ADD BALANCE ---");
         marketPlace.showBalance(currentUser.getUserId());
 
-        double amount = InputHandler.getPositiveDouble("Enter amount to add: Rs.");
+        long amount = InputHandler.getPositiveAmount("Enter amount to add: Rs.");
         marketPlace.addBalance(currentUser.getUserId(), amount);
         marketPlace.showBalance(currentUser.getUserId());
     }
 
-    private static void showAvailableStocks() throws SQLException {
-        List<Stock> stocks = marketPlace.getStockDAO().listAllStocks();
-        System.out.println("\n+---------------------------------------+");
-        System.out.println("+         AVAILABLE STOCKS              +");
-        System.out.println("+---------------------------------------+");
-        for (Stock stock : stocks) {
-            System.out.printf("+   • %-33s +%n", stock.getStockName());
-        }
+    private static void showAvailableStocks() {
+        marketPlace.showAvailableStocks();
+    }
 
-        System.out.println("+---------------------------------------+");
+    private static void cancelAllOrders() throws SQLException {
+        System.out.println("\n--- CANCEL ALL ORDERS ---");
+        if (InputHandler.getYesNo("Cancel every open order? Y to confirm")) {
+            marketPlace.cancelAll(currentUser.getUserId());
+        }
     }
 
     private static void deleteAccount(int userId) throws SQLException {
         if (InputHandler.getYesNo("Sure you want to delete account? Trading account will also also deleted Y to confirm")) {
 
-            UserDAO userDAO= marketPlace.getUserDAO();
-            if(userDAO.deleteUser(userId)){
+            if(marketPlace.deleteUser(userId)){
                 System.out.println("UserId : "+ userId + ", account deleted!");
                 System.out.println("Demat account holdings are preserved!");
                 showLoginMenu();
@@ -1,10 +1,13 @@
 package account;
 
+import util.Money;
+
 public class TradingAccount {
     private int tradingAccountId;
     private int userId;
-    private double balance;
-    private double reservedBalance;
+    // paise
+    private long balance;
+    private long reservedBalance;
 
     public TradingAccount() {}
 
@@ -14,23 +17,23 @@ public class TradingAccount {
     public int getUserId() { return userId; }
     public void setUserId(int userId) { this.userId = userId; }
 
-    public double getBalance() { return balance; }
-    public void setBalance(double balance) { this.balance = balance; }
+    public long getBalance() { return balance; }
+    public void setBalance(long balance) { this.balance = balance; }
 
-    public double getReservedBalance() { return reservedBalance; }
-    public void setReservedBalance(double reservedBalance) { this.reservedBalance = reservedBalance; }
+    public long getReservedBalance() { return reservedBalance; }
+    public void setReservedBalance(long reservedBalance) { this.reservedBalance = reservedBalance; }
 
-    public double getAvailableBalance() {
+    public long getAvailableBalance() {
         return balance;
     }
 
-    public double getTotalBalance() {
+    public long getTotalBalance() {
         return balance + reservedBalance;
     }
 
     @Override
     public String toString() {
-        return String.format("Trading Account: Available=Rs.%.2f, Reserved=Rs.%.2f, Total=Rs.%.2f",
-                balance, reservedBalance, getTotalBalance());
+        return String.format("Trading Account: Available=Rs.%s, Reserved=Rs.%s, Total=Rs.%s",
+                Money.format(balance), Money.format(reservedBalance), Money.format(getTotalBalance()));
     }
 }
\ No newline at end of file
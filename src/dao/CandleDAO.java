@@ -0,0 +1,106 @@
+package dao;
+
+import dbOperations.*;
+import market.Candle;
+import util.Money;
+
+import java.sql.*;
+import java.util.*;
+
+// pre-aggregated OHLCV bars, one row per stock, interval and bar start
+public class CandleDAO {
+
+    private static String tableName = "candles";
+
+    public void createTableIfMissing() throws SQLException {
+        try (Connection con = DbHelper.getConnection();
+             Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + tableName + " ("
+                    + "stock_id INT NOT NULL, "
+                    + "interval_sec INT NOT NULL, "
+                    + "start_time BIGINT NOT NULL, "
+                    + "open DECIMAL(12,2) NOT NULL, "
+                    + "high DECIMAL(12,2) NOT NULL, "
+                    + "low DECIMAL(12,2) NOT NULL, "
+                    + "close DECIMAL(12,2) NOT NULL, "
+                    + "volume BIGINT NOT NULL, "
+                    + "turnover DECIMAL(20,2) NOT NULL, "
+                    + "trades INT NOT NULL, "
+                    + "missed_trades BOOLEAN NOT NULL DEFAULT FALSE, "
+                    + "PRIMARY KEY (stock_id, interval_sec, start_time))");
+        }
+        String sql = "SELECT column_name FROM information_schema.columns"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND column_name = 'missed_trades'";
+        if (SelectOperation.query(sql, col -> rs -> rs.getString(1), tableName).isEmpty()) {
+            try (Connection con = DbHelper.getConnection();
+                 Statement st = con.createStatement()) {
+                st.execute("ALTER TABLE " + tableName
+                        + " ADD COLUMN missed_trades BOOLEAN NOT NULL DEFAULT FALSE");
+            }
+        }
+    }
+
+    // writes bars with multi-row upserts. A bar already in the table (written at shutdown
+    // while still open) is merged with the new part rather than replaced.
+    public void saveAll(Collection<Candle> candles) throws SQLException {
+        List<Condition> rows = new ArrayList<>();
+        for (Candle c : candles) {
+            Condition row = new Condition();
+            row.add("stock_id", c.getStockId());
+            row.add("interval_sec", c.getInterval().getSeconds());
+            row.add("start_time", c.getStartTime());
+            row.add("open", Money.toDecimal(c.getOpen()));
+            row.add("high", Money.toDecimal(c.getHigh()));
+            row.add("low", Money.toDecimal(c.getLow()));
+            row.add("close", Money.toDecimal(c.getClose()));
+            row.add("volume", c.getVolume());
+            row.add("turnover", Money.toDecimal(c.getTurnover()));
+            row.add("trades", c.getTrades());
+            row.add("missed_trades", c.hasMissedTrades());
+            rows.add(row);
+        }
+        Condition onDuplicate = new Condition();
+        onDuplicate.addExpression("high", "GREATEST(high, VALUES(high))");
+        onDuplicate.addExpression("low", "LEAST(low, VALUES(low))");
+        onDuplicate.addExpression("close", "VALUES(close)");
+        onDuplicate.addExpression("volume", "volume + VALUES(volume)");
+        onDuplicate.addExpression("turnover", "turnover + VALUES(turnover)");
+        onDuplicate.addExpression("trades", "trades + VALUES(trades)");
+        onDuplicate.addExpression("missed_trades", "missed_trades OR VALUES(missed_trades)");
+        InsertOperation.upsertAll(tableName, rows, onDuplicate);
+    }
+
+    // latest bars of a stock, newest first
+    public List<Candle> findLatest(int stockId, Candle.Interval interval, int limit) throws SQLException {
+        Condition where = new Condition();
+        where.add("stock_id", stockId);
+        where.add("interval_sec", interval.getSeconds());
+        return SelectOperation.selectWithJoin(tableName, null, null,
+                where, "start_time DESC", limit, this::mapToCandle);
+    }
+
+    private RowMapper.Row<Candle> mapToCandle(ColumnIndex col) throws SQLException {
+        int stockId = col.get("stock_id");
+        int intervalSec = col.get("interval_sec");
+        int startTime = col.get("start_time");
+        int open = col.get("open");
+        int high = col.get("high");
+        int low = col.get("low");
+        int close = col.get("close");
+        int volume = col.get("volume");
+        int turnover = col.get("turnover");
+        int trades = col.get("trades");
+        int missedTrades = col.get("missed_trades");
+        return rs -> new Candle(rs.getInt(stockId),
+                Candle.Interval.ofSeconds(rs.getInt(intervalSec)),
+                rs.getLong(startTime),
+                Money.fromDecimal(rs.getBigDecimal(open)),
+                Money.fromDecimal(rs.getBigDecimal(high)),
+                Money.fromDecimal(rs.getBigDecimal(low)),
+                Money.fromDecimal(rs.getBigDecimal(close)),
+                rs.getLong(volume),
+                Money.fromDecimal(rs.getBigDecimal(turnover)),
+                rs.getInt(trades),
+                rs.getBoolean(missedTrades));
+    }
+}
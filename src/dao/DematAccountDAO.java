@@ -13,15 +13,15 @@ public class DematAccountDAO {
     public DematAccount findById(int dematId) throws SQLException {
         Condition c = new Condition();
         c.add("demat_id", dematId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToDematAccount(rows.get(0)) : null;
+        List<DematAccount> rows = SelectOperation.select(tableName, c, this::mapToDematAccount);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public DematAccount findByPanNumber(String panNumber) throws SQLException {
         Condition c = new Condition();
         c.add("pan_number", panNumber);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToDematAccount(rows.get(0)) : null;
+        List<DematAccount> rows = SelectOperation.select(tableName, c, this::mapToDematAccount);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public DematAccount createDematAccount(String panNumber, String password) throws SQLException {
@@ -49,12 +49,7 @@ public class DematAccountDAO {
     }
 
     public List<DematAccount> listAll() throws SQLException {
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, null);
-        List<DematAccount> accounts = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            accounts.add(mapToDematAccount(row));
-        }
-        return accounts;
+        return SelectOperation.select(tableName, null, this::mapToDematAccount);
     }
 
     public boolean authenticate(String panNumber, String password) throws SQLException {
@@ -65,11 +60,16 @@ public class DematAccountDAO {
         return !rows.isEmpty();
     }
 
-    private DematAccount mapToDematAccount(HashMap<String, Object> row) {
-        DematAccount account = new DematAccount();
-        account.setDematAccountId(((Number) row.get("demat_id")).intValue());
-        account.setPanNumber((String) row.get("pan_number"));
-        account.setPassword((String) row.get("password"));
-        return account;
+    private RowMapper.Row<DematAccount> mapToDematAccount(ColumnIndex col) throws SQLException {
+        int dematId = col.get("demat_id");
+        int panNumber = col.get("pan_number");
+        int password = col.get("password");
+        return rs -> {
+            DematAccount account = new DematAccount();
+            account.setDematAccountId(rs.getInt(dematId));
+            account.setPanNumber(rs.getString(panNumber));
+            account.setPassword(rs.getString(password));
+            return account;
+        };
     }
 }
\ No newline at end of file
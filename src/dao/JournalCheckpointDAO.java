@@ -0,0 +1,84 @@
+package dao;
+
+import dbOperations.*;
+
+import java.sql.*;
+import java.util.*;
+
+// journal sequence up to which everything is written to MySQL (and the highest order
+// id), plus the sequences already written beyond it by batches that overtook an older
+// one. Saved in the same transaction as the writes themselves, so replay after a crash
+// skips exactly what is in MySQL and never applies twice.
+public class JournalCheckpointDAO {
+
+    private static String tableName = "journal_checkpoint";
+    private static String appliedTable = "journal_applied";
+
+    public void createTableIfMissing() throws SQLException {
+        try (Connection con = DbHelper.getConnection();
+             Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + tableName + " ("
+                    + "id INT PRIMARY KEY, "
+                    + "last_sequence BIGINT NOT NULL, "
+                    + "last_order_id INT NOT NULL)");
+            st.execute("CREATE TABLE IF NOT EXISTS " + appliedTable + " ("
+                    + "sequence BIGINT PRIMARY KEY)");
+        }
+    }
+
+    public long getLastSequence() throws SQLException {
+        HashMap<String, Object> row = find();
+        return row != null ? ((Number) row.get("last_sequence")).longValue() : 0;
+    }
+
+    public int getLastOrderId() throws SQLException {
+        HashMap<String, Object> row = find();
+        return row != null ? ((Number) row.get("last_order_id")).intValue() : 0;
+    }
+
+    public void save(long lastSequence, int lastOrderId) throws SQLException {
+        Condition set = new Condition();
+        set.add("last_sequence", lastSequence);
+        set.add("last_order_id", lastOrderId);
+        Condition where = new Condition();
+        where.add("id", 1);
+        if (UpdateOperation.update(tableName, set, where) == 0) {
+            Condition data = new Condition();
+            data.add("id", 1);
+            data.add("last_sequence", lastSequence);
+            data.add("last_order_id", lastOrderId);
+            InsertOperation.insert(tableName, data);
+        }
+    }
+
+    // sequences written ahead of the checkpoint
+    public List<Long> getApplied() throws SQLException {
+        return SelectOperation.select(appliedTable, new String[]{"sequence"}, null, col -> {
+            int sequence = col.get("sequence");
+            return rs -> rs.getLong(sequence);
+        });
+    }
+
+    public void saveApplied(Collection<Long> sequences) throws SQLException {
+        List<Condition> rows = new ArrayList<>(sequences.size());
+        for (long s : sequences) {
+            Condition data = new Condition();
+            data.add("sequence", s);
+            rows.add(data);
+        }
+        InsertOperation.insertAll(appliedTable, rows);
+    }
+
+    // once the checkpoint reaches them they are covered by it
+    public void deleteApplied(long upToSequence) throws SQLException {
+        DeleteOperation.delete(appliedTable, null,
+                new SpecialCondition("sequence <= ?", upToSequence));
+    }
+
+    private HashMap<String, Object> find() throws SQLException {
+        Condition c = new Condition();
+        c.add("id", 1);
+        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+}
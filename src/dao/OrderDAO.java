@@ -2,6 +2,7 @@ package dao;
 
 import trading.*;
 import dbOperations.*;
+import util.Money;
 
 import java.sql.*;
 import java.util.*;
@@ -16,16 +17,20 @@ public class OrderDAO {
 
     private int size = 10; // for getting orders sell/buy
 
+    // book order: best price first, then time priority
+    private static final Keyset BUY_BOOK = new Keyset().desc("price").asc("order_id");
+    private static final Keyset SELL_BOOK = new Keyset().asc("price").asc("order_id");
+
     public Order findById(int orderId) throws SQLException {
         Condition c = new Condition();
         c.add("o.order_id", orderId);
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, COLUMNS, joinCondition, c, null);
-        return rows.isEmpty() ? null : mapToOrder(rows.get(0));
+        List<Order> rows =
+                SelectOperation.selectWithJoin(tableAlias, COLUMNS, joinCondition, c, null, this::mapToOrder);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
     public Order createOrder(int userId, String stockName,
-                             int quantity, double price, boolean isBuy) throws SQLException {
+                             int quantity, long price, boolean isBuy) throws SQLException {
         int stockId = StockDAO.getStockIdByName(stockName);
         if (stockId < 0) {
             throw new SQLException("Stock not found: " + stockName);
@@ -34,67 +39,130 @@ public class OrderDAO {
         data.add("user_id", userId);
         data.add("stock_id", stockId);
         data.add("quantity", quantity);
-        data.add("price", price);
+        data.add("price", Money.toDecimal(price));
         data.add("is_buy", isBuy);
         int orderId = InsertOperation.insert(table, data);
         return orderId > 0 ? findById(orderId) : null;
     }
 
+    // inserts an order whose id was already assigned by the marketplace
+    public void insertOrder(int orderId, int userId, int stockId,
+                            int quantity, long price, boolean isBuy) throws SQLException {
+        Condition data = new Condition();
+        data.add("order_id", orderId);
+        data.add("user_id", userId);
+        data.add("stock_id", stockId);
+        data.add("quantity", quantity);
+        data.add("price", Money.toDecimal(price));
+        data.add("is_buy", isBuy);
+        InsertOperation.insert(table, data);
+    }
+
+    // inserts orders with assigned ids as multi-row statements
+    public void insertOrders(Collection<Order> orders) throws SQLException {
+        List<Condition> rows = new ArrayList<>(orders.size());
+        for (Order o : orders) {
+            Condition data = new Condition();
+            data.add("order_id", o.getOrderId());
+            data.add("user_id", o.getUserId());
+            data.add("stock_id", o.getStockId());
+            data.add("quantity", o.getQuantity());
+            data.add("price", Money.toDecimal(o.getPrice()));
+            data.add("is_buy", o.isBuy());
+            rows.add(data);
+        }
+        InsertOperation.insertAll(table, rows);
+    }
+
+    public int findMaxOrderId() throws SQLException {
+        ArrayList<HashMap<String, Object>> rows =
+                SelectOperation.select(table, new String[]{"MAX(order_id) AS max_id"}, null);
+        Object max = rows.isEmpty() ? null : rows.get(0).get("max_id");
+        return max != null ? ((Number) max).intValue() : 0;
+    }
+
+    // deletes every order of a user and gives back what they held: one grouped UPDATE
+    // for the reserved shares, one for the reserved cash, one DELETE. Run in the
+    // caller's transaction.
     public int cancelAllOrdersByUserId(int userId) throws SQLException {
-        Condition c = new Condition();
-        c.add("user_id", userId);
-        return DeleteOperation.delete(table, c);
+        try (Connection con = DbHelper.getConnection()) {
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE stock_holdings h JOIN users u ON u.demat_id = h.demat_id"
+                            + " JOIN (SELECT stock_id, SUM(quantity) AS qty FROM " + table
+                            + " WHERE user_id = ? AND is_buy = FALSE GROUP BY stock_id) o ON o.stock_id = h.stock_id"
+                            + " SET h.reserved_quantity = h.reserved_quantity - o.qty WHERE u.user_id = ?")) {
+                ps.setInt(1, userId);
+                ps.setInt(2, userId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE trading_accounts t"
+                            + " JOIN (SELECT SUM(quantity * price) AS amount FROM " + table
+                            + " WHERE user_id = ? AND is_buy = TRUE) o ON o.amount IS NOT NULL"
+                            + " SET t.balance = t.balance + o.amount, t.reserved_balance = t.reserved_balance - o.amount"
+                            + " WHERE t.user_id = ?")) {
+                ps.setInt(1, userId);
+                ps.setInt(2, userId);
+                ps.executeUpdate();
+            }
+            Condition c = new Condition();
+            c.add("user_id", userId);
+            return DeleteOperation.delete(table, c);
+        }
+    }
+
+    // removes many cancelled orders with one statement
+    public int cancelOrders(Collection<Integer> orderIds) throws SQLException {
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        SpecialCondition in = SpecialCondition.in("order_id", orderIds);
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(
+                "DELETE FROM " + table + " WHERE " + in.toSQL())) {
+            int i = 1;
+            for (Object v : in.getValues()) {
+                ps.setObject(i++, v);
+            }
+            return ps.executeUpdate();
+        }
     }
 
     public List<Order> getBuyOrders(int stockId) throws SQLException {
         Condition c = new Condition();
         c.add("stock_id", stockId);
         c.add("is_buy", true);
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(table, null, null, c,
-                        "price DESC, order_id ASC", size);
-        return mapToOrderList(rows);
+        return SelectOperation.selectWithJoin(table, null, null, c,
+                BUY_BOOK.toOrderBySQL(), size, this::mapToOrder);
     }
 
     public List<Order> getSellOrders(int stockId) throws SQLException {
         Condition c = new Condition();
         c.add("stock_id", stockId);
         c.add("is_buy", false);
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(table, null, null, c,
-                        "price ASC, order_id ASC", size);
-        return mapToOrderList(rows);
+        return SelectOperation.selectWithJoin(table, null, null, c,
+                SELL_BOOK.toOrderBySQL(), size, this::mapToOrder);
     }
 
-    public List<Order> getNextBuyOrders(int stockId, double lastPrice, int lastOrderId)
+    public List<Order> getNextBuyOrders(int stockId, long lastPrice, int lastOrderId)
             throws SQLException {
         Condition base = new Condition();
         base.add("stock_id", stockId);
         base.add("is_buy", true);
-        SpecialCondition cursor = new SpecialCondition(
-                "price < ? OR (price = ? AND order_id > ?)",
-                lastPrice, lastPrice, lastOrderId
-        );
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithAdvancedCondition(
-                        table, null, null, base, cursor,
-                        "price DESC, order_id ASC", size);
-        return mapToOrderList(rows);
+        SpecialCondition cursor = BUY_BOOK.after(Money.toDecimal(lastPrice), lastOrderId);
+        return SelectOperation.selectWithAdvancedCondition(
+                table, null, null, base, cursor,
+                BUY_BOOK.toOrderBySQL(), size, this::mapToOrder);
     }
 
-    public List<Order> getNextSellOrders(int stockId, double lastPrice, int lastOrderId)
+    public List<Order> getNextSellOrders(int stockId, long lastPrice, int lastOrderId)
             throws SQLException {
         Condition base = new Condition();
         base.add("stock_id", stockId);
         base.add("is_buy", false);
-        SpecialCondition cursor = new SpecialCondition(
-                "price > ? OR (price = ? AND order_id > ?)",
-                lastPrice, lastPrice, lastOrderId
-        );
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithAdvancedCondition(table, null, null, base,
-                        cursor, "price ASC, order_id ASC", size);
-        return mapToOrderList(rows);
+        SpecialCondition cursor = SELL_BOOK.after(Money.toDecimal(lastPrice), lastOrderId);
+        return SelectOperation.selectWithAdvancedCondition(table, null, null, base,
+                cursor, SELL_BOOK.toOrderBySQL(), size, this::mapToOrder);
     }
 
 //    public Order findMatchingOrder(int stockId, boolean isBuy, int excludeUserId,
@@ -122,15 +190,23 @@ public class OrderDAO {
 //        return rows.isEmpty() ? null : mapToOrder(rows.get(0));
 //    }
 
+    // every resting order, oldest first, used to build the in-memory books
+    public List<Order> findAllOpen() throws SQLException {
+        return SelectOperation.selectWithJoin(table, null, null, null, "order_id ASC", this::mapToOrder);
+    }
+
+    public List<Order> findOpenByStockId(int stockId) throws SQLException {
+        Condition c = new Condition();
+        c.add("stock_id", stockId);
+        return SelectOperation.selectWithJoin(table, null, null, c, "order_id ASC", this::mapToOrder);
+    }
+
     public List<Order> findByUserId(int userId) throws SQLException {
         Condition c = new Condition();
         c.add("o.user_id", userId);
 
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, COLUMNS, joinCondition, c,
-                        "o.order_id");
-
-        return mapToOrderList(rows);
+        return SelectOperation.selectWithJoin(tableAlias, COLUMNS, joinCondition, c,
+                "o.order_id", this::mapToOrder);
     }
 
     public boolean updateQuantity(int orderId, int newQuantity) throws SQLException {
@@ -147,14 +223,32 @@ public class OrderDAO {
         return UpdateOperation.update(table, set, where) > 0;
     }
 
-    public boolean modifyOrder(int orderId, int newQuantity, double newPrice) throws SQLException {
+    // remaining quantity per order id after a round of matching: filled orders are
+    // deleted with one statement, the rest updated in one batch
+    public void applyRemaining(Map<Integer, Integer> remaining) throws SQLException {
+        List<Integer> filled = new ArrayList<>();
+        List<Condition> sets = new ArrayList<>();
+        List<Condition> wheres = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : remaining.entrySet()) {
+            if (e.getValue() <= 0) {
+                filled.add(e.getKey());
+                continue;
+            }
+            sets.add(new Condition().add("quantity", e.getValue()));
+            wheres.add(new Condition().add("order_id", e.getKey()));
+        }
+        UpdateOperation.updateAll(table, sets, wheres);
+        cancelOrders(filled);
+    }
+
+    public boolean modifyOrder(int orderId, int newQuantity, long newPrice) throws SQLException {
         if (newQuantity <= 0) {
             return cancelOrder(orderId);
         }
 
         Condition set = new Condition();
         set.add("quantity", newQuantity);
-        set.add("price", newPrice);
+        set.add("price", Money.toDecimal(newPrice));
 
         Condition where = new Condition();
         where.add("order_id", orderId);
@@ -168,22 +262,27 @@ public class OrderDAO {
         return DeleteOperation.delete(table, where) > 0;
     }
 
-    private Order mapToOrder(HashMap<String, Object> row) throws SQLException{
-        Order order = new Order();
-        order.setOrderId(((Number) row.get("order_id")).intValue());
-        order.setUserId(((Number) row.get("user_id")).intValue());
-        order.setStockId(((Number) row.get("stock_id")).intValue());
-        order.setQuantity(((Number) row.get("quantity")).intValue());
-        order.setPrice(((Number) row.get("price")).doubleValue());
-        order.setBuy((Boolean) row.get("is_buy"));
-        return order;
+    private RowMapper.Row<Order> mapToOrder(ColumnIndex col) throws SQLException {
+        int orderId = col.get("order_id");
+        int userId = col.get("user_id");
+        int stockId = col.get("stock_id");
+        int quantity = col.get("quantity");
+        int price = col.get("price");
+        int isBuy = col.get("is_buy");
+        int stockName = col.has("stock_name") ? col.get("stock_name") : 0;
+        return rs -> {
+            Order order = new Order();
+            order.setOrderId(rs.getInt(orderId));
+            order.setUserId(rs.getInt(userId));
+            order.setStockId(rs.getInt(stockId));
+            order.setQuantity(rs.getInt(quantity));
+            order.setPrice(Money.fromDecimal(rs.getBigDecimal(price)));
+            order.setBuy(rs.getBoolean(isBuy));
+            if (stockName > 0) {
+                order.setStockName(rs.getString(stockName));
+            }
+            return order;
+        };
     }
 
-    private List<Order> mapToOrderList(ArrayList<HashMap<String, Object>> rows) throws SQLException{
-        List<Order> orders = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            orders.add(mapToOrder(row));
-        }
-        return orders;
-    }
 }
\ No newline at end of file
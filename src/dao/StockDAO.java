@@ -13,15 +13,15 @@ public class StockDAO {
     public Stock findById(int stockId) throws SQLException {
         Condition c = new Condition();
         c.add("stock_id", stockId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToStock(rows.get(0)) : null;
+        List<Stock> rows = SelectOperation.select(tableName, c, this::mapToStock);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public Stock findByName(String stockName) throws SQLException {
         Condition c = new Condition();
         c.add("stock_name", stockName);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToStock(rows.get(0)) : null;
+        List<Stock> rows = SelectOperation.select(tableName, c, this::mapToStock);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public static int getStockIdByName(String stockName) throws SQLException {
@@ -34,7 +34,7 @@ public class StockDAO {
     public static String getStockNameById(int stockId) throws SQLException {
         Condition c = new Condition();
         c.add("stock_id", stockId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, new String[]{"stock_id"}, c);
+        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, new String[]{"stock_name"}, c);
         return !rows.isEmpty() ? (String) rows.get(0).get("stock_name") : null;
     }
 
@@ -53,18 +53,17 @@ public class StockDAO {
     }
 
     public List<Stock> listAllStocks() throws SQLException {
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, null);
-        List<Stock> stocks = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            stocks.add(mapToStock(row));
-        }
-        return stocks;
+        return SelectOperation.select(tableName, null, this::mapToStock);
     }
 
-    private Stock mapToStock(HashMap<String, Object> row) {
-        Stock stock = new Stock();
-        stock.setStockId(((Number) row.get("stock_id")).intValue());
-        stock.setStockName((String) row.get("stock_name"));
-        return stock;
+    private RowMapper.Row<Stock> mapToStock(ColumnIndex col) throws SQLException {
+        int stockId = col.get("stock_id");
+        int stockName = col.get("stock_name");
+        return rs -> {
+            Stock stock = new Stock();
+            stock.setStockId(rs.getInt(stockId));
+            stock.setStockName(rs.getString(stockName));
+            return stock;
+        };
     }
 }
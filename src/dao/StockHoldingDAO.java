@@ -3,7 +3,7 @@ package dao;
 import dbOperations.*;
 import trading.StockHolding;
 
-import java.sql.SQLException;
+import java.sql.*;
 import java.util.*;
 
 public class StockHoldingDAO {
@@ -19,16 +19,14 @@ public class StockHoldingDAO {
     public StockHolding findById(int holdingId) throws SQLException {
         Condition c = new Condition();
         c.add("holding_id", holdingId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(table, c);
-        return rows.isEmpty() ? null : mapToRow(rows.get(0));
+        List<StockHolding> rows = SelectOperation.select(table, c, this::mapToRow);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
     public List<StockHolding> findByDematId(int dematId) throws SQLException {
         Condition where = new Condition();
         where.add("h.demat_id", dematId);
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null);
-        return mapToRowList(rows);
+        return SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null, this::mapToRow);
     }
 
     public StockHolding findByDematAndStock(int dematId, int stockId) throws SQLException {
@@ -36,78 +34,167 @@ public class StockHoldingDAO {
         where.add("h.demat_id", dematId);
         where.add("h.stock_id", stockId);
 
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null);
-        return rows.isEmpty() ? null : mapToRow(rows.get(0));
+        List<StockHolding> rows =
+                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null, this::mapToRow);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
-    public boolean reserveStocks(int dematId, int stockId, int quantity) throws SQLException {
-        StockHolding holding = findByDematAndStock(dematId, stockId);
-        if (holding == null || holding.getAvailableQuantity() < quantity) {
-            return false;
-        }
-
-        Condition set = new Condition();
-        set.add("reserved_quantity", holding.getReservedQuantity() + quantity);
-
-        Condition where = new Condition();
-        where.add("holding_id", holding.getStockHoldingId());
-
-        return UpdateOperation.update(table, set, where) > 0;
+    public List<StockHolding> findAll() throws SQLException {
+        return SelectOperation.select(table, null, this::mapToRow);
     }
 
-    public boolean releaseReservedStocks(int dematId, int stockId, int quantity) throws SQLException {
-        StockHolding holding = findByDematAndStock(dematId, stockId);
-        if (holding == null || holding.getReservedQuantity() < quantity) {
-            return false;
+    // every holding of a set of demat accounts in one query, without stock names
+    public List<StockHolding> findByDematIds(Collection<Integer> dematIds) throws SQLException {
+        if (dematIds.isEmpty()) {
+            return new ArrayList<>();
         }
+        return SelectOperation.selectWithAdvancedCondition(table,
+                null, null, null, SpecialCondition.in("demat_id", dematIds), null, 0, this::mapToRow);
+    }
+
+    public boolean reserveStocks(int dematId, int stockId, int quantity) throws SQLException {
+        return tryReserve(dematId, stockId, quantity);
+    }
 
+    // reserves quantity shares in one statement, only if that many are unreserved.
+    // A negative quantity releases them.
+    public boolean tryReserve(int dematId, int stockId, int quantity) throws SQLException {
         Condition set = new Condition();
-        set.add("reserved_quantity", holding.getReservedQuantity() - quantity);
+        set.addDelta("reserved_quantity", quantity);
+        return UpdateOperation.update(table, set, holding(dematId, stockId),
+                new SpecialCondition("total_quantity - reserved_quantity >= ? AND reserved_quantity + ? >= 0",
+                        quantity, quantity)) > 0;
+    }
 
-        Condition where = new Condition();
-        where.add("holding_id", holding.getStockHoldingId());
+    // releases reserved shares of one demat account across stocks, one batch
+    public void releaseReserved(int dematId, Map<Integer, Integer> byStock) throws SQLException {
+        List<Condition> sets = new ArrayList<>();
+        List<Condition> wheres = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : byStock.entrySet()) {
+            sets.add(new Condition().addDelta("reserved_quantity", -e.getValue()));
+            wheres.add(holding(dematId, e.getKey()));
+        }
+        UpdateOperation.updateAll(table, sets, wheres);
+    }
 
-        return UpdateOperation.update(table, set, where) > 0;
+    public boolean releaseReservedStocks(int dematId, int stockId, int quantity) throws SQLException {
+        return tryReserve(dematId, stockId, -quantity);
     }
 
+    // hands over reserved shares; the holding goes once it is empty
     public boolean sellShares(int dematId, int stockId, int quantity) throws SQLException {
-        StockHolding holding = findByDematAndStock(dematId, stockId);
-        if (holding == null || holding.getReservedQuantity() < quantity) {
+        Condition set = new Condition();
+        set.addDelta("total_quantity", -quantity);
+        set.addDelta("reserved_quantity", -quantity);
+        if (UpdateOperation.update(table, set, holding(dematId, stockId),
+                new SpecialCondition("reserved_quantity >= ?", quantity)) == 0) {
             return false;
         }
-
-        int newTotal = holding.getTotalQuantity() - quantity;
-        int newReserved = holding.getReservedQuantity() - quantity;
-
-        if (newTotal <= 0) {
-            return deleteHolding(holding.getStockHoldingId());
-        }
-
-        Condition set = new Condition();
-        set.add("total_quantity", newTotal);
-        set.add("reserved_quantity", newReserved);
-
-        Condition where = new Condition();
-        where.add("holding_id", holding.getStockHoldingId());
-
-        return UpdateOperation.update(table, set, where) > 0;
+        DeleteOperation.delete(table, holding(dematId, stockId), new SpecialCondition("total_quantity <= 0"));
+        return true;
     }
 
+    // adds to the holding in place or inserts it, one statement on the unique
+    // (demat_id, stock_id) key
     public boolean addShares(int dematId, int stockId, int quantity) throws SQLException {
-        StockHolding holding = findByDematAndStock(dematId, stockId);
+        Condition data = holding(dematId, stockId);
+        data.add("total_quantity", quantity);
+        data.add("reserved_quantity", 0);
+        Condition onDuplicate = new Condition();
+        onDuplicate.addDelta("total_quantity", quantity);
+        return InsertOperation.upsert(table, data, onDuplicate) > 0;
+    }
 
-        if (holding == null) {
-            return createHolding(dematId, stockId, quantity) != null;
+    // reserved_quantity changes keyed by demat << 32 | stock, one statement. Returns the
+    // keys that matched no row; only looked up when the matched count comes up short.
+    public Set<Long> addReserved(Map<Long, Integer> deltas) throws SQLException {
+        List<Condition> sets = new ArrayList<>();
+        List<Condition> wheres = new ArrayList<>();
+        for (Map.Entry<Long, Integer> e : deltas.entrySet()) {
+            long key = e.getKey();
+            sets.add(new Condition().addDelta("reserved_quantity", e.getValue()));
+            wheres.add(holding((int) (key >>> 32), (int) key));
         }
+        if (UpdateOperation.updateAll(table, sets, wheres) == deltas.size()) {
+            return new HashSet<>();
+        }
+        Set<Integer> dematIds = new HashSet<>();
+        for (long key : deltas.keySet()) {
+            dematIds.add((int) (key >>> 32));
+        }
+        List<Long> found = SelectOperation.selectWithAdvancedCondition(table,
+                new String[]{"demat_id", "stock_id"}, null, null, SpecialCondition.in("demat_id", dematIds),
+                null, 0, col -> {
+                    int demat = col.get("demat_id");
+                    int stock = col.get("stock_id");
+                    return rs -> (long) rs.getInt(demat) << 32 | (rs.getInt(stock) & 0xFFFFFFFFL);
+                });
+        Set<Long> missed = new HashSet<>(deltas.keySet());
+        missed.removeAll(found);
+        return missed;
+    }
 
-        Condition set = new Condition();
-        set.add("total_quantity", holding.getTotalQuantity() + quantity);
-
-        Condition where = new Condition();
-        where.add("holding_id", holding.getStockHoldingId());
+    // deltas per demat id for one stock: {total_quantity change, reserved_quantity change}.
+    // Holdings that gain shares are upserted, the rest updated in place and deleted once
+    // emptied; no read first.
+    public void applyDeltas(int stockId, Map<Integer, int[]> deltas) throws SQLException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Condition> gains = new ArrayList<>();
+        List<Condition> sets = new ArrayList<>();
+        List<Condition> wheres = new ArrayList<>();
+        List<Integer> reduced = new ArrayList<>();
+        for (Map.Entry<Integer, int[]> e : deltas.entrySet()) {
+            int[] d = e.getValue();
+            if (d[0] > 0) {
+                Condition row = holding(e.getKey(), stockId);
+                row.add("total_quantity", d[0]);
+                row.add("reserved_quantity", d[1]);
+                gains.add(row);
+            } else {
+                Condition set = new Condition();
+                set.addDelta("total_quantity", d[0]);
+                set.addDelta("reserved_quantity", d[1]);
+                sets.add(set);
+                wheres.add(holding(e.getKey(), stockId));
+                if (d[0] < 0) {
+                    reduced.add(e.getKey());
+                }
+            }
+        }
+        Condition onDuplicate = new Condition();
+        onDuplicate.addExpression("total_quantity", "total_quantity + VALUES(total_quantity)");
+        onDuplicate.addExpression("reserved_quantity", "reserved_quantity + VALUES(reserved_quantity)");
+        InsertOperation.upsertAll(table, gains, onDuplicate);
+        UpdateOperation.updateAll(table, sets, wheres);
+
+        // same rule as sellShares: a holding that drops to zero is removed
+        if (!reduced.isEmpty()) {
+            SpecialCondition guard = SpecialCondition.in("demat_id", reduced);
+            DeleteOperation.delete(table, new Condition().add("stock_id", stockId),
+                    new SpecialCondition("total_quantity <= 0 AND " + guard.toSQL(), guard.getValues().toArray()));
+        }
+    }
 
-        return UpdateOperation.update(table, set, where) > 0;
+    // the upserts need stock_holdings unique on (demat_id, stock_id); adds the key on
+    // first start. Fails if the table already has two rows for one holding.
+    public void createKeyIfMissing() throws SQLException {
+        String sql = "SELECT index_name FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = ? AND non_unique = 0"
+                + " GROUP BY index_name"
+                + " HAVING GROUP_CONCAT(column_name ORDER BY seq_in_index) = 'demat_id,stock_id'";
+        if (!SelectOperation.query(sql, col -> rs -> rs.getString(1), table).isEmpty()) {
+            return;
+        }
+        try (Connection con = DbHelper.getConnection();
+             Statement st = con.createStatement()) {
+            st.execute("ALTER TABLE " + table + " ADD UNIQUE KEY uq_holding_demat_stock (demat_id, stock_id)");
+        } catch (SQLException e) {
+            throw new SQLException("Cannot add unique (demat_id, stock_id) key to " + table
+                    + ", merge duplicate holdings first: " + e.getMessage(), e);
+        }
+        System.out.println("Added unique (demat_id, stock_id) key to " + table);
     }
 
     public StockHolding createHolding(int dematId, int stockId, int quantity) throws SQLException {
@@ -118,7 +205,15 @@ public class StockHoldingDAO {
         data.add("reserved_quantity", 0);
 
         int holdingId = InsertOperation.insert(table, data);
-        return holdingId > 0 ? findById(holdingId) : null;
+        if (holdingId <= 0) {
+            return null;
+        }
+        StockHolding holding = new StockHolding();
+        holding.setStockHoldingId(holdingId);
+        holding.setDematId(dematId);
+        holding.setStockId(stockId);
+        holding.setTotalQuantity(quantity);
+        return holding;
     }
 
     public boolean deleteHolding(int holdingId) throws SQLException {
@@ -127,21 +222,28 @@ public class StockHoldingDAO {
         return DeleteOperation.delete(table, c) > 0;
     }
 
-    private StockHolding mapToRow(HashMap<String, Object> row) {
-        StockHolding stockHolding = new StockHolding();
-        stockHolding.setStockHoldingId(((Number) row.get("holding_id")).intValue());
-        stockHolding.setDematId(((Number) row.get("demat_id")).intValue());
-        stockHolding.setStockId(((Number) row.get("stock_id")).intValue());
-        stockHolding.setTotalQuantity(((Number) row.get("total_quantity")).intValue());
-        stockHolding.setReservedQuantity(((Number) row.get("reserved_quantity")).intValue());
-        return stockHolding;
+    private static Condition holding(int dematId, int stockId) {
+        Condition c = new Condition();
+        c.add("demat_id", dematId);
+        c.add("stock_id", stockId);
+        return c;
     }
 
-    private List<StockHolding> mapToRowList(ArrayList<HashMap<String, Object>> rows) {
-        List<StockHolding> stockHoldings = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            stockHoldings.add(mapToRow(row));
-        }
-        return stockHoldings;
+    private RowMapper.Row<StockHolding> mapToRow(ColumnIndex col) throws SQLException {
+        int holdingId = col.get("holding_id");
+        int dematId = col.get("demat_id");
+        int stockId = col.get("stock_id");
+        int totalQuantity = col.get("total_quantity");
+        int reservedQuantity = col.get("reserved_quantity");
+        return rs -> {
+            StockHolding stockHolding = new StockHolding();
+            stockHolding.setStockHoldingId(rs.getInt(holdingId));
+            stockHolding.setDematId(rs.getInt(dematId));
+            stockHolding.setStockId(rs.getInt(stockId));
+            stockHolding.setTotalQuantity(rs.getInt(totalQuantity));
+            stockHolding.setReservedQuantity(rs.getInt(reservedQuantity));
+            return stockHolding;
+        };
     }
+
 }
\ No newline at end of file
@@ -2,8 +2,10 @@ package dao;
 
 import dbOperations.*;
 import account.TradingAccount;
+import util.Money;
 
-import java.sql.SQLException;
+import java.math.BigDecimal;
+import java.sql.*;
 import java.util.*;
 
 public class TradingAccountDAO {
@@ -13,68 +15,93 @@ public class TradingAccountDAO {
     public TradingAccount findByUserId(int userId) throws SQLException {
         Condition c = new Condition();
         c.add("user_id", userId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToTradingAccount(rows.get(0)) : null;
+        List<TradingAccount> rows = SelectOperation.select(tableName, c, this::mapToTradingAccount);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
-    public TradingAccount createTradingAccount(int userId, double balance) throws SQLException {
+    public List<TradingAccount> findAll() throws SQLException {
+        return SelectOperation.select(tableName, null, this::mapToTradingAccount);
+    }
+
+    // one query for a whole set of users, keyed by user id
+    public Map<Integer, TradingAccount> findByUserIds(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, TradingAccount> accounts = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return accounts;
+        }
+        for (TradingAccount account : SelectOperation.selectWithAdvancedCondition(tableName,
+                null, null, null, SpecialCondition.in("user_id", userIds), null, 0, this::mapToTradingAccount)) {
+            accounts.put(account.getUserId(), account);
+        }
+        return accounts;
+    }
+
+    public TradingAccount createTradingAccount(int userId, long balance) throws SQLException {
         Condition data = new Condition();
         data.add("user_id", userId);
-        data.add("balance", balance);
-        data.add("reserved_balance", 0.0);
+        data.add("balance", Money.toDecimal(balance));
+        data.add("reserved_balance", Money.toDecimal(0));
         int tradingId = InsertOperation.insert(tableName, data);
         return tradingId > 0 ? findByUserId(userId) : null;
     }
 
-    public boolean reserveBalance(int userId, double amount) throws SQLException {
-        TradingAccount acc = findByUserId(userId);
-        if (acc == null || acc.getBalance() < amount) return false;
-
-        Condition set = new Condition();
-        set.add("balance", acc.getBalance() - amount);
-        set.add("reserved_balance", acc.getReservedBalance() + amount);
-        Condition where = new Condition();
-        where.add("user_id", userId);
-        return UpdateOperation.update(tableName, set, where) > 0;
+    public boolean reserveBalance(int userId, long amount) throws SQLException {
+        return tryReserve(userId, amount);
     }
 
-    public boolean releaseReservedBalance(int userId, double amount) throws SQLException {
-        TradingAccount acc = findByUserId(userId);
-        if (acc == null || acc.getReservedBalance() < amount) return false;
+    public boolean releaseReservedBalance(int userId, long amount) throws SQLException {
+        return tryReserve(userId, -amount);
+    }
 
+    // pays out of the hold, only if the hold covers it
+    public boolean debit(int userId, long amount) throws SQLException {
+        BigDecimal value = Money.toDecimal(amount);
         Condition set = new Condition();
-        set.add("balance", acc.getBalance() + amount);
-        set.add("reserved_balance", acc.getReservedBalance() - amount);
+        set.addDelta("reserved_balance", value.negate());
         Condition where = new Condition();
         where.add("user_id", userId);
-        return UpdateOperation.update(tableName, set, where) > 0;
+        return UpdateOperation.update(tableName, set, where,
+                new SpecialCondition("reserved_balance >= ?", value)) > 0;
     }
 
-    public boolean debit(int userId, double amount) throws SQLException {
-        TradingAccount acc = findByUserId(userId);
-        if (acc == null || acc.getReservedBalance() < amount) return false;
-
+    public boolean credit(int userId, long amount) throws SQLException {
         Condition set = new Condition();
-        set.add("reserved_balance", acc.getReservedBalance() - amount);
+        set.addDelta("balance", Money.toDecimal(amount));
         Condition where = new Condition();
         where.add("user_id", userId);
         return UpdateOperation.update(tableName, set, where) > 0;
     }
 
-    public boolean credit(int userId, double amount) throws SQLException {
-        TradingAccount acc = findByUserId(userId);
-        if (acc == null) return false;
-
+    // moves amount from balance to reserved_balance in one statement, only if the balance
+    // covers it. A negative amount releases a hold.
+    public boolean tryReserve(int userId, long amount) throws SQLException {
+        BigDecimal value = Money.toDecimal(amount);
         Condition set = new Condition();
-        set.add("balance", acc.getBalance() + amount);
+        set.addDelta("balance", value.negate());
+        set.addDelta("reserved_balance", value);
         Condition where = new Condition();
         where.add("user_id", userId);
-        return UpdateOperation.update(tableName, set, where) > 0;
+        return UpdateOperation.update(tableName, set, where,
+                new SpecialCondition("balance >= ? AND reserved_balance + ? >= 0", value, value)) > 0;
+    }
+
+    // deltas per user id in paise: {balance change, reserved_balance change}, all in one batch
+    public void applyDeltas(Map<Integer, long[]> deltas) throws SQLException {
+        List<Condition> sets = new ArrayList<>();
+        List<Condition> wheres = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> e : deltas.entrySet()) {
+            Condition set = new Condition();
+            set.addDelta("balance", Money.toDecimal(e.getValue()[0]));
+            set.addDelta("reserved_balance", Money.toDecimal(e.getValue()[1]));
+            sets.add(set);
+            wheres.add(new Condition().add("user_id", e.getKey()));
+        }
+        UpdateOperation.updateAll(tableName, sets, wheres);
     }
 
-    public double getAvailableBalance(int userId) throws SQLException {
+    public long getAvailableBalance(int userId) throws SQLException {
         TradingAccount acc = findByUserId(userId);
-        return acc != null ? acc.getBalance() : 0.0;
+        return acc != null ? acc.getBalance() : 0;
     }
 
     public boolean deleteTradingAccount(int userId) throws SQLException {
@@ -84,12 +111,18 @@ public class TradingAccountDAO {
         return affected > 0;
     }
 
-    private TradingAccount mapToTradingAccount(HashMap<String, Object> row) {
-        TradingAccount account = new TradingAccount();
-        account.setTradingAccountId(((Number) row.get("trading_id")).intValue());
-        account.setUserId(((Number) row.get("user_id")).intValue());
-        account.setBalance(((Number) row.get("balance")).doubleValue());
-        account.setReservedBalance(((Number) row.get("reserved_balance")).doubleValue());
-        return account;
+    private RowMapper.Row<TradingAccount> mapToTradingAccount(ColumnIndex col) throws SQLException {
+        int tradingId = col.get("trading_id");
+        int userId = col.get("user_id");
+        int balance = col.get("balance");
+        int reservedBalance = col.get("reserved_balance");
+        return rs -> {
+            TradingAccount account = new TradingAccount();
+            account.setTradingAccountId(rs.getInt(tradingId));
+            account.setUserId(rs.getInt(userId));
+            account.setBalance(Money.fromDecimal(rs.getBigDecimal(balance)));
+            account.setReservedBalance(Money.fromDecimal(rs.getBigDecimal(reservedBalance)));
+            return account;
+        };
     }
 }
\ No newline at end of file
@@ -1,10 +1,12 @@
 package dao;
 
 import dbOperations.*;
+import util.Money;
 import trading.Transaction;
 
-import java.sql.SQLException;
+import java.sql.*;
 import java.util.*;
+import java.util.stream.Stream;
 
 public class TransactionDAO {
 
@@ -20,60 +22,138 @@ public class TransactionDAO {
             "s.stock_name", "buy.username AS buyer_name", "sel.username AS seller_name"
     };
 
+    // newest first, for the paged history screens
+    private static final Keyset HISTORY = new Keyset().desc("t.transactions_id");
+
     public Transaction createTransaction(int buyerId, int sellerId,
-                                         int stockId, int quantity, double price) throws SQLException {
+                                         int stockId, int quantity, long price) throws SQLException {
         Condition data = new Condition();
         data.add("buyer_id", buyerId);
         data.add("seller_id", sellerId);
         data.add("stock_id", stockId);
         data.add("quantity", quantity);
-        data.add("price", price);
+        data.add("price", Money.toDecimal(price));
 
         int transId = InsertOperation.insert(table, data);
         return transId > 0 ? findById(transId) : null;
     }
 
+    // inserts all trades of a settlement with multi-row statements and hands each trade
+    // its generated id, no read back
+    public void createTransactions(List<Transaction> trades) throws SQLException {
+        List<Condition> rows = new ArrayList<>(trades.size());
+        for (Transaction t : trades) {
+            Condition data = new Condition();
+            data.add("buyer_id", t.getBuyerId());
+            data.add("seller_id", t.getSellerId());
+            data.add("stock_id", t.getStockId());
+            data.add("quantity", t.getQuantity());
+            data.add("price", Money.toDecimal(t.getPrice()));
+            rows.add(data);
+        }
+        int[] ids = InsertOperation.insertAll(table, rows);
+        for (int i = 0; i < ids.length; i++) {
+            trades.get(i).setTransactionId(ids[i]);
+        }
+    }
+
+    // price of the latest trade of every stock that ever traded
+    public Map<Integer, Long> findLastPrices() throws SQLException {
+        List<Map.Entry<Integer, Long>> rows = SelectOperation.selectWithJoin(tableAlias,
+                new String[]{"t.stock_id", "t.price"},
+                "JOIN (SELECT MAX(transactions_id) AS last_id FROM " + table
+                        + " GROUP BY stock_id) l ON t.transactions_id = l.last_id",
+                null, null, col -> {
+                    int stockId = col.get("stock_id");
+                    int price = col.get("price");
+                    return rs -> Map.entry(rs.getInt(stockId), Money.fromDecimal(rs.getBigDecimal(price)));
+                });
+        Map<Integer, Long> prices = new HashMap<>();
+        for (Map.Entry<Integer, Long> row : rows) {
+            prices.put(row.getKey(), row.getValue());
+        }
+        return prices;
+    }
+
     public Transaction findById(int transactionId) throws SQLException {
         Condition where = new Condition();
         where.add("t.transactions_id", transactionId);
 
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null);
-        return rows.isEmpty() ? null : mapToTransaction(rows.get(0));
+        List<Transaction> rows =
+                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition, where, null, this::mapToTransaction);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
-    public List<Transaction> findByUserId(int userId) throws SQLException {
+    // every trade of a user, oldest first, read off a cursor a fetch at a time so an
+    // export runs in constant memory. Close the stream when done.
+    public Stream<Transaction> streamByUserId(int userId) throws SQLException {
         SpecialCondition extra = new SpecialCondition("t.buyer_id = ? OR t.seller_id = ?",
                 userId, userId);
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithAdvancedCondition(tableAlias,
-                        columns, joinCondition, null,extra, null, 0);
-        return mapToRowList(rows);
+        return SelectOperation.stream(tableAlias, columns, joinCondition, null, extra, "t.transactions_id",
+                SelectOperation.DEFAULT_FETCH_SIZE, this::mapToTransaction);
     }
 
-    public List<Transaction> findAll() throws SQLException {
-        ArrayList<HashMap<String, Object>> rows =
-                SelectOperation.selectWithJoin(tableAlias, columns, joinCondition,
-                        null, null);
-        return mapToRowList(rows);
+    // one page of a user's trades, newest first; token null for the first page. The buys
+    // and the sells are read off the (buyer_id, transactions_id) and (seller_id,
+    // transactions_id) indexes separately, so a deep page costs what the first one does.
+    public Page<Transaction> pageByUserId(int userId, String token, int pageSize) throws SQLException {
+        return SelectOperation.pageAny(tableAlias, columns, joinCondition, null,
+                List.of(new SpecialCondition("t.buyer_id = ?", userId),
+                        new SpecialCondition("t.seller_id = ?", userId)),
+                HISTORY, token, pageSize, this::mapToTransaction);
     }
 
-    private Transaction mapToTransaction(HashMap<String, Object> row) throws SQLException{
-        Transaction t = new Transaction();
-        t.setTransactionId(((Number) row.get("transactions_id")).intValue());
-        t.setBuyerId(((Number) row.get("buyer_id")).intValue());
-        t.setSellerId(((Number) row.get("seller_id")).intValue());
-        t.setStockId(((Number) row.get("stock_id")).intValue());
-        t.setQuantity(((Number) row.get("quantity")).intValue());
-        t.setPrice(((Number) row.get("price")).doubleValue());
-        return t;
+    // the user history pages walk one party's trades by id; an index on (party, id) gives
+    // each branch a range it can stop after a page. Adds the missing ones on first start.
+    public void createIndexesIfMissing() throws SQLException {
+        String sql = "SELECT index_name FROM information_schema.statistics"
+                + " WHERE table_schema = DATABASE() AND table_name = ?"
+                + " GROUP BY index_name"
+                + " HAVING GROUP_CONCAT(column_name ORDER BY seq_in_index) IN (?, ?)";
+        for (String party : new String[]{"buyer_id", "seller_id"}) {
+            // a secondary index carries the primary key, so (party) alone orders by id too
+            if (!SelectOperation.query(sql, col -> rs -> rs.getString(1), table,
+                    party, party + ",transactions_id").isEmpty()) {
+                continue;
+            }
+            try (Connection con = DbHelper.getConnection();
+                 Statement st = con.createStatement()) {
+                st.execute("ALTER TABLE " + table + " ADD INDEX idx_transactions_" + party
+                        + " (" + party + ", transactions_id)");
+            }
+            System.out.println("Added (" + party + ", transactions_id) index to " + table);
+        }
     }
 
-    private List<Transaction> mapToRowList(ArrayList<HashMap<String, Object>> rows) throws SQLException{
-        List<Transaction> transactions = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            transactions.add(mapToTransaction(row));
-        }
-        return transactions;
+    public Page<Transaction> pageAll(String token, int pageSize) throws SQLException {
+        return SelectOperation.page(tableAlias, columns, joinCondition, null, null, HISTORY,
+                token, pageSize, this::mapToTransaction);
     }
+
+    private RowMapper.Row<Transaction> mapToTransaction(ColumnIndex col) throws SQLException {
+        int transactionsId = col.get("transactions_id");
+        int buyerId = col.get("buyer_id");
+        int sellerId = col.get("seller_id");
+        int stockId = col.get("stock_id");
+        int quantity = col.get("quantity");
+        int price = col.get("price");
+        int stockName = col.get("stock_name");
+        int buyerName = col.get("buyer_name");
+        int sellerName = col.get("seller_name");
+        return rs -> {
+            Transaction t = new Transaction();
+            t.setTransactionId(rs.getInt(transactionsId));
+            t.setBuyerId(rs.getInt(buyerId));
+            t.setSellerId(rs.getInt(sellerId));
+            t.setStockId(rs.getInt(stockId));
+            t.setQuantity(rs.getInt(quantity));
+            t.setPrice(Money.fromDecimal(rs.getBigDecimal(price)));
+            t.setTotal(t.getQuantity() * t.getPrice());
+            t.setStockName(rs.getString(stockName));
+            t.setBuyerName(rs.getString(buyerName));
+            t.setSellerName(rs.getString(sellerName));
+            return t;
+        };
+    }
+
 }
\ No newline at end of file
@@ -13,8 +13,21 @@ public class UserDAO {
     public User findById(int userId) throws SQLException {
         Condition c = new Condition();
         c.add("user_id", userId);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToUser(rows.get(0)) : null;
+        List<User> rows = SelectOperation.select(tableName, c, this::mapToUser);
+        return !rows.isEmpty() ? rows.get(0) : null;
+    }
+
+    // one query for a whole set of users, keyed by user id
+    public Map<Integer, User> findByIds(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, User> users = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return users;
+        }
+        for (User user : SelectOperation.selectWithAdvancedCondition(tableName,
+                null, null, null, SpecialCondition.in("user_id", userIds), null, 0, this::mapToUser)) {
+            users.put(user.getUserId(), user);
+        }
+        return users;
     }
 
     public static String findUsernameById(int userId) throws SQLException {
@@ -28,8 +41,8 @@ public class UserDAO {
         Condition c = new Condition();
         c.add("demat_id", dematId);
         c.add("isActive", true);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToUser(rows.get(0)) : null;
+        List<User> rows = SelectOperation.select(tableName, c, this::mapToUser);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public User createUser(String userName, String password, int dematId, boolean isPromoter) throws SQLException {
@@ -58,8 +71,8 @@ public class UserDAO {
         c.add("username", username);
         c.add("password", password);
         c.add("isActive", true);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        return !rows.isEmpty() ? mapToUser(rows.get(0)) : null;
+        List<User> rows = SelectOperation.select(tableName, c, this::mapToUser);
+        return !rows.isEmpty() ? rows.get(0) : null;
     }
 
     public boolean isActiveUserLinkedWithDematId(int dematId) throws SQLException {
@@ -98,22 +111,25 @@ public class UserDAO {
     public List<User> listAllActiveUsers() throws SQLException {
         Condition c = new Condition();
         c.add("isActive", true);
-        ArrayList<HashMap<String, Object>> rows = SelectOperation.select(tableName, c);
-        List<User> users = new ArrayList<>();
-        for (HashMap<String, Object> row : rows) {
-            users.add(mapToUser(row));
-        }
-        return users;
+        return SelectOperation.select(tableName, c, this::mapToUser);
     }
 
-    private User mapToUser(HashMap<String, Object> row) {
-        User user = new User();
-        user.setUserId(((Number) row.get("user_id")).intValue());
-        user.setUserName((String) row.get("username"));
-        user.setPassword((String) row.get("password"));
-        user.setDematId(((Number) row.get("demat_id")).intValue());
-        user.setPromoter((Boolean) row.get("isPromoter"));
-        user.setActive((Boolean) row.get("isActive"));
-        return user;
+    private RowMapper.Row<User> mapToUser(ColumnIndex col) throws SQLException {
+        int userId = col.get("user_id");
+        int username = col.get("username");
+        int password = col.get("password");
+        int dematId = col.get("demat_id");
+        int isPromoter = col.get("isPromoter");
+        int isActive = col.get("isActive");
+        return rs -> {
+            User user = new User();
+            user.setUserId(rs.getInt(userId));
+            user.setUserName(rs.getString(username));
+            user.setPassword(rs.getString(password));
+            user.setDematId(rs.getInt(dematId));
+            user.setPromoter(rs.getBoolean(isPromoter));
+            user.setActive(rs.getBoolean(isActive));
+            return user;
+        };
     }
 }
\ No newline at end of file
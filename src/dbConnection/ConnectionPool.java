@@ -0,0 +1,630 @@
+package dbConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// bounded pool of MySQL connections. Callers get a lease: a proxy that behaves like the
+// connection until close(), which hands the connection back instead of closing it. A
+// closed lease refuses further use, so a stale reference can't touch the next owner's work.
+//
+// A thread can bind one lease for a transaction (begin/end); until it ends, every
+// getConnection() on that thread returns the bound lease and close() on it does nothing,
+// so the dbOperations helpers and the DAOs all run inside the transaction.
+//
+// Each connection keeps its prepared statements (see StatementCache) across leases.
+// prepareStatement on a lease returns a handle to a cached statement; closing the handle
+// puts the statement back, and handles still open when the lease is closed are put back
+// then, so the server parses each distinct sql once per connection.
+//
+// Given a QueryProfiler, every statement handle is wrapped once more to report its
+// executes (see ProfiledStatement).
+public class ConnectionPool {
+
+    // idle connections older than this are pinged before they are handed out
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    // idle connections above minIdle are closed after this long unused
+    private static final long IDLE_TIMEOUT_MILLIS = 60_000;
+    private static final long HOUSEKEEPING_MILLIS = 5_000;
+
+    private final class Pooled {
+        final Connection physical;
+        final StatementCache statements = new StatementCache(statementCacheSize, statementEvictions);
+        long lastUsed = System.currentTimeMillis();
+
+        Pooled(Connection physical) {
+            this.physical = physical;
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        final Pooled pooled;
+        final Connection proxy;
+        final long borrowedAt = System.currentTimeMillis();
+        final Thread owner = Thread.currentThread();
+        // where it was borrowed, kept only when leak detection is on
+        final Throwable site;
+        volatile boolean closed;
+        volatile boolean bound;
+        boolean reported;
+        // statement handles not closed yet
+        final List<CachedStatement> statements = new ArrayList<>();
+
+        Lease(Pooled pooled) {
+            this.pooled = pooled;
+            this.site = leakThresholdMillis > 0 ? new Throwable("borrowed here") : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!bound) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Lease[" + pooled.physical + "]";
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+                    // prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys)
+                    if (method.getName().equals("prepareStatement") && statementCacheSize > 0
+                            && (args.length == 1 || (args.length == 2 && args[1] instanceof Integer))) {
+                        int keys = args.length == 1 ? Statement.NO_GENERATED_KEYS : (Integer) args[1];
+                        return profiled(prepare((String) args[0], keys), method, args);
+                    }
+            }
+            try {
+                return profiled(method.invoke(pooled.physical, args), method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        // statements from createStatement, prepareStatement and prepareCall report to the profiler
+        private Object profiled(Object result, Method method, Object[] args) {
+            if (profiler == null || !(result instanceof Statement)) {
+                return result;
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+            return ProfiledStatement.wrap((Statement) result, method.getReturnType(), sql, profiler);
+        }
+
+        private PreparedStatement prepare(String sql, int generatedKeys) throws SQLException {
+            String key = generatedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+            PreparedStatement ps = pooled.statements.take(key);
+            if (ps != null) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                ps = pooled.physical.prepareStatement(sql, generatedKeys);
+            }
+            CachedStatement handle = new CachedStatement(this, key, ps);
+            statements.add(handle);
+            return handle.proxy;
+        }
+    }
+
+    private final class CachedStatement implements InvocationHandler {
+        final Lease lease;
+        final String key;
+        final PreparedStatement physical;
+        final PreparedStatement proxy;
+        // result sets it produced, closed with it like a real close would
+        final List<ResultSet> results = new ArrayList<>(1);
+        boolean closed;
+        // failed once; re-prepared next time instead of trusted
+        boolean broken;
+        // an option like the fetch size was changed; it would carry into the next use
+        boolean tuned;
+
+        CachedStatement(Lease lease, String key, PreparedStatement physical) {
+            this.lease = lease;
+            this.key = key;
+            this.physical = physical;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + physical + "]";
+                case "setFetchSize":
+                case "setFetchDirection":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setMaxFieldSize":
+                case "setQueryTimeout":
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    if (closed) {
+                        throw new SQLException("Statement is closed");
+                    }
+                    tuned = true;
+                    break;
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement is closed");
+                    }
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                if (result instanceof ResultSet) {
+                    results.add((ResultSet) result);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    broken = true;
+                }
+                throw e.getCause();
+            }
+        }
+
+        void giveBack() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lease.statements.remove(this);
+            try {
+                for (ResultSet rs : results) {
+                    rs.close();
+                }
+                if (!broken && !tuned) {
+                    physical.clearParameters();
+                    physical.clearBatch();
+                    lease.pooled.statements.put(key, physical);
+                    return;
+                }
+            } catch (SQLException e) {
+                // not reusable, fall through and drop it
+            }
+            try {
+                physical.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minIdle;
+    private final int maxIdle;
+    private final int maxTotal;
+    private final long maxWaitMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+    private final QueryProfiler profiler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+    // most recently returned first, so a few hot connections serve light load
+    private final Deque<Pooled> idle = new ArrayDeque<>();
+    private int total;
+    private boolean shutdown;
+
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lease> bound = new ThreadLocal<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "pool-housekeeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // profiler may be null to run without one
+    public ConnectionPool(String url, String username, String password, int minIdle, int maxIdle,
+                          int maxTotal, long maxWaitMillis, long leakThresholdMillis, int statementCacheSize,
+                          QueryProfiler profiler) {
+        if (minIdle < 0 || maxIdle < minIdle || maxTotal < 1 || maxTotal < maxIdle) {
+            throw new IllegalArgumentException("need 0 <= minIdle <= maxIdle <= maxTotal, maxTotal >= 1");
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minIdle = minIdle;
+        this.maxIdle = maxIdle;
+        this.maxTotal = maxTotal;
+        this.maxWaitMillis = maxWaitMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.profiler = profiler;
+        if (profiler != null) {
+            profiler.attach(this);
+        }
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_MILLIS, HOUSEKEEPING_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    // the thread's transaction connection if it has one, otherwise a fresh lease
+    public Connection getConnection() throws SQLException {
+        Lease lease = bound.get();
+        return lease != null ? lease.proxy : borrow().proxy;
+    }
+
+    // binds a connection with autocommit off to this thread until end()
+    public Connection begin() throws SQLException {
+        if (bound.get() != null) {
+            throw new SQLException("A transaction is already active on " + Thread.currentThread().getName());
+        }
+        Lease lease = borrow();
+        try {
+            lease.pooled.physical.setAutoCommit(false);
+        } catch (SQLException e) {
+            release(lease);
+            throw e;
+        }
+        lease.bound = true;
+        bound.set(lease);
+        return lease.proxy;
+    }
+
+    // commits or rolls back the thread's transaction and returns its connection
+    public void end(boolean commit) throws SQLException {
+        Lease lease = bound.get();
+        if (lease == null) {
+            return;
+        }
+        bound.remove();
+        lease.bound = false;
+        try {
+            Connection con = lease.pooled.physical;
+            if (commit) {
+                con.commit();
+            } else {
+                con.rollback();
+            }
+            con.setAutoCommit(true);
+        } finally {
+            release(lease);
+        }
+    }
+
+    public boolean inTransaction() {
+        return bound.get() != null;
+    }
+
+    private Lease borrow() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        boolean waited = false;
+        while (true) {
+            Pooled pooled = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (shutdown) {
+                        throw new SQLException("Connection pool is shut down");
+                    }
+                    pooled = idle.pollFirst();
+                    if (pooled != null) {
+                        break;
+                    }
+                    if (total < maxTotal) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        waits.increment();
+                    }
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        timeouts.increment();
+                        throw new SQLException("Timed out after " + maxWaitMillis
+                                + " ms waiting for a connection, all " + maxTotal + " in use");
+                    }
+                    returned.awaitNanos(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    pooled = open();
+                } catch (SQLException e) {
+                    forget();
+                    throw e;
+                }
+            } else if (System.currentTimeMillis() - pooled.lastUsed > VALIDATE_AFTER_MILLIS
+                    && !valid(pooled)) {
+                validationFailures.increment();
+                destroy(pooled);
+                continue;
+            }
+
+            long waitedNanos = System.nanoTime() - start;
+            acquisitions.increment();
+            waitNanos.addAndGet(waitedNanos);
+            maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+            Lease lease = new Lease(pooled);
+            leased.add(lease);
+            return lease;
+        }
+    }
+
+    private void release(Lease lease) {
+        if (lease.closed) {
+            return;
+        }
+        // handles left open go back to the cache, they'd leak otherwise
+        for (CachedStatement st : new ArrayList<>(lease.statements)) {
+            st.giveBack();
+        }
+        lease.closed = true;
+        leased.remove(lease);
+        Pooled pooled = lease.pooled;
+        try {
+            // a lease abandoned mid-transaction must not hand the next owner its work
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+            return;
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (!shutdown && idle.size() < maxIdle) {
+                idle.addFirst(pooled);
+                returned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destroy(pooled);
+    }
+
+    private Pooled open() throws SQLException {
+        Connection con = DriverManager.getConnection(url, username, password);
+        created.increment();
+        return new Pooled(con);
+    }
+
+    private boolean valid(Pooled pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(Pooled pooled) {
+        pooled.statements.closeAll();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {
+        }
+        destroyed.increment();
+        forget();
+    }
+
+    // a slot freed by a connection that was closed or never opened
+    private void forget() {
+        lock.lock();
+        try {
+            total--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // reports leases held past the threshold, closes long idle connections above
+    // minIdle and opens new ones up to it
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        if (leakThresholdMillis > 0) {
+            for (Lease lease : leased) {
+                if (!lease.reported && !lease.bound && now - lease.borrowedAt > leakThresholdMillis) {
+                    lease.reported = true;
+                    leaks.increment();
+                    System.out.println("Possible connection leak: held " + (now - lease.borrowedAt)
+                            + " ms by " + lease.owner.getName());
+                    lease.site.printStackTrace(System.out);
+                }
+            }
+        }
+
+        List<Pooled> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Iterator<Pooled> it = idle.descendingIterator(); it.hasNext() && idle.size() > minIdle; ) {
+                Pooled pooled = it.next();
+                if (now - pooled.lastUsed > IDLE_TIMEOUT_MILLIS) {
+                    it.remove();
+                    expired.add(pooled);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Pooled pooled : expired) {
+            destroy(pooled);
+        }
+
+        while (true) {
+            lock.lock();
+            try {
+                if (shutdown || idle.size() >= minIdle || total >= maxTotal) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            Pooled pooled;
+            try {
+                pooled = open();
+            } catch (SQLException e) {
+                forget();
+                System.out.println("Pool could not open a connection: " + e.getMessage());
+                return;
+            }
+            lock.lock();
+            try {
+                idle.addLast(pooled);
+                returned.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // closes the idle connections; leases still out are closed when they come back
+    public void shutdown() {
+        housekeeper.shutdown();
+        List<Pooled> closing;
+        lock.lock();
+        try {
+            shutdown = true;
+            closing = new ArrayList<>(idle);
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Pooled pooled : closing) {
+            destroy(pooled);
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            long n = acquisitions.sum();
+            return new Stats(total, idle.size(), leased.size(), n, waits.sum(), timeouts.sum(),
+                    n == 0 ? 0 : waitNanos.get() / n / 1000, maxWaitNanos.get() / 1000,
+                    created.sum(), destroyed.sum(), validationFailures.sum(), leaks.sum(),
+                    statementHits.sum(), statementMisses.sum(), statementEvictions.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static final class Stats {
+        private final int open;
+        private final int idle;
+        private final int inUse;
+        private final long acquisitions;
+        private final long waits;
+        private final long timeouts;
+        private final long avgWaitMicros;
+        private final long maxWaitMicros;
+        private final long created;
+        private final long destroyed;
+        private final long validationFailures;
+        private final long leaks;
+        private final long statementHits;
+        private final long statementMisses;
+        private final long statementEvictions;
+
+        Stats(int open, int idle, int inUse, long acquisitions, long waits, long timeouts, long avgWaitMicros,
+              long maxWaitMicros, long created, long destroyed, long validationFailures, long leaks,
+              long statementHits, long statementMisses, long statementEvictions) {
+            this.open = open;
+            this.idle = idle;
+            this.inUse = inUse;
+            this.acquisitions = acquisitions;
+            this.waits = waits;
+            this.timeouts = timeouts;
+            this.avgWaitMicros = avgWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+            this.statementEvictions = statementEvictions;
+        }
+
+        public int getOpen() { return open; }
+        public int getIdle() { return idle; }
+        public int getInUse() { return inUse; }
+        public long getAcquisitions() { return acquisitions; }
+        public long getWaits() { return waits; }
+        public long getTimeouts() { return timeouts; }
+        public long getAvgWaitMicros() { return avgWaitMicros; }
+        public long getMaxWaitMicros() { return maxWaitMicros; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getValidationFailures() { return validationFailures; }
+        public long getLeaks() { return leaks; }
+        public long getStatementHits() { return statementHits; }
+        public long getStatementMisses() { return statementMisses; }
+        public long getStatementEvictions() { return statementEvictions; }
+
+        @Override
+        public String toString() {
+            return "open=" + open + " idle=" + idle + " inUse=" + inUse
+                    + " acquisitions=" + acquisitions + " waits=" + waits + " timeouts=" + timeouts
+                    + " avgWait=" + avgWaitMicros + "us maxWait=" + maxWaitMicros + "us"
+                    + " created=" + created + " destroyed=" + destroyed
+                    + " validationFailures=" + validationFailures + " leaks=" + leaks
+                    + " statements: hits=" + statementHits + " misses=" + statementMisses
+                    + " evictions=" + statementEvictions;
+        }
+    }
+}
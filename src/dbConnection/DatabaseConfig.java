@@ -3,60 +3,68 @@ package dbConnection;
 import java.sql.*;
 
 public class DatabaseConfig {
-        static String url = "jdbc:mysql://localhost:3306/trading_app";
+        static String url = "jdbc:mysql://localhost:3306/trading_app?useServerPrepStmts=true&useCursorFetch=true";
         static String username = "root_user1";
         static String password = "Root@123";
         static String query = "select * from users";
-        static Connection con = null;
-
-        public static Connection getConnection(){
-            try{
-                con = DriverManager.getConnection(url, username, password);
-            }catch (Exception e){
-                e.printStackTrace();
-            }
-            return con;
+        // every statement shape is timed; one slower than 50 ms gets its plan captured
+        static QueryProfiler profiler = new QueryProfiler(50);
+        // lanes, the persister and the ledger flushers each take their own connection;
+        // a transaction stays on the thread that began it. Statements are prepared on the
+        // server and up to 64 per connection are kept for reuse.
+        static ConnectionPool pool = new ConnectionPool(url, username, password,
+                2, 8, 16, 5_000, 60_000, 64, profiler);
+
+        public static Connection getConnection() throws SQLException {
+            return pool.getConnection();
         }
 
     public static void beginTransaction() throws SQLException {
-        getConnection().setAutoCommit(false);
+        pool.begin();
     }
 
     public static void commit() throws SQLException {
-        if (con != null && !con.isClosed()) {
-            con.commit();
-            con.setAutoCommit(true);
-        }
+        pool.end(true);
     }
 
     public static void rollback() {
         try {
-            if (con != null && !con.isClosed()) {
-                con.rollback();
-                con.setAutoCommit(true);
-            }
+            pool.end(false);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+
+    // names the business operation the statements on this thread belong to, until
+    // endOperation(); pair them in a try/finally
+    public static void beginOperation(String name) {
+        profiler.begin(name);
+    }
+
+    public static void endOperation() {
+        profiler.end();
+    }
+
+    public static QueryProfiler getProfiler() {
+        return profiler;
+    }
+
     public static void closeConnection() {
-        try {
-            if (con != null && !con.isClosed()) {
-                con.close();
-                System.out.println("Database connection closed");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        System.out.println("Connection pool: " + pool.getStats());
+        System.out.println(profiler.getReport());
+        profiler.shutdown();
+        pool.shutdown();
+        System.out.println("Database connection closed");
     }
 
 
     public static void resetDatabase() throws SQLException {
-        Connection conn = getConnection();
-        Statement stmt = conn.createStatement();
-        try {
-            conn.setAutoCommit(false);
+        beginTransaction();
+        try (Statement stmt = getConnection().createStatement()) {
             stmt.execute("SET FOREIGN_KEY_CHECKS = 0");
 
             stmt.execute("TRUNCATE TABLE transactions");
@@ -66,6 +74,9 @@ public class DatabaseConfig {
             stmt.execute("TRUNCATE TABLE users");
             stmt.execute("TRUNCATE TABLE demat_accounts");
             stmt.execute("TRUNCATE TABLE stocks");
+            stmt.execute("DELETE FROM journal_checkpoint");
+            stmt.execute("DELETE FROM journal_applied");
+            stmt.execute("DELETE FROM candles");
 
             stmt.execute("SET FOREIGN_KEY_CHECKS = 1");
 
@@ -77,14 +88,12 @@ public class DatabaseConfig {
             stmt.execute("insert into trading_accounts(user_id, balance, reserved_balance) values (1, 8000.00, 0.00)");
             stmt.execute("insert into stock_holdings (demat_id, stock_id, total_quantity, reserved_quantity) values(1, 1, 1000, 300)");
             stmt.execute("insert into orders (user_id, stock_id, quantity, price, is_buy) values (1, 1, 300, 1500.00, false)");
-            conn.commit();
+            commit();
             System.out.println("Database reset to initial state!");
 
         } catch (SQLException e) {
-            conn.rollback();
+            rollback();
             throw e;
-        } finally {
-            conn.setAutoCommit(true);
         }
     }
 }
\ No newline at end of file
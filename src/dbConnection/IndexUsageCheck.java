@@ -1,23 +1,62 @@
 package dbConnection;
 
 import java.sql.*;
+import java.util.*;
+
 public class IndexUsageCheck {
     public static void check() throws SQLException {
         String sql = """
-                EXPLAIN ANALYZE
                 SELECT *
                 FROM orders
                 WHERE stock_id = ? AND is_buy = ?
                 ORDER BY price ASC, order_id ASC
                 LIMIT 10
                 """;
-        Connection conn = DatabaseConfig.getConnection();
-        PreparedStatement ps = conn.prepareStatement(sql);
-        ps.setInt(1, 1);
-        ps.setInt(2, 0);
-        ResultSet rs = ps.executeQuery();
-        while (rs.next()) {
-            System.out.println(rs.getString(1));
+        // one branch of the user history page (TransactionDAO.pageByUserId); expect a
+        // range on idx_transactions_buyer_id read backwards, no filesort
+        String history = """
+                SELECT *
+                FROM transactions
+                WHERE buyer_id = ? AND transactions_id < ?
+                ORDER BY transactions_id DESC
+                LIMIT 21
+                """;
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            for (String line : explain(conn, sql, new Object[]{1, 0}, true)) {
+                System.out.println(line);
+            }
+            for (String line : explain(conn, history, new Object[]{1, Integer.MAX_VALUE}, true)) {
+                System.out.println(line);
+            }
+        }
+    }
+
+    // the plan MySQL picks for sql with these parameters, one line per row of the EXPLAIN.
+    // analyze runs the statement too (EXPLAIN ANALYZE), so only use it on reads.
+    static List<String> explain(Connection conn, String sql, Object[] params, boolean analyze) throws SQLException {
+        List<String> lines = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement((analyze ? "EXPLAIN ANALYZE " : "EXPLAIN ") + sql)) {
+            for (int i = 0; params != null && i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    if (meta.getColumnCount() == 1) {
+                        lines.add(rs.getString(1));
+                        continue;
+                    }
+                    StringBuilder line = new StringBuilder();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        if (rs.getObject(i) != null) {
+                            line.append(line.length() > 0 ? ", " : "")
+                                    .append(meta.getColumnLabel(i)).append("=").append(rs.getString(i));
+                        }
+                    }
+                    lines.add(line.toString());
+                }
+            }
         }
+        return lines;
     }
 }
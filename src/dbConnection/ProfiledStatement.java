@@ -0,0 +1,106 @@
+package dbConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Arrays;
+
+// statement handle that reports every execute to the profiler: how long it took, the rows
+// it changed, and the parameters bound for it in case the plan is wanted
+final class ProfiledStatement implements InvocationHandler {
+
+    private final Statement target;
+    // null for a plain Statement, whose sql comes with each execute
+    private final String sql;
+    private final QueryProfiler profiler;
+    private Object[] params = new Object[8];
+    private int paramCount;
+
+    private ProfiledStatement(Statement target, String sql, QueryProfiler profiler) {
+        this.target = target;
+        this.sql = sql;
+        this.profiler = profiler;
+    }
+
+    static Statement wrap(Statement target, Class<?> type, String sql, QueryProfiler profiler) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                new ProfiledStatement(target, sql, profiler));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Profiled[" + target + "]";
+            case "clearParameters":
+                Arrays.fill(params, null);
+                paramCount = 0;
+                break;
+            default:
+                // setInt(1, x), setNull(2, type), setObject(3, x, type) ...
+                if (sql != null && name.startsWith("set") && args != null && args.length >= 2
+                        && args[0] instanceof Integer) {
+                    bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                } else if (name.startsWith("execute")) {
+                    return execute(method, args);
+                }
+        }
+        return call(method, args);
+    }
+
+    private Object execute(Method method, Object[] args) throws Throwable {
+        String text = args != null && args.length > 0 && args[0] instanceof String s ? s : sql;
+        long start = System.nanoTime();
+        Object result = null;
+        boolean failed = true;
+        try {
+            result = call(method, args);
+            failed = false;
+            return result;
+        } finally {
+            profiler.record(text != null ? text : "(statement batch)", System.nanoTime() - start,
+                    rows(result), failed, params, paramCount);
+        }
+    }
+
+    private void bind(int index, Object value) {
+        if (index < 1) {
+            return;
+        }
+        if (index > params.length) {
+            params = Arrays.copyOf(params, Math.max(index, params.length * 2));
+        }
+        params[index - 1] = value;
+        paramCount = Math.max(paramCount, index);
+    }
+
+    // rows an update or batch changed; queries report theirs once read
+    private static long rows(Object result) {
+        long rows = 0;
+        if (result instanceof Integer n) {
+            rows = n;
+        } else if (result instanceof Long n) {
+            rows = n;
+        } else if (result instanceof int[] counts) {
+            for (int n : counts) rows += Math.max(0, n);
+        } else if (result instanceof long[] counts) {
+            for (long n : counts) rows += Math.max(0, n);
+        }
+        return Math.max(0, rows);
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package dbConnection;
+
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.Pattern;
+import javax.management.ObjectName;
+
+// time spent in MySQL per statement shape and per business operation. The pool hands out
+// statement handles that report every execute here; a shape is the sql with literals, IN
+// lists and repeated VALUES tuples folded, so every page size and batch length of one
+// query lands on one line. Each shape keeps a log scale latency histogram (25% wide
+// buckets) for p50/p99, the max and the rows it returned or changed. The first time a
+// shape runs slower than the threshold its EXPLAIN is captured in the background with
+// the parameters of that run.
+//
+// Operations are bound to the thread between begin("settlement") and end(), in a
+// try/finally, and may nest; statements outside any operation count under their
+// thread's name.
+public class QueryProfiler implements QueryProfilerMXBean {
+
+    private static final int MAX_SHAPES = 1024;
+    private static final int BUCKETS = 168;
+    private static final int REPORT_SHAPES = 20;
+
+    private static final Pattern STRINGS = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBERS = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern IN_LISTS = Pattern.compile("IN \\(\\?(?:, \\?)*\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TUPLES = Pattern.compile("(\\((?:\\?|NULL)(?:, (?:\\?|NULL))*\\))(?:, \\1)+");
+
+    static final class Shape {
+        final String fingerprint;
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        final AtomicBoolean explained = new AtomicBoolean();
+        volatile String plan;
+
+        Shape(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        long percentileMicros(double q) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.get(i);
+            }
+            long target = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += histogram.get(i);
+                if (seen >= target && seen > 0) {
+                    return upperMicros(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    static final class Operation {
+        final String name;
+        final LongAdder runs = new LongAdder();
+        final LongAdder statements = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+
+        Operation(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+    private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    // innermost operation first
+    private final ThreadLocal<ArrayDeque<Operation>> current = ThreadLocal.withInitial(ArrayDeque::new);
+    // bound while the profiler runs its own EXPLAINs, which are not recorded
+    private final Operation muted = new Operation("profiler");
+    private volatile long slowThresholdNanos;
+    private volatile ConnectionPool pool;
+    private final ExecutorService explainer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "query-explainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public QueryProfiler(long slowThresholdMillis) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("trading_app:type=QueryProfiler"));
+        } catch (Exception e) {
+            System.out.println("Query profiler not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    // the pool that runs the captured EXPLAINs
+    void attach(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public void begin(String name) {
+        Operation op = operations.computeIfAbsent(name, Operation::new);
+        op.runs.increment();
+        current.get().push(op);
+    }
+
+    // ends the innermost operation, back to the one it was nested in
+    public void end() {
+        current.get().poll();
+    }
+
+    // one execute of sql. The first paramCount params are the values bound for it, by
+    // position; they are copied only if the run turns out slow.
+    void record(String sql, long nanos, long rows, boolean failed, Object[] params, int paramCount) {
+        Operation op = current.get().peek();
+        if (op == muted) {
+            return;
+        }
+        Shape shape = shape(sql);
+        shape.calls.increment();
+        shape.nanos.add(nanos);
+        shape.maxNanos.accumulate(nanos);
+        shape.histogram.incrementAndGet(bucket(nanos / 1000));
+        if (rows > 0) {
+            shape.rows.add(rows);
+        }
+        if (failed) {
+            shape.errors.increment();
+        }
+        if (op == null) {
+            op = operations.computeIfAbsent("[" + Thread.currentThread().getName() + "]", Operation::new);
+        }
+        op.statements.increment();
+        op.nanos.add(nanos);
+
+        if (nanos > slowThresholdNanos && !failed && explainable(sql)
+                && shape.explained.compareAndSet(false, true)) {
+            System.out.println("Slow query (" + nanos / 1_000_000 + " ms), capturing its plan: " + shape.fingerprint);
+            Object[] bound = Arrays.copyOf(params, paramCount);
+            explainer.execute(() -> explain(shape, sql, bound));
+        }
+    }
+
+    // rows a query returned, reported by whoever read them
+    public void recordRows(String sql, long rows) {
+        if (rows > 0) {
+            shape(sql).rows.add(rows);
+        }
+    }
+
+    @Override
+    public long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    @Override
+    public void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public void reset() {
+        shapes.clear();
+        operations.clear();
+    }
+
+    public void shutdown() {
+        explainer.shutdownNow();
+    }
+
+    // shapes by total time, then operations by total time, then the captured plans
+    @Override
+    public String getReport() {
+        List<Shape> byTime = new ArrayList<>(shapes.values());
+        byTime.sort(Comparator.comparingLong((Shape s) -> s.nanos.sum()).reversed());
+        long dbNanos = 0;
+        for (Shape s : byTime) {
+            dbNanos += s.nanos.sum();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Query profile: %d shapes, %d ms in MySQL%n", byTime.size(), dbNanos / 1_000_000));
+        sb.append(String.format("%8s %9s %6s %8s %8s %8s %8s %5s  %s%n",
+                "calls", "total ms", "share", "p50 us", "p99 us", "max us", "rows", "errs", "shape"));
+        for (Shape s : byTime.subList(0, Math.min(REPORT_SHAPES, byTime.size()))) {
+            long nanos = s.nanos.sum();
+            long max = s.maxNanos.get() / 1000;
+            // a bucket's upper bound can lie past the slowest run in it
+            sb.append(String.format("%8d %9d %5.1f%% %8d %8d %8d %8d %5d  %s%n",
+                    s.calls.sum(), nanos / 1_000_000, share(nanos, dbNanos),
+                    Math.min(max, s.percentileMicros(0.50)), Math.min(max, s.percentileMicros(0.99)), max,
+                    s.rows.sum(), s.errors.sum(), abbreviate(s.fingerprint)));
+        }
+
+        List<Operation> ops = new ArrayList<>(operations.values());
+        ops.sort(Comparator.comparingLong((Operation o) -> o.nanos.sum()).reversed());
+        sb.append(String.format("%n%-16s %8s %10s %9s %9s %6s%n",
+                "operation", "runs", "statements", "per run", "total ms", "share"));
+        for (Operation o : ops) {
+            long runs = o.runs.sum();
+            long statements = o.statements.sum();
+            long nanos = o.nanos.sum();
+            sb.append(String.format("%-16s %8d %10d %9.1f %9d %5.1f%%%n", o.name, runs, statements,
+                    runs == 0 ? 0.0 : (double) statements / runs, nanos / 1_000_000, share(nanos, dbNanos)));
+        }
+
+        for (Shape s : byTime) {
+            if (s.plan != null) {
+                sb.append(String.format("%nEXPLAIN %s%n%s", s.fingerprint, s.plan));
+            }
+        }
+        return sb.toString();
+    }
+
+    private Shape shape(String sql) {
+        String fingerprint = fingerprints.get(sql);
+        if (fingerprint == null) {
+            fingerprint = fingerprint(sql);
+            if (fingerprints.size() >= MAX_SHAPES * 4) {
+                fingerprints.clear();
+            }
+            fingerprints.put(sql, fingerprint);
+        }
+        Shape shape = shapes.get(fingerprint);
+        if (shape == null) {
+            if (shapes.size() >= MAX_SHAPES) {
+                // a flood of unparameterized sql; fold the rest into one line
+                fingerprint = "(other shapes)";
+            }
+            shape = shapes.computeIfAbsent(fingerprint, Shape::new);
+        }
+        return shape;
+    }
+
+    static String fingerprint(String sql) {
+        String s = SPACES.matcher(sql.trim()).replaceAll(" ");
+        s = STRINGS.matcher(s).replaceAll("?");
+        s = NUMBERS.matcher(s).replaceAll("?");
+        s = IN_LISTS.matcher(s).replaceAll("IN (...)");
+        s = TUPLES.matcher(s).replaceAll("$1, ...");
+        return s;
+    }
+
+    private static boolean explainable(String sql) {
+        String verb = sql.stripLeading();
+        int end = 0;
+        while (end < verb.length() && Character.isLetter(verb.charAt(end))) {
+            end++;
+        }
+        return switch (verb.substring(0, end).toUpperCase()) {
+            case "SELECT", "UPDATE", "DELETE", "INSERT", "REPLACE" -> true;
+            default -> false;
+        };
+    }
+
+    private void explain(Shape shape, String sql, Object[] params) {
+        ConnectionPool pool = this.pool;
+        if (pool == null) {
+            return;
+        }
+        current.get().push(muted);
+        try (Connection con = pool.getConnection()) {
+            shape.plan = String.join("\n", IndexUsageCheck.explain(con, sql, params, false)) + "\n";
+        } catch (SQLException e) {
+            shape.plan = "(EXPLAIN failed: " + e.getMessage() + ")\n";
+        } finally {
+            current.get().poll();
+        }
+    }
+
+    // log2 buckets of the latency in micros, each split in four
+    static int bucket(long micros) {
+        if (micros < 4) {
+            return (int) Math.max(0, micros);
+        }
+        int e = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (e - 2)) & 3;
+        return Math.min(BUCKETS - 1, (e - 1) * 4 + sub);
+    }
+
+    static long upperMicros(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int e = bucket / 4 + 1;
+        int sub = bucket % 4;
+        return ((4L + sub) << (e - 2)) + (1L << (e - 2)) - 1;
+    }
+
+    private static double share(long part, long whole) {
+        return whole == 0 ? 0.0 : 100.0 * part / whole;
+    }
+
+    private static String abbreviate(String s) {
+        return s.length() <= 120 ? s : s.substring(0, 117) + "...";
+    }
+}
@@ -0,0 +1,13 @@
+package dbConnection;
+
+// the profiler as seen from jconsole / jcmd, under trading_app:type=QueryProfiler
+public interface QueryProfilerMXBean {
+
+    String getReport();
+
+    long getSlowThresholdMillis();
+
+    void setSlowThresholdMillis(long millis);
+
+    void reset();
+}
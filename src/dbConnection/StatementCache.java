@@ -0,0 +1,61 @@
+package dbConnection;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// prepared statements of one physical connection, keyed by sql, least recently used
+// first. A statement is taken out while a handle uses it and put back when the handle is
+// closed, so two handles never share one; when the cache is full the least recently used
+// idle statement is closed.
+class StatementCache {
+
+    private final int capacity;
+    private final LongAdder evictions;
+    private final LinkedHashMap<String, PreparedStatement> idle;
+
+    StatementCache(int capacity, LongAdder evictions) {
+        this.capacity = capacity;
+        this.evictions = evictions;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity) {
+                    return false;
+                }
+                close(eldest.getValue());
+                StatementCache.this.evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    // the cached statement for key, or null on a miss
+    synchronized PreparedStatement take(String key) {
+        return idle.remove(key);
+    }
+
+    synchronized void put(String key, PreparedStatement ps) {
+        // a second handle prepared the same sql while the first was out; keep one
+        if (idle.containsKey(key)) {
+            close(ps);
+            return;
+        }
+        idle.put(key, ps);
+    }
+
+    synchronized void closeAll() {
+        for (PreparedStatement ps : idle.values()) {
+            close(ps);
+        }
+        idle.clear();
+    }
+
+    private static void close(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dbOperations;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// label -> position for one statement shape. Resolved from the metadata the first time
+// a sql string runs and shared by later runs of it; mappers turn the labels they need
+// into positions once per query, not per row. Every run checks the cached labels against
+// its metadata, so a SELECT * over a table that changed shape gets a fresh index.
+public final class ColumnIndex {
+
+    private static final int MAX_SHAPES = 1024;
+    private static final Map<String, ColumnIndex> shapes = new ConcurrentHashMap<>();
+
+    private final String[] labels;
+    private final Map<String, Integer> positions;
+
+    private ColumnIndex(ResultSetMetaData meta) throws SQLException {
+        int count = meta.getColumnCount();
+        labels = new String[count + 1];
+        positions = new HashMap<>(count * 2);
+        for (int i = 1; i <= count; i++) {
+            labels[i] = meta.getColumnLabel(i);
+            // a repeated label resolves to its first column
+            positions.putIfAbsent(labels[i], i);
+        }
+    }
+
+    static ColumnIndex of(String sql, ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        ColumnIndex index = shapes.get(sql);
+        if (index == null || !index.matches(meta)) {
+            index = new ColumnIndex(meta);
+            if (shapes.size() >= MAX_SHAPES) {
+                shapes.clear();
+            }
+            shapes.put(sql, index);
+        }
+        return index;
+    }
+
+    private boolean matches(ResultSetMetaData meta) throws SQLException {
+        if (meta.getColumnCount() != labels.length - 1) {
+            return false;
+        }
+        for (int i = 1; i < labels.length; i++) {
+            if (!labels[i].equals(meta.getColumnLabel(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int get(String label) throws SQLException {
+        Integer i = positions.get(label);
+        if (i == null) {
+            throw new SQLException("Column not in result: " + label);
+        }
+        return i;
+    }
+
+    public boolean has(String label) {
+        return positions.containsKey(label);
+    }
+
+    public int size() {
+        return labels.length - 1;
+    }
+
+    public String label(int position) {
+        return labels[position];
+    }
+}
@@ -7,11 +7,28 @@ public class Condition {
     private ArrayList<String> columns = new ArrayList<>();
     private ArrayList<Object> values = new ArrayList<>();
     private ArrayList<Boolean> isNullCols = new ArrayList<>();
+    // sql for the right hand side, null for a plain "?"
+    private ArrayList<String> expressions = new ArrayList<>();
 
     public Condition add(String column, Object value) {
         columns.add(column);
         values.add(value);
         isNullCols.add(false);
+        expressions.add(null);
+        return this;
+    }
+
+    // SET column = column + ?, relative to the value in the row
+    public Condition addDelta(String column, Object delta) {
+        return addExpression(column, column + " + ?", delta);
+    }
+
+    // column = <expression>, with one value per ? in it
+    public Condition addExpression(String column, String expression, Object... params) {
+        columns.add(column);
+        values.add(params);
+        isNullCols.add(false);
+        expressions.add(expression);
         return this;
     }
 
@@ -20,6 +37,7 @@ public class Condition {
         columns.add(column);
         values.add(null);
         isNullCols.add(true);
+        expressions.add(null);
         return this;
     }
 
@@ -32,11 +50,7 @@ public class Condition {
             if (i > 0) {
                 sb.append(" AND ");
             }
-            if (isNullCols.get(i)) {
-                sb.append(columns.get(i)).append(" = NULL");
-            } else {
-                sb.append(columns.get(i)).append(" = ?");
-            }
+            sb.append(columns.get(i)).append(" = ").append(placeholder(i));
         }
         return sb.toString();
     }
@@ -51,20 +65,38 @@ public class Condition {
             if (i > 0) {
                 sb.append(", ");
             }
-            if (isNullCols.get(i)) {
-                sb.append(columns.get(i)).append(" = NULL");
-            } else {
-                sb.append(columns.get(i)).append(" = ?");
-            }
+            sb.append(columns.get(i)).append(" = ").append(placeholder(i));
         }
         return sb.toString();
     }
 
+    // for INSERT: "a, b, c"
+    public String toColumnsSQL() {
+        return String.join(", ", columns);
+    }
+
+    // for INSERT: "(?, NULL, ?)", one row of values
+    public String toValuesSQL() {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(placeholder(i));
+        }
+        return sb.append(")").toString();
+    }
+
     // values list (not NULL values)
     public ArrayList<Object> getValues() {
         ArrayList<Object> nonNullValues = new ArrayList<>();
         for (int i = 0; i < values.size(); i++) {
-            if (!isNullCols.get(i)) {
+            if (isNullCols.get(i)) {
+                continue;
+            }
+            if (expressions.get(i) != null) {
+                nonNullValues.addAll(Arrays.asList((Object[]) values.get(i)));
+            } else {
                 nonNullValues.add(values.get(i));
             }
         }
@@ -74,4 +106,38 @@ public class Condition {
     public boolean isEmpty() {
         return columns.isEmpty();
     }
+
+    // per column access for statements that split a condition up (UpdateOperation.updateAll)
+    int size() {
+        return columns.size();
+    }
+
+    boolean hasColumn(String column) {
+        return columns.contains(column);
+    }
+
+    String columnAt(int i) {
+        return columns.get(i);
+    }
+
+    String placeholderAt(int i) {
+        return placeholder(i);
+    }
+
+    List<Object> valuesAt(int i) {
+        if (isNullCols.get(i)) {
+            return Collections.emptyList();
+        }
+        if (expressions.get(i) != null) {
+            return Arrays.asList((Object[]) values.get(i));
+        }
+        return Collections.singletonList(values.get(i));
+    }
+
+    private String placeholder(int i) {
+        if (isNullCols.get(i)) {
+            return "NULL";
+        }
+        return expressions.get(i) != null ? expressions.get(i) : "?";
+    }
 }
@@ -5,12 +5,14 @@ import java.sql.*;
 
 public class DbHelper {
 
-    private static Connection conn = null;
-
+    // a pooled connection, or the one bound to this thread's transaction. Close it when
+    // done; closing the transaction's connection leaves it open for the commit.
     public static Connection getConnection() throws SQLException {
-        if (conn == null || conn.isClosed()) {
-            conn = DatabaseConfig.getConnection();
-        }
-        return conn;
+        return DatabaseConfig.getConnection();
+    }
+
+    // rows a query handed back, for the profiler; updates report theirs on their own
+    static void recordRows(String sql, long rows) {
+        DatabaseConfig.getProfiler().recordRows(sql, rows);
     }
 }
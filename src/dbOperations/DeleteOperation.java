@@ -5,27 +5,41 @@ import java.util.*;
 
 public class DeleteOperation {
     public static int delete(String table, Condition condition) throws SQLException {
+        return delete(table, condition, null);
+    }
+
+    // guard adds a free form check to the WHERE, e.g. total_quantity <= 0
+    public static int delete(String table, Condition condition, SpecialCondition guard) throws SQLException {
 
         String tableName = table.split(" ")[0];
 
-        String sql;
-        if (condition == null || condition.isEmpty()) {
-            sql = "DELETE FROM " + tableName;
-        } else {
-            sql = "DELETE FROM " + tableName + " WHERE " + condition.toSQL();
+        boolean hasWhere = condition != null && !condition.isEmpty();
+        boolean hasGuard = guard != null && !guard.isEmpty();
+        String sql = "DELETE FROM " + tableName;
+        if (hasWhere) {
+            sql += " WHERE " + condition.toSQL();
+        }
+        if (hasGuard) {
+            sql += (hasWhere ? " AND " : " WHERE ") + guard.toSQL();
         }
 
    //     System.out.println("DEBUG DELETE SQL: " + sql);
 
         // Execute
-        Connection con = DbHelper.getConnection();
-        PreparedStatement ps = con.prepareStatement(sql);
-        if (condition != null && !condition.isEmpty()) {
-            ArrayList<Object> values = condition.getValues();
-            for (int i = 0; i < values.size(); i++) {
-                ps.setObject(i + 1, values.get(i));
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            int i = 1;
+            if (hasWhere) {
+                for (Object val : condition.getValues()) {
+                    ps.setObject(i++, val);
+                }
+            }
+            if (hasGuard) {
+                for (Object val : guard.getValues()) {
+                    ps.setObject(i++, val);
+                }
             }
+            return ps.executeUpdate();
         }
-        return ps.executeUpdate();
     }
 }
@@ -5,6 +5,10 @@ import java.util.*;
 
 public class InsertOperation {
 
+    // rows per multi-row INSERT, also kept under MySQL's 65535 placeholders
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+    private static final int MAX_PLACEHOLDERS = 65535;
+
     public static int insert(String table, Condition data) throws SQLException {
         String tableName = table.split(" ")[0];
         if (data == null || data.isEmpty()) {
@@ -12,35 +16,107 @@ public class InsertOperation {
         }
 
         ArrayList<Object> values = data.getValues();
-        String condition = data.toSQL();
-        String[] parts = condition.split(" AND ");
-        StringBuilder columns = new StringBuilder();
-        StringBuilder placeholders = new StringBuilder();
-
-        for (int i = 0; i < parts.length; i++) {
-            String colName = parts[i].split(" = ")[0].trim();
-            if (i > 0) {
-                columns.append(", ");
-                placeholders.append(", ");
+        String sql = "INSERT INTO " + tableName + " (" + data.toColumnsSQL() + ") VALUES " + data.toValuesSQL();
+       // System.out.println("DEBUG INSERT SQL: " + sql);
+
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < values.size(); i++) {
+                ps.setObject(i + 1, values.get(i));
+            }
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
             }
-            columns.append(colName);
-            placeholders.append("?");
         }
+        return -1;
+    }
 
-        String sql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + placeholders + ")";
-       // System.out.println("DEBUG INSERT SQL: " + sql);
+    // inserts rows of one shape (same columns, NULLs in the same places) with multi-row
+    // VALUES statements. Returns the generated key of every row in order, -1 where the
+    // table generated none.
+    public static int[] insertAll(String table, List<Condition> rows) throws SQLException {
+        int[] keys = new int[rows.size()];
+        Arrays.fill(keys, -1);
+        insertRows(table, rows, null, keys);
+        return keys;
+    }
+
+    // INSERT ... ON DUPLICATE KEY UPDATE: one statement that adds the row or, when a
+    // unique key already has it, applies onDuplicate to the existing row instead.
+    // onDuplicate usually holds deltas, or expressions such as VALUES(column). Returns
+    // MySQL's count: 1 inserted, 2 updated, 0 unchanged.
+    public static int upsert(String table, Condition data, Condition onDuplicate) throws SQLException {
+        return upsertAll(table, Collections.singletonList(data), onDuplicate);
+    }
 
-        Connection con = DbHelper.getConnection();
-        PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-        for (int i = 0; i < values.size(); i++) {
-            ps.setObject(i + 1, values.get(i));
+    // upsert for rows of one shape, multi-row like insertAll. Returns the summed counts.
+    public static int upsertAll(String table, List<Condition> rows, Condition onDuplicate) throws SQLException {
+        if (onDuplicate == null || onDuplicate.isEmpty()) {
+            throw new SQLException("Upsert into " + table.split(" ")[0] + " without an ON DUPLICATE KEY clause");
         }
-        ps.executeUpdate();
-        ResultSet rs = ps.getGeneratedKeys();
-        if (rs.next()) {
-            return rs.getInt(1);
+        return insertRows(table, rows, onDuplicate, null);
+    }
+
+    // keys gets the generated key of every row when not null
+    private static int insertRows(String table, List<Condition> rows, Condition onDuplicate,
+                                  int[] keys) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
         }
-        return -1;
+        String tableName = table.split(" ")[0];
+        Condition first = rows.get(0);
+        String columns = first.toColumnsSQL();
+        String tuple = first.toValuesSQL();
+        int params = first.getValues().size();
+        List<Object> tail = onDuplicate != null ? onDuplicate.getValues() : Collections.emptyList();
+        int perStatement = params == 0 ? MAX_ROWS_PER_STATEMENT
+                : Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, (MAX_PLACEHOLDERS - tail.size()) / params));
+
+        int affected = 0;
+        try (Connection con = DbHelper.getConnection()) {
+            for (int from = 0; from < rows.size(); from += perStatement) {
+                int to = Math.min(rows.size(), from + perStatement);
+                StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName)
+                        .append(" (").append(columns).append(") VALUES ");
+                for (int r = from; r < to; r++) {
+                    Condition row = rows.get(r);
+                    if (!row.toColumnsSQL().equals(columns) || !row.toValuesSQL().equals(tuple)) {
+                        throw new SQLException("Batch insert into " + tableName + ": row " + r
+                                + " has a different shape than row 0");
+                    }
+                    sql.append(r > from ? ", " : "").append(tuple);
+                }
+                if (onDuplicate != null) {
+                    sql.append(" ON DUPLICATE KEY UPDATE ").append(onDuplicate.toSetSQL());
+                }
+                try (PreparedStatement ps = keys != null
+                        ? con.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)
+                        : con.prepareStatement(sql.toString())) {
+                    int i = 1;
+                    for (int r = from; r < to; r++) {
+                        for (Object v : rows.get(r).getValues()) {
+                            ps.setObject(i++, v);
+                        }
+                    }
+                    for (Object v : tail) {
+                        ps.setObject(i++, v);
+                    }
+                    affected += ps.executeUpdate();
+                    if (keys == null) {
+                        continue;
+                    }
+                    // a multi-row insert hands back one key per row, in row order
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        for (int r = from; r < to && rs.next(); r++) {
+                            keys[r] = rs.getInt(1);
+                        }
+                    }
+                }
+            }
+        }
+        return affected;
     }
 }
-
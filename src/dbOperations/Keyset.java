@@ -0,0 +1,184 @@
+package dbOperations;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// sort key of a paged query: columns with their directions, unique as a whole (end it
+// with the primary key). A page continues after the last row's key with a predicate the
+// index can range scan, so a deep page costs the same as the first one, unlike OFFSET.
+// The key travels between pages as an opaque token.
+public final class Keyset {
+
+    private final List<String> columns = new ArrayList<>();
+    private final List<Boolean> descending = new ArrayList<>();
+
+    public Keyset asc(String column) {
+        columns.add(column);
+        descending.add(false);
+        return this;
+    }
+
+    public Keyset desc(String column) {
+        columns.add(column);
+        descending.add(true);
+        return this;
+    }
+
+    public String toOrderBySQL() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(columns.get(i)).append(descending.get(i) ? " DESC" : " ASC");
+        }
+        return sb.toString();
+    }
+
+    // the same order by result labels ("t.id" -> "id"), for sorting a UNION of queries
+    String toOuterOrderBySQL() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(label(i)).append(descending.get(i) ? " DESC" : " ASC");
+        }
+        return sb.toString();
+    }
+
+    // rows strictly after key in this order. One direction gives a row value comparison,
+    // (a, b) > (?, ?); mixed directions expand it and bound the first column so the
+    // index still gets a range.
+    public SpecialCondition after(Object... key) {
+        if (key.length != columns.size()) {
+            throw new IllegalArgumentException("Keyset of " + columns.size() + " columns, key of " + key.length);
+        }
+        boolean oneDirection = !descending.contains(!descending.get(0));
+        if (oneDirection) {
+            String op = descending.get(0) ? " < " : " > ";
+            if (columns.size() == 1) {
+                return new SpecialCondition(columns.get(0) + op + "?", key);
+            }
+            StringBuilder marks = new StringBuilder();
+            for (int i = 0; i < key.length; i++) {
+                marks.append(i > 0 ? ", ?" : "?");
+            }
+            return new SpecialCondition("(" + String.join(", ", columns) + ")" + op + "(" + marks + ")", key);
+        }
+        List<Object> values = new ArrayList<>();
+        StringBuilder sb = new StringBuilder(columns.get(0)).append(descending.get(0) ? " <= ?" : " >= ?");
+        values.add(key[0]);
+        sb.append(" AND (");
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            sb.append("(");
+            for (int j = 0; j < i; j++) {
+                sb.append(columns.get(j)).append(" = ? AND ");
+                values.add(key[j]);
+            }
+            sb.append(columns.get(i)).append(descending.get(i) ? " < ?" : " > ?").append(")");
+            values.add(key[i]);
+        }
+        sb.append(")");
+        return new SpecialCondition(sb.toString(), values.toArray());
+    }
+
+    // positions of the key columns in this result, by label ("t.id" -> "id")
+    int[] positions(ColumnIndex index) throws SQLException {
+        int[] positions = new int[columns.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = index.get(label(i));
+        }
+        return positions;
+    }
+
+    private String label(int i) {
+        String column = columns.get(i);
+        return column.substring(column.lastIndexOf('.') + 1);
+    }
+
+    // the key of the row the cursor is on
+    Object[] read(ResultSet rs, int[] positions) throws SQLException {
+        Object[] key = new Object[positions.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = rs.getObject(positions[i]);
+        }
+        return key;
+    }
+
+    // key -> url safe token, tagged with this keyset's shape so a token can't be
+    // replayed against another query
+    String token(Object[] key) throws SQLException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(toOrderBySQL().hashCode());
+            for (Object v : key) {
+                if (v instanceof Integer i) {
+                    out.writeByte('I');
+                    out.writeInt(i);
+                } else if (v instanceof Long l) {
+                    out.writeByte('L');
+                    out.writeLong(l);
+                } else if (v instanceof BigDecimal d) {
+                    out.writeByte('D');
+                    out.writeUTF(d.toPlainString());
+                } else if (v instanceof String s) {
+                    out.writeByte('S');
+                    out.writeUTF(s);
+                } else if (v instanceof Boolean b) {
+                    out.writeByte('B');
+                    out.writeBoolean(b);
+                } else if (v instanceof Timestamp t) {
+                    out.writeByte('T');
+                    out.writeLong(t.getTime());
+                    out.writeInt(t.getNanos());
+                } else if (v instanceof LocalDateTime t) {
+                    out.writeByte('M');
+                    out.writeUTF(t.toString());
+                } else {
+                    throw new SQLException("Cannot page on a key of type "
+                            + (v == null ? "NULL" : v.getClass().getSimpleName()));
+                }
+            }
+        } catch (IOException e) {
+            throw new SQLException("Cannot write page token", e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    Object[] parse(String token) throws SQLException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            if (in.readInt() != toOrderBySQL().hashCode()) {
+                throw new SQLException("Page token belongs to another query");
+            }
+            Object[] key = new Object[columns.size()];
+            for (int i = 0; i < key.length; i++) {
+                int tag = in.readByte();
+                key[i] = switch (tag) {
+                    case 'I' -> in.readInt();
+                    case 'L' -> in.readLong();
+                    case 'D' -> new BigDecimal(in.readUTF());
+                    case 'S' -> in.readUTF();
+                    case 'B' -> in.readBoolean();
+                    case 'T' -> {
+                        Timestamp t = new Timestamp(in.readLong());
+                        t.setNanos(in.readInt());
+                        yield t;
+                    }
+                    case 'M' -> LocalDateTime.parse(in.readUTF());
+                    default -> throw new SQLException("Bad page token");
+                };
+            }
+            return key;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new SQLException("Bad page token", e);
+        }
+    }
+}
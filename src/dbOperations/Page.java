@@ -0,0 +1,27 @@
+package dbOperations;
+
+import java.util.List;
+
+// one page of a keyset query. nextToken continues after the last row, null on the last page.
+public final class Page<T> {
+
+    private final List<T> items;
+    private final String nextToken;
+
+    Page(List<T> items, String nextToken) {
+        this.items = items;
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasMore() {
+        return nextToken != null;
+    }
+}
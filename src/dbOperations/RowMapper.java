@@ -0,0 +1,16 @@
+package dbOperations;
+
+import java.sql.*;
+
+// turns the rows of one result into objects. bind runs once per query: it resolves the
+// labels it needs to positions in this result shape and returns the Row that reads
+// every row by those positions.
+@FunctionalInterface
+public interface RowMapper<T> {
+    Row<T> bind(ColumnIndex columns) throws SQLException;
+
+    @FunctionalInterface
+    interface Row<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+}
@@ -2,9 +2,24 @@ package dbOperations;
 
 import java.sql.*;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class SelectOperation {
 
+    // rows per round trip for streamed queries
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    // one HashMap per row, for callers that have no mapper
+    private static final RowMapper<HashMap<String, Object>> MAP_ROW = columns -> rs -> {
+        HashMap<String, Object> row = new HashMap<>();
+        for (int i = 1; i <= columns.size(); i++) {
+            row.put(columns.label(i), rs.getObject(i));
+        }
+        return row;
+    };
+
     // basic select
     public static ArrayList<HashMap<String, Object>>
     select(String tableName, Condition condition) throws SQLException {
@@ -18,6 +33,16 @@ public class SelectOperation {
                 null, null, 0);
     }
 
+    public static <T> List<T>
+    select(String tableName, Condition condition, RowMapper<T> mapper) throws SQLException {
+        return selectWithAdvancedCondition(tableName, null, null, condition, null, null, 0, mapper);
+    }
+
+    public static <T> List<T>
+    select(String tableName, String[] columns, Condition condition, RowMapper<T> mapper) throws SQLException {
+        return selectWithAdvancedCondition(tableName, columns, null, condition, null, null, 0, mapper);
+    }
+
     // select with joins
     public static ArrayList<HashMap<String, Object>>
     selectWithJoin(String tableName, String[] columns, String join,
@@ -32,12 +57,196 @@ public class SelectOperation {
                 order, limit);
     }
 
+    public static <T> List<T>
+    selectWithJoin(String tableName, String[] columns, String join, Condition condition,
+                   String order, RowMapper<T> mapper) throws SQLException {
+        return selectWithAdvancedCondition(tableName, columns, join, condition, null, order, 0, mapper);
+    }
+
+    public static <T> List<T>
+    selectWithJoin(String tableName, String[] columns, String join, Condition condition,
+                   String order, int limit, RowMapper<T> mapper) throws SQLException {
+        return selectWithAdvancedCondition(tableName, columns, join, condition, null, order, limit, mapper);
+    }
+
     public static ArrayList<HashMap<String, Object>>
     selectWithAdvancedCondition(String table,
             String[] columns, String join, Condition base, SpecialCondition extra,
             String orderBy, int limit) throws SQLException {
+        return run(toSQL(table, columns, join, base, extra, orderBy, limit), values(base, extra), MAP_ROW);
+    }
+
+    public static <T> List<T>
+    selectWithAdvancedCondition(String table,
+            String[] columns, String join, Condition base, SpecialCondition extra,
+            String orderBy, int limit, RowMapper<T> mapper) throws SQLException {
+        return run(toSQL(table, columns, join, base, extra, orderBy, limit), values(base, extra), mapper);
+    }
+
+    // hand written sql, parameters bound in order
+    public static <T> List<T> query(String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        return run(sql, Arrays.asList(params), mapper);
+    }
+
+    // one page of at most pageSize rows in keyset order, starting after token (null for
+    // the first page). Reads one extra row to know whether another page follows.
+    public static <T> Page<T>
+    page(String table, String[] columns, String join, Condition base, SpecialCondition extra,
+         Keyset keyset, String token, int pageSize, RowMapper<T> mapper) throws SQLException {
+        SpecialCondition cursor = token == null ? extra
+                : SpecialCondition.and(extra, keyset.after(keyset.parse(token)));
+        String sql = toSQL(table, columns, join, base, cursor, keyset.toOrderBySQL(), pageSize + 1);
+        return readPage(sql, values(base, cursor), keyset, pageSize, mapper);
+    }
 
-        ArrayList<HashMap<String, Object>> rows = new ArrayList<>();
+    // keyset page over the rows that match any of the branches. An OR across columns
+    // (buyer = ? OR seller = ?) leaves MySQL one index at best and a filtered scan of the
+    // sort order at worst, so every branch runs as its own keyset query, with its own
+    // index, cursor and limit, and one page is cut from the union of those short lists.
+    // Rows matching more than one branch show up once.
+    public static <T> Page<T>
+    pageAny(String table, String[] columns, String join, Condition base, List<SpecialCondition> branches,
+            Keyset keyset, String token, int pageSize, RowMapper<T> mapper) throws SQLException {
+        SpecialCondition after = token == null ? null : keyset.after(keyset.parse(token));
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        for (SpecialCondition branch : branches) {
+            SpecialCondition cursor = SpecialCondition.and(branch, after);
+            if (sql.length() > 0) {
+                sql.append(" UNION ");
+            }
+            sql.append("(").append(toSQL(table, columns, join, base, cursor, keyset.toOrderBySQL(), pageSize + 1))
+                    .append(")");
+            params.addAll(values(base, cursor));
+        }
+        sql.append(" ORDER BY ").append(keyset.toOuterOrderBySQL()).append(" LIMIT ").append(pageSize + 1);
+        return readPage(sql.toString(), params, keyset, pageSize, mapper);
+    }
+
+    // runs a query limited to pageSize + 1 rows; the extra row only says there is more
+    private static <T> Page<T> readPage(String sql, List<Object> params, Keyset keyset, int pageSize,
+                                        RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        Object[] lastKey = null;
+        boolean more = false;
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            int idx = 1;
+            for (Object v : params) {
+                ps.setObject(idx++, v);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                ColumnIndex index = ColumnIndex.of(sql, rs);
+                RowMapper.Row<T> row = mapper.bind(index);
+                int[] keyColumns = keyset.positions(index);
+                while (rs.next()) {
+                    if (rows.size() == pageSize) {
+                        more = true;
+                        break;
+                    }
+                    rows.add(row.map(rs));
+                    lastKey = keyset.read(rs, keyColumns);
+                }
+            }
+        }
+        DbHelper.recordRows(sql, rows.size());
+        return new Page<>(rows, more ? keyset.token(lastKey) : null);
+    }
+
+    // streams rows off a forward-only, read-only cursor, fetchSize rows per round trip, so
+    // memory stays flat however big the table. The connection is held until the stream is
+    // closed or runs out; use it in try-with-resources. Errors while reading surface as
+    // UncheckedSQLException.
+    public static <T> Stream<T>
+    stream(String table, String[] columns, String join, Condition base, SpecialCondition extra,
+           String orderBy, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        return streamQuery(toSQL(table, columns, join, base, extra, orderBy, 0), fetchSize, mapper,
+                values(base, extra).toArray());
+    }
+
+    public static <T> Stream<T> streamQuery(String sql, int fetchSize, RowMapper<T> mapper,
+                                            Object... params) throws SQLException {
+        Connection con = DbHelper.getConnection();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            // the pool caches only prepareStatement(sql) and (sql, autoGeneratedKeys), so the
+            // three argument form gets a statement of its own that is closed with the stream
+            // and can't carry this fetch size into another query
+            ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            int idx = 1;
+            for (Object v : params) {
+                ps.setObject(idx++, v);
+            }
+            rs = ps.executeQuery();
+            Cursor<T> cursor = new Cursor<>(sql, con, ps, rs, mapper.bind(ColumnIndex.of(sql, rs)));
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException e) {
+            close(rs, ps, con);
+            throw e;
+        }
+    }
+
+    private static final class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+        private final String sql;
+        private final Connection con;
+        private final PreparedStatement ps;
+        private final ResultSet rs;
+        private final RowMapper.Row<T> row;
+        private boolean closed;
+        private long read;
+
+        Cursor(String sql, Connection con, PreparedStatement ps, ResultSet rs, RowMapper.Row<T> row) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            this.sql = sql;
+            this.con = con;
+            this.ps = ps;
+            this.rs = rs;
+            this.row = row;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (!rs.next()) {
+                    // give the connection back as soon as the rows run out
+                    close();
+                    return false;
+                }
+                read++;
+                action.accept(row.map(rs));
+                return true;
+            } catch (SQLException e) {
+                close();
+                throw new UncheckedSQLException(e);
+            }
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                SelectOperation.close(rs, ps, con);
+                DbHelper.recordRows(sql, read);
+            }
+        }
+    }
+
+    private static void close(AutoCloseable... resources) {
+        for (AutoCloseable r : resources) {
+            if (r == null) continue;
+            try {
+                r.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private static String toSQL(String table, String[] columns, String join, Condition base,
+                                SpecialCondition extra, String orderBy, int limit) {
         String columnList = (columns == null || columns.length == 0)
                 ? "*" : String.join(", ", columns);
 
@@ -68,33 +277,36 @@ public class SelectOperation {
         }
 
         // System.out.println("SELECT DEBUG => " + sql);  // debug
+        return sql.toString();
+    }
 
-        Connection con = DbHelper.getConnection();
-        PreparedStatement ps = con.prepareStatement(sql.toString());
-
-        int idx = 1;
+    private static List<Object> values(Condition base, SpecialCondition extra) {
+        List<Object> values = new ArrayList<>();
         if (base != null) {
-            for (Object v : base.getValues()) {
-                ps.setObject(idx++, v);
-            }
+            values.addAll(base.getValues());
         }
-
         if (extra != null) {
-            for (Object v : extra.getValues()) {
-                ps.setObject(idx++, v);
-            }
+            values.addAll(extra.getValues());
         }
+        return values;
+    }
 
-        ResultSet rs = ps.executeQuery();
-        ResultSetMetaData meta = rs.getMetaData();
-        int colCount = meta.getColumnCount();
-        while (rs.next()) {
-            HashMap<String, Object> row = new HashMap<>();
-            for (int i = 1; i <= colCount; i++) {
-                row.put(meta.getColumnLabel(i), rs.getObject(i));
+    private static <T> ArrayList<T> run(String sql, List<Object> params, RowMapper<T> mapper) throws SQLException {
+        ArrayList<T> rows = new ArrayList<>();
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            int idx = 1;
+            for (Object v : params) {
+                ps.setObject(idx++, v);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                RowMapper.Row<T> row = mapper.bind(ColumnIndex.of(sql, rs));
+                while (rs.next()) {
+                    rows.add(row.map(rs));
+                }
             }
-            rows.add(row);
         }
+        DbHelper.recordRows(sql, rows.size());
         return rows;
     }
 }
@@ -12,6 +12,37 @@ public class SpecialCondition {
         this.values = Arrays.asList(values);
     }
 
+    // column IN (?, ?, ...) for a set of keys. The list is padded to a power of two by
+    // repeating the last key, so a few sql strings cover every size and stay cached.
+    public static SpecialCondition in(String column, Collection<?> keys) {
+        Object[] values = keys.toArray();
+        int size = values.length <= 1 ? values.length : Integer.highestOneBit(values.length - 1) << 1;
+        if (size > values.length) {
+            Object last = values[values.length - 1];
+            values = Arrays.copyOf(values, size);
+            Arrays.fill(values, keys.size(), size, last);
+        }
+        StringBuilder sb = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            sb.append(i > 0 ? ", ?" : "?");
+        }
+        sb.append(")");
+        return new SpecialCondition(sb.toString(), values);
+    }
+
+    // both conditions; either may be null
+    public static SpecialCondition and(SpecialCondition a, SpecialCondition b) {
+        if (a == null || a.isEmpty()) {
+            return b;
+        }
+        if (b == null || b.isEmpty()) {
+            return a;
+        }
+        List<Object> values = new ArrayList<>(a.values);
+        values.addAll(b.values);
+        return new SpecialCondition("(" + a.sql + ") AND (" + b.sql + ")", values.toArray());
+    }
+
     public String toSQL() {
         return sql;
     }
@@ -0,0 +1,19 @@
+package dbOperations;
+
+import java.sql.SQLException;
+
+// a SQLException thrown while a result stream is being consumed, where checked
+// exceptions can't go. Callers unwrap it with getCause().
+public class UncheckedSQLException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -1,36 +1,163 @@
 package dbOperations;
 
 import java.sql.*;
+import java.util.*;
 
 public class UpdateOperation {
 
     public static int update(String table, Condition setData, Condition whereCondition) throws SQLException {
+        return update(table, setData, whereCondition, null);
+    }
+
+    // compare-and-set: setData may hold deltas (balance = balance - ?) and guard adds a
+    // free form check to the WHERE (balance >= ?). The row count tells whether the guard
+    // held, so the caller never reads the row first.
+    public static int update(String table, Condition setData, Condition whereCondition,
+                             SpecialCondition guard) throws SQLException {
 
         if (setData == null || setData.isEmpty()) {
             return 0;
         }
 
-       String tableName = table.split(" ")[0];
-//        String setSQL = setData.toSQL().replace(" AND ", ", ");
-        String setSQL = setData.toSetSQL();
-        String sql;
-        if (whereCondition == null || whereCondition.isEmpty()) {
-            sql = "UPDATE " + tableName + " SET " + setSQL;
-        } else {
-            sql = "UPDATE " + tableName + " SET " + setSQL + " WHERE " + whereCondition.toSQL();
+        String tableName = table.split(" ")[0];
+        String sql = toSQL(tableName, setData, whereCondition, guard);
+
+        try (Connection con = DbHelper.getConnection();
+             PreparedStatement ps = con.prepareStatement(sql)) {
+            int i = 1;
+            for (Object val : setData.getValues()) {
+                ps.setObject(i++, val);
+            }
+            if (whereCondition != null) {
+                for (Object val : whereCondition.getValues()) {
+                    ps.setObject(i++, val);
+                }
+            }
+            if (guard != null && !guard.isEmpty()) {
+                for (Object val : guard.getValues()) {
+                    ps.setObject(i++, val);
+                }
+            }
+            return ps.executeUpdate();
         }
+    }
 
-        Connection con = DbHelper.getConnection();
-        PreparedStatement ps = con.prepareStatement(sql);
-        int i = 1;
-        for (Object val : setData.getValues()) {
-            ps.setObject(i++, val);
+    // rows per multi-row UPDATE, also kept under MySQL's 65535 placeholders
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+    private static final int MAX_PLACEHOLDERS = 65535;
+
+    // many single-row updates as one statement per chunk:
+    //   UPDATE t SET a = CASE WHEN (where0) THEN set0 WHEN (where1) THEN set1 ELSE a END, ...
+    //   WHERE (where0) OR (where1) ...
+    // A JDBC batch of UPDATEs is still one round trip per row (Connector/J only rewrites
+    // INSERT batches into one statement). setData and whereConditions pair up by index,
+    // every pair must have the same shape and no two WHEREs may name the same row.
+    // Returns the matched rows over all elements; the driver reports found rows, so a
+    // row left unchanged still counts.
+    public static int updateAll(String table, List<Condition> setData,
+                                List<Condition> whereConditions) throws SQLException {
+        if (setData.size() != whereConditions.size()) {
+            throw new SQLException("Batch update: " + setData.size() + " SET rows but "
+                    + whereConditions.size() + " WHERE rows");
         }
-        if (whereCondition != null) {
-            for (Object val : whereCondition.getValues()) {
-                ps.setObject(i++, val);
+        if (setData.isEmpty()) {
+            return 0;
+        }
+        String tableName = table.split(" ")[0];
+        String shape = toSQL(tableName, setData.get(0), whereConditions.get(0), null);
+        Set<List<Object>> keys = new HashSet<>();
+        for (int r = 0; r < setData.size(); r++) {
+            Condition where = whereConditions.get(r);
+            if (where == null || where.isEmpty()) {
+                throw new SQLException("Batch update of " + tableName + ": row " + r + " has no WHERE");
             }
+            if (r > 0 && !toSQL(tableName, setData.get(r), where, null).equals(shape)) {
+                throw new SQLException("Batch update of " + tableName + ": row " + r
+                        + " has a different shape than row 0");
+            }
+            if (!keys.add(where.getValues())) {
+                throw new SQLException("Batch update of " + tableName + ": row " + r
+                        + " updates the same row as an earlier one");
+            }
+        }
+
+        Condition first = setData.get(0);
+        // assignments run left to right, so a later CASE would test an already updated key
+        for (int c = 0; c < first.size(); c++) {
+            if (whereConditions.get(0).hasColumn(first.columnAt(c))) {
+                throw new SQLException("Batch update of " + tableName + ": " + first.columnAt(c)
+                        + " is both set and matched on");
+            }
+        }
+        int whereParams = whereConditions.get(0).getValues().size();
+        int params = first.getValues().size() + whereParams * (first.size() + 1);
+        int perStatement = Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, MAX_PLACEHOLDERS / params));
+
+        int matched = 0;
+        try (Connection con = DbHelper.getConnection()) {
+            for (int from = 0; from < setData.size(); from += perStatement) {
+                int to = Math.min(setData.size(), from + perStatement);
+                List<Condition> sets = setData.subList(from, to);
+                List<Condition> wheres = whereConditions.subList(from, to);
+                try (PreparedStatement ps = con.prepareStatement(toCaseSQL(tableName, sets, wheres))) {
+                    int i = 1;
+                    for (int c = 0; c < first.size(); c++) {
+                        for (int r = 0; r < sets.size(); r++) {
+                            for (Object val : wheres.get(r).getValues()) {
+                                ps.setObject(i++, val);
+                            }
+                            for (Object val : sets.get(r).valuesAt(c)) {
+                                ps.setObject(i++, val);
+                            }
+                        }
+                    }
+                    for (Condition where : wheres) {
+                        for (Object val : where.getValues()) {
+                            ps.setObject(i++, val);
+                        }
+                    }
+                    matched += ps.executeUpdate();
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static String toCaseSQL(String tableName, List<Condition> sets, List<Condition> wheres) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+        Condition first = sets.get(0);
+        for (int c = 0; c < first.size(); c++) {
+            String column = first.columnAt(c);
+            if (c > 0) {
+                sql.append(", ");
+            }
+            sql.append(column).append(" = CASE");
+            for (int r = 0; r < sets.size(); r++) {
+                sql.append(" WHEN (").append(wheres.get(r).toSQL()).append(") THEN ")
+                        .append(sets.get(r).placeholderAt(c));
+            }
+            sql.append(" ELSE ").append(column).append(" END");
+        }
+        sql.append(" WHERE ");
+        for (int r = 0; r < wheres.size(); r++) {
+            if (r > 0) {
+                sql.append(" OR ");
+            }
+            sql.append("(").append(wheres.get(r).toSQL()).append(")");
+        }
+        return sql.toString();
+    }
+
+    private static String toSQL(String tableName, Condition setData, Condition whereCondition,
+                                SpecialCondition guard) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ").append(setData.toSetSQL());
+        boolean hasWhere = whereCondition != null && !whereCondition.isEmpty();
+        if (hasWhere) {
+            sql.append(" WHERE ").append(whereCondition.toSQL());
+        }
+        if (guard != null && !guard.isEmpty()) {
+            sql.append(hasWhere ? " AND " : " WHERE ").append(guard.toSQL());
         }
-        return ps.executeUpdate();
+        return sql.toString();
     }
-}
\ No newline at end of file
+}
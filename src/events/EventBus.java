@@ -0,0 +1,120 @@
+package events;
+
+import java.util.*;
+
+// Disruptor-style bus from the matching lanes to market data, logging and analytics
+// consumers. One ring per lane keeps every ring single-producer; each consumer runs on
+// its own thread and reads all rings of its kind. Consumers that must see every event
+// (candles, tickers) read rings whose producer waits up to maxWaitNanos for them;
+// best-effort ones read a second set with a shorter wait, so they never cost the others
+// an event. Neither waits without bound: past its wait a ring drops and flags the gap
+// on the next event. Publishing never allocates.
+public class EventBus {
+
+    private final RingBuffer[] rings;
+    private final RingBuffer[] lossyRings;
+    private final WaitStrategy waitStrategy;
+    private final List<EventProcessor> processors = new ArrayList<>();
+    private boolean started;
+
+    // maxWaitNanos bounds how long a producer waits for a slow consumer before dropping,
+    // lossyMaxWaitNanos the same for best-effort consumers
+    public EventBus(int producers, int ringSize, WaitStrategy waitStrategy, long maxWaitNanos,
+                    long lossyMaxWaitNanos) {
+        rings = new RingBuffer[producers];
+        lossyRings = new RingBuffer[producers];
+        for (int i = 0; i < producers; i++) {
+            rings[i] = new RingBuffer("lane-" + i, ringSize, waitStrategy, maxWaitNanos);
+            lossyRings[i] = new RingBuffer("lane-" + i + "-lossy", ringSize, waitStrategy, lossyMaxWaitNanos);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    // consumers are added before start(), a late one would miss the gating. This one
+    // sees every event unless it falls behind for longer than maxWaitNanos.
+    public void addConsumer(String name, EventHandler handler) {
+        add(name, handler, rings);
+    }
+
+    // a consumer that may miss events once it falls behind for lossyMaxWaitNanos
+    public void addLossyConsumer(String name, EventHandler handler) {
+        add(name, handler, lossyRings);
+    }
+
+    private synchronized void add(String name, EventHandler handler, RingBuffer[] consumed) {
+        if (started) {
+            throw new IllegalStateException("Event bus already started");
+        }
+        processors.add(new EventProcessor(name, handler, consumed, waitStrategy));
+    }
+
+    public synchronized void start() {
+        started = true;
+        for (EventProcessor p : processors) {
+            p.start();
+        }
+    }
+
+    // must only be called from the thread that owns the producer's ring
+    public void publish(int producer, MarketEvent.Type type, long journalSequence, long timestamp,
+                        int stockId, int orderId, int userId, boolean buy, int quantity, long price,
+                        int counterOrderId, int counterUserId, int remaining, int counterRemaining) {
+        publish(rings[producer], type, journalSequence, timestamp, stockId, orderId, userId, buy, quantity,
+                price, counterOrderId, counterUserId, remaining, counterRemaining);
+        publish(lossyRings[producer], type, journalSequence, timestamp, stockId, orderId, userId, buy, quantity,
+                price, counterOrderId, counterUserId, remaining, counterRemaining);
+    }
+
+    private static void publish(RingBuffer ring, MarketEvent.Type type, long journalSequence, long timestamp,
+                                int stockId, int orderId, int userId, boolean buy, int quantity, long price,
+                                int counterOrderId, int counterUserId, int remaining, int counterRemaining) {
+        if (!ring.hasConsumers()) {
+            return;
+        }
+        long sequence = ring.next();
+        if (sequence < 0) {
+            return;
+        }
+        ring.get(sequence).set(type, journalSequence, timestamp, stockId, orderId, userId, buy, quantity,
+                price, counterOrderId, counterUserId, remaining, counterRemaining, ring.getMissedBefore());
+        ring.publish(sequence);
+    }
+
+    // events the consumers that must see everything missed
+    public long getDropped() {
+        return dropped(rings);
+    }
+
+    public long getLossyDropped() {
+        return dropped(lossyRings);
+    }
+
+    private static long dropped(RingBuffer[] rings) {
+        long dropped = 0;
+        for (RingBuffer ring : rings) {
+            dropped += ring.getDropped();
+        }
+        return dropped;
+    }
+
+    // events published but not yet handled, per consumer
+    public Map<String, Long> getLag() {
+        Map<String, Long> lag = new LinkedHashMap<>();
+        for (EventProcessor p : processors) {
+            lag.put(p.getName(), p.getLag());
+        }
+        return lag;
+    }
+
+    // consumers finish what was published before this call
+    public synchronized void shutdown() {
+        for (EventProcessor p : processors) {
+            try {
+                p.halt();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
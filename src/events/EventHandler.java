@@ -0,0 +1,8 @@
+package events;
+
+// a consumer of the event bus, called on its own thread in publish order per ring
+public interface EventHandler {
+
+    // endOfBatch is true for the last event currently available, a good point to flush
+    void onEvent(MarketEvent event, boolean endOfBatch) throws Exception;
+}
@@ -0,0 +1,107 @@
+package events;
+
+import java.util.function.BooleanSupplier;
+
+// runs one handler on its own thread over every ring of the bus. Keeps its own
+// sequence per ring, which is what holds the producers back from overwriting slots
+// it hasn't read yet.
+class EventProcessor implements Runnable {
+
+    private final String name;
+    private final EventHandler handler;
+    private final RingBuffer[] rings;
+    private final Sequence[] sequences;
+    private final WaitStrategy waitStrategy;
+    private final Thread thread;
+    private final BooleanSupplier ready = () -> !isRunning() || hasAvailable();
+    private volatile boolean running = true;
+
+    EventProcessor(String name, EventHandler handler, RingBuffer[] rings, WaitStrategy waitStrategy) {
+        this.name = name;
+        this.handler = handler;
+        this.rings = rings;
+        this.waitStrategy = waitStrategy;
+        sequences = new Sequence[rings.length];
+        for (int i = 0; i < rings.length; i++) {
+            sequences[i] = new Sequence(-1);
+            rings[i].addGatingSequence(sequences[i]);
+        }
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    // lets the thread drain what is already published, then stops it
+    void halt() throws InterruptedException {
+        running = false;
+        waitStrategy.signal();
+        thread.join();
+    }
+
+    long getLag() {
+        long lag = 0;
+        for (int i = 0; i < rings.length; i++) {
+            lag += rings[i].getCursor() - sequences[i].get();
+        }
+        return lag;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            boolean consumed = false;
+            for (int i = 0; i < rings.length; i++) {
+                consumed |= consume(i);
+            }
+            if (consumed) {
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                waitStrategy.waitFor(ready);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean consume(int ring) {
+        long next = sequences[ring].get() + 1;
+        long available = rings[ring].getCursor();
+        if (available < next) {
+            return false;
+        }
+        for (long s = next; s <= available; s++) {
+            try {
+                handler.onEvent(rings[ring].get(s), s == available);
+            } catch (Exception e) {
+                // one bad event must not stop the consumer or hold the producers
+                System.out.println(name + " failed on event " + s + ": " + e.getMessage());
+            }
+        }
+        sequences[ring].set(available);
+        return true;
+    }
+
+    private boolean isRunning() {
+        return running;
+    }
+
+    private boolean hasAvailable() {
+        for (int i = 0; i < rings.length; i++) {
+            if (rings[i].getCursor() > sequences[i].get()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
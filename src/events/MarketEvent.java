@@ -0,0 +1,60 @@
+package events;
+
+// one pre-allocated ring slot, overwritten in place for every event. Consumers must
+// copy what they keep, the slot is reused once every consumer has moved past it.
+// For TRADE the order/user fields are the buy side and the counter fields the sell side.
+// missedBefore counts events the ring dropped right before this one, for a consumer
+// too far behind; it is 0 normally.
+public class MarketEvent {
+
+    public enum Type { ORDER_ACCEPTED, ORDER_MODIFIED, ORDER_CANCELLED, ORDER_FILLED, TRADE }
+
+    private Type type;
+    private long journalSequence;
+    private long timestamp;
+    private int stockId;
+    private int orderId;
+    private int userId;
+    private boolean buy;
+    private int quantity;
+    private long price;              // paise
+    private int counterOrderId;
+    private int counterUserId;
+    private int remaining;
+    private int counterRemaining;
+    private int missedBefore;
+
+    void set(Type type, long journalSequence, long timestamp, int stockId, int orderId, int userId,
+             boolean buy, int quantity, long price, int counterOrderId, int counterUserId,
+             int remaining, int counterRemaining, int missedBefore) {
+        this.type = type;
+        this.journalSequence = journalSequence;
+        this.timestamp = timestamp;
+        this.stockId = stockId;
+        this.orderId = orderId;
+        this.userId = userId;
+        this.buy = buy;
+        this.quantity = quantity;
+        this.price = price;
+        this.counterOrderId = counterOrderId;
+        this.counterUserId = counterUserId;
+        this.remaining = remaining;
+        this.counterRemaining = counterRemaining;
+        this.missedBefore = missedBefore;
+    }
+
+    public Type getType() { return type; }
+    public long getJournalSequence() { return journalSequence; }
+    public long getTimestamp() { return timestamp; }
+    public int getStockId() { return stockId; }
+    public int getOrderId() { return orderId; }
+    public int getUserId() { return userId; }
+    public boolean isBuy() { return buy; }
+    public int getQuantity() { return quantity; }
+    public long getPrice() { return price; }
+    public int getCounterOrderId() { return counterOrderId; }
+    public int getCounterUserId() { return counterUserId; }
+    public int getRemaining() { return remaining; }
+    public int getCounterRemaining() { return counterRemaining; }
+    public int getMissedBefore() { return missedBefore; }
+}
@@ -0,0 +1,119 @@
+package events;
+
+import java.util.concurrent.locks.LockSupport;
+
+// single-producer ring of pre-allocated slots. The producer claims a slot with next(),
+// fills it and publishes it; it may only lap the slowest consumer's sequence. If the
+// ring stays full longer than maxWaitNanos the claim gives up, so a stuck consumer
+// costs the producer a bounded wait and the consumers a gap, never a stalled matcher.
+// Drops are logged, and the next event published tells the consumers how many they
+// missed right before it.
+public class RingBuffer {
+
+    private final String name;
+    private final MarketEvent[] slots;
+    private final int mask;
+    private final Sequence cursor = new Sequence(-1);
+    private final WaitStrategy waitStrategy;
+    private final long maxWaitNanos;
+
+    private volatile Sequence[] gating = new Sequence[0];
+
+    // producer-only state
+    private long claimed = -1;
+    private long cachedGate = -1;
+    private int droppedRun;
+    private int missedBefore;
+    private volatile long dropped;
+
+    public RingBuffer(String name, int size, WaitStrategy waitStrategy, long maxWaitNanos) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two: " + size);
+        }
+        slots = new MarketEvent[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new MarketEvent();
+        }
+        mask = size - 1;
+        this.name = name;
+        this.waitStrategy = waitStrategy;
+        this.maxWaitNanos = maxWaitNanos;
+    }
+
+    // consumers register before the first publish
+    synchronized void addGatingSequence(Sequence sequence) {
+        Sequence[] next = new Sequence[gating.length + 1];
+        System.arraycopy(gating, 0, next, 0, gating.length);
+        next[gating.length] = sequence;
+        gating = next;
+    }
+
+    boolean hasConsumers() {
+        return gating.length > 0;
+    }
+
+    // next free slot, or -1 if the slowest consumer didn't make room in time
+    long next() {
+        long next = claimed + 1;
+        long wrapPoint = next - slots.length;
+        if (wrapPoint > cachedGate) {
+            long deadline = 0;
+            long gate;
+            while (wrapPoint > (gate = minimumGate())) {
+                if (deadline == 0) {
+                    deadline = System.nanoTime() + maxWaitNanos;
+                } else if (System.nanoTime() - deadline > 0) {
+                    if (droppedRun++ == 0) {
+                        System.out.println("Event ring " + name + " full, dropping events for slow consumers");
+                    }
+                    dropped++;
+                    return -1;
+                }
+                LockSupport.parkNanos(1);
+            }
+            cachedGate = gate;
+        }
+        missedBefore = droppedRun;
+        if (droppedRun > 0) {
+            System.out.println("Event ring " + name + " resumed after dropping " + droppedRun + " event(s)");
+            droppedRun = 0;
+        }
+        claimed = next;
+        return next;
+    }
+
+    // events dropped right before the slot the last next() returned
+    int getMissedBefore() {
+        return missedBefore;
+    }
+
+    MarketEvent get(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    void publish(long sequence) {
+        cursor.set(sequence);
+        waitStrategy.signal();
+    }
+
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    // events the producer gave up on because the ring was full
+    public long getDropped() {
+        return dropped;
+    }
+
+    public int getSize() {
+        return slots.length;
+    }
+
+    private long minimumGate() {
+        long min = claimed;
+        for (Sequence s : gating) {
+            min = Math.min(min, s.get());
+        }
+        return min;
+    }
+}
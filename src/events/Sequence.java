@@ -0,0 +1,22 @@
+package events;
+
+// a position in a ring, padded so producer and consumer counters don't share a cache line
+public class Sequence {
+    @SuppressWarnings("unused")
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    @SuppressWarnings("unused")
+    private long p9, p10, p11, p12, p13, p14, p15;
+
+    public Sequence(long initial) {
+        this.value = initial;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+}
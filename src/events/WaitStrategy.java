@@ -0,0 +1,86 @@
+package events;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.*;
+import java.util.function.BooleanSupplier;
+
+// how a consumer with nothing to read waits for the producers, trading cpu for latency
+public interface WaitStrategy {
+
+    // returns once ready is true (or spuriously; the caller re-checks)
+    void waitFor(BooleanSupplier ready) throws InterruptedException;
+
+    // called by a producer after publishing
+    void signal();
+
+    // lowest latency, burns a core per consumer
+    static WaitStrategy busySpin() {
+        return new WaitStrategy() {
+            public void waitFor(BooleanSupplier ready) {
+                while (!ready.getAsBoolean()) {
+                    Thread.onSpinWait();
+                }
+            }
+            public void signal() { }
+        };
+    }
+
+    // spins briefly, then gives the core away between checks
+    static WaitStrategy yielding() {
+        return new WaitStrategy() {
+            public void waitFor(BooleanSupplier ready) {
+                for (int spins = 0; !ready.getAsBoolean(); spins++) {
+                    if (spins < 100) Thread.onSpinWait();
+                    else Thread.yield();
+                }
+            }
+            public void signal() { }
+        };
+    }
+
+    // polls every sleepNanos, producers never pay for a signal
+    static WaitStrategy sleeping(long sleepNanos) {
+        return new WaitStrategy() {
+            public void waitFor(BooleanSupplier ready) {
+                while (!ready.getAsBoolean()) {
+                    LockSupport.parkNanos(sleepNanos);
+                }
+            }
+            public void signal() { }
+        };
+    }
+
+    // parks on a condition, producers take a lock to wake consumers only when one waits
+    static WaitStrategy blocking() {
+        return new WaitStrategy() {
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition published = lock.newCondition();
+            private volatile int waiters;
+
+            public void waitFor(BooleanSupplier ready) throws InterruptedException {
+                if (ready.getAsBoolean()) return;
+                lock.lock();
+                try {
+                    waiters++;
+                    // bounded, so a halt is noticed even if no one publishes
+                    while (!ready.getAsBoolean()) {
+                        published.await(10, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waiters--;
+                    lock.unlock();
+                }
+            }
+
+            public void signal() {
+                if (waiters == 0) return;
+                lock.lock();
+                try {
+                    published.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,219 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// append-only, sequenced event log on memory-mapped segment files.
+// Record layout: [int payload length][int crc32 of payload][payload]. A zero length
+// marks the end of a segment (mapped files start zero filled), a bad crc marks a torn
+// write and ends replay.
+//
+// An appended event is in the page cache as soon as append returns, so it survives a
+// process crash. It survives a power loss once forced: every syncEvery events, or by
+// the background flusher after syncIntervalMillis, whichever comes first.
+public class Journal implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = HEADER_SIZE + JournalEvent.PAYLOAD_SIZE;
+    private static final String SUFFIX = ".journal";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int syncEvery;
+
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer scratch = ByteBuffer.allocate(JournalEvent.PAYLOAD_SIZE);
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long lastSequence;
+    private int unsynced;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    public Journal(Path dir, int segmentSize, int syncEvery, long syncIntervalMillis) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.syncEvery = syncEvery;
+        Files.createDirectories(dir);
+        recover();
+
+        flusher = new Thread(() -> {
+            while (!closed) {
+                try {
+                    Thread.sleep(syncIntervalMillis);
+                    sync();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // assigns the next sequence number and writes the event
+    public synchronized long append(JournalEvent event) throws IOException {
+        if (segment == null || segment.remaining() < RECORD_SIZE + 4) {
+            roll(lastSequence + 1);
+        }
+        event.setSequence(++lastSequence);
+
+        scratch.clear();
+        event.writeTo(scratch);
+        crc.reset();
+        crc.update(scratch.array(), 0, JournalEvent.PAYLOAD_SIZE);
+
+        segment.putInt(JournalEvent.PAYLOAD_SIZE);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch.array(), 0, JournalEvent.PAYLOAD_SIZE);
+
+        if (++unsynced >= syncEvery) {
+            sync();
+        }
+        return lastSequence;
+    }
+
+    public synchronized void sync() {
+        if (unsynced > 0 && segment != null) {
+            segment.force();
+            unsynced = 0;
+        }
+    }
+
+    // hands every intact event with a sequence above afterSequence to the consumer, in order
+    public void replay(long afterSequence, Consumer<JournalEvent> consumer) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            // skip whole segments that end before the requested sequence
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= afterSequence + 1) {
+                continue;
+            }
+            for (JournalEvent e : read(segments.get(i))) {
+                if (e.getSequence() > afterSequence) {
+                    consumer.accept(e);
+                }
+            }
+        }
+    }
+
+    // deletes closed segments that only hold events up to the given sequence
+    public synchronized void deleteSegmentsBefore(long sequence) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (firstSequence(segments.get(i + 1)) > sequence + 1) {
+                break;
+            }
+            Files.delete(segments.get(i));
+        }
+    }
+
+    // drops every segment and starts again after the given sequence
+    public synchronized void reset(long startAfter) throws IOException {
+        closeSegment();
+        for (Path p : segments()) {
+            Files.delete(p);
+        }
+        lastSequence = startAfter;
+        unsynced = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        flusher.interrupt();
+        sync();
+        closeSegment();
+    }
+
+    private void recover() throws IOException {
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        List<JournalEvent> events = read(last);
+        lastSequence = events.isEmpty() ? firstSequence(last) - 1 : events.get(events.size() - 1).getSequence();
+
+        channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.position(events.size() * RECORD_SIZE);
+
+        // intact records can follow a torn one; clear them so appends made now are never
+        // followed by stale events on the next replay
+        byte[] zeros = new byte[64 * 1024];
+        for (int at = segment.position(); at < segmentSize; at += zeros.length) {
+            segment.put(at, zeros, 0, Math.min(zeros.length, segmentSize - at));
+        }
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        sync();
+        closeSegment();
+        Path file = dir.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private List<JournalEvent> read(Path file) throws IOException {
+        List<JournalEvent> events = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            byte[] payload = new byte[JournalEvent.PAYLOAD_SIZE];
+            CRC32 check = new CRC32();
+            while (buf.remaining() >= RECORD_SIZE) {
+                int length = buf.getInt();
+                int expected = buf.getInt();
+                if (length != JournalEvent.PAYLOAD_SIZE) {
+                    break;
+                }
+                buf.get(payload);
+                check.reset();
+                check.update(payload);
+                if ((int) check.getValue() != expected) {
+                    break;
+                }
+                events.add(JournalEvent.readFrom(ByteBuffer.wrap(payload)));
+            }
+        }
+        return events;
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
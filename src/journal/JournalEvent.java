@@ -0,0 +1,134 @@
+package journal;
+
+import util.Money;
+
+import java.nio.ByteBuffer;
+
+// one journaled order book event. Every event has the same fixed layout, fields that
+// don't apply to a type are left at zero. For FILL the "order/user" fields are the
+// buy side and the "counter" fields the sell side. A STOP_ACCEPTED carries the trigger
+// as its price and the limit (0 for a stop-loss) in limitPrice.
+public class JournalEvent {
+
+    public enum Type { ORDER_ACCEPTED, ORDER_MODIFIED, ORDER_CANCELLED, FILL, STOP_ACCEPTED, STOP_CANCELLED }
+
+    static final int PAYLOAD_SIZE = 66;
+
+    private long sequence;
+    private final Type type;
+    private final long timestamp;
+    private final int stockId;
+    private final int orderId;
+    private final int userId;
+    private final boolean buy;
+    private final int quantity;
+    private final long price;
+    private final int counterOrderId;
+    private final int counterUserId;
+    private final long limitPrice;
+    private final int remaining;
+    private final int counterRemaining;
+
+    private JournalEvent(Type type, long timestamp, int stockId, int orderId, int userId, boolean buy,
+                         int quantity, long price, int counterOrderId, int counterUserId,
+                         long limitPrice, int remaining, int counterRemaining) {
+        this.type = type;
+        this.timestamp = timestamp;
+        this.stockId = stockId;
+        this.orderId = orderId;
+        this.userId = userId;
+        this.buy = buy;
+        this.quantity = quantity;
+        this.price = price;
+        this.counterOrderId = counterOrderId;
+        this.counterUserId = counterUserId;
+        this.limitPrice = limitPrice;
+        this.remaining = remaining;
+        this.counterRemaining = counterRemaining;
+    }
+
+    public static JournalEvent accepted(int orderId, int userId, int stockId, boolean buy,
+                                        int quantity, long price) {
+        return new JournalEvent(Type.ORDER_ACCEPTED, System.currentTimeMillis(), stockId, orderId, userId,
+                buy, quantity, price, 0, 0, 0, quantity, 0);
+    }
+
+    public static JournalEvent modified(int orderId, int userId, int stockId, boolean buy,
+                                        int quantity, long price) {
+        return new JournalEvent(Type.ORDER_MODIFIED, System.currentTimeMillis(), stockId, orderId, userId,
+                buy, quantity, price, 0, 0, 0, quantity, 0);
+    }
+
+    public static JournalEvent cancelled(int orderId, int userId, int stockId, boolean buy) {
+        return new JournalEvent(Type.ORDER_CANCELLED, System.currentTimeMillis(), stockId, orderId, userId,
+                buy, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static JournalEvent stopAccepted(int orderId, int userId, int stockId, boolean buy,
+                                            int quantity, long triggerPrice, long limitPrice) {
+        return new JournalEvent(Type.STOP_ACCEPTED, System.currentTimeMillis(), stockId, orderId, userId,
+                buy, quantity, triggerPrice, 0, 0, limitPrice, quantity, 0);
+    }
+
+    public static JournalEvent stopCancelled(int orderId, int userId, int stockId, boolean buy) {
+        return new JournalEvent(Type.STOP_CANCELLED, System.currentTimeMillis(), stockId, orderId, userId,
+                buy, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    public static JournalEvent fill(int stockId, int buyOrderId, int sellOrderId, int buyerId, int sellerId,
+                                    int quantity, long price, long buyPrice,
+                                    int buyRemaining, int sellRemaining) {
+        return new JournalEvent(Type.FILL, System.currentTimeMillis(), stockId, buyOrderId, buyerId, true,
+                quantity, price, sellOrderId, sellerId, buyPrice, buyRemaining, sellRemaining);
+    }
+
+    public long getSequence() { return sequence; }
+    void setSequence(long sequence) { this.sequence = sequence; }
+
+    public Type getType() { return type; }
+    public long getTimestamp() { return timestamp; }
+    public int getStockId() { return stockId; }
+    public int getOrderId() { return orderId; }
+    public int getUserId() { return userId; }
+    public boolean isBuy() { return buy; }
+    public int getQuantity() { return quantity; }
+    public long getPrice() { return price; }
+    public int getCounterOrderId() { return counterOrderId; }
+    public int getCounterUserId() { return counterUserId; }
+    public long getLimitPrice() { return limitPrice; }
+    public int getRemaining() { return remaining; }
+    public int getCounterRemaining() { return counterRemaining; }
+
+    void writeTo(ByteBuffer buf) {
+        buf.putLong(sequence);
+        buf.put((byte) type.ordinal());
+        buf.putLong(timestamp);
+        buf.putInt(stockId);
+        buf.putInt(orderId);
+        buf.putInt(userId);
+        buf.put((byte) (buy ? 1 : 0));
+        buf.putInt(quantity);
+        buf.putLong(price);
+        buf.putInt(counterOrderId);
+        buf.putInt(counterUserId);
+        buf.putLong(limitPrice);
+        buf.putInt(remaining);
+        buf.putInt(counterRemaining);
+    }
+
+    static JournalEvent readFrom(ByteBuffer buf) {
+        long sequence = buf.getLong();
+        Type type = Type.values()[buf.get()];
+        JournalEvent e = new JournalEvent(type, buf.getLong(), buf.getInt(), buf.getInt(), buf.getInt(),
+                buf.get() == 1, buf.getInt(), buf.getLong(), buf.getInt(), buf.getInt(),
+                buf.getLong(), buf.getInt(), buf.getInt());
+        e.sequence = sequence;
+        return e;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d %s stock=%d order=%d qty=%d @ %s", sequence, type, stockId, orderId,
+                quantity, Money.format(price));
+    }
+}
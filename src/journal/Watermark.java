@@ -0,0 +1,66 @@
+package journal;
+
+import java.util.*;
+
+// highest sequence up to which every event is persisted. Lanes journal interleaved
+// sequences and their batches finish in any order, so a batch can land ahead of an
+// older one still in flight; its sequences wait above the mark until the gap below
+// them is filled.
+public class Watermark {
+
+    private long mark;
+    private final TreeSet<Long> ahead = new TreeSet<>();
+
+    public Watermark(long mark, Collection<Long> ahead) {
+        this.mark = mark;
+        for (long s : ahead) {
+            if (s > mark) {
+                this.ahead.add(s);
+            }
+        }
+        this.mark = advance(this.mark, this.ahead);
+    }
+
+    public long get() {
+        return mark;
+    }
+
+    // persisted sequences above the mark
+    public SortedSet<Long> getAhead() {
+        return Collections.unmodifiableSortedSet(ahead);
+    }
+
+    // the mark once these sequences are persisted too; changes nothing, so a batch can
+    // write it in its transaction and add() only after the commit
+    public long with(long[] sequences) {
+        TreeSet<Long> next = new TreeSet<>(ahead);
+        for (long s : sequences) {
+            if (s > mark) {
+                next.add(s);
+            }
+        }
+        return advance(mark, next);
+    }
+
+    public void add(long[] sequences) {
+        for (long s : sequences) {
+            if (s > mark) {
+                ahead.add(s);
+            }
+        }
+        mark = advance(mark, ahead);
+    }
+
+    // starts over after a journal reset
+    public void reset(long mark) {
+        this.mark = mark;
+        ahead.clear();
+    }
+
+    private static long advance(long mark, TreeSet<Long> ahead) {
+        while (!ahead.isEmpty() && ahead.first() == mark + 1) {
+            mark = ahead.pollFirst();
+        }
+        return mark;
+    }
+}
@@ -0,0 +1,47 @@
+package market;
+
+import java.util.List;
+
+// per-order results of MarketPlace.placeOrders plus where the time went
+public class BatchResult {
+    private final List<OrderResult> results;
+    private final long validateNanos;
+    private final long reserveNanos;
+    private final long matchNanos;
+
+    BatchResult(List<OrderResult> results, long validateNanos, long reserveNanos, long matchNanos) {
+        this.results = results;
+        this.validateNanos = validateNanos;
+        this.reserveNanos = reserveNanos;
+        this.matchNanos = matchNanos;
+    }
+
+    public List<OrderResult> getResults() { return results; }
+    public long getValidateNanos() { return validateNanos; }
+    public long getReserveNanos() { return reserveNanos; }
+    public long getMatchNanos() { return matchNanos; }
+
+    public long getTotalNanos() {
+        return validateNanos + reserveNanos + matchNanos;
+    }
+
+    public int getAcceptedCount() {
+        int accepted = 0;
+        for (OrderResult r : results) {
+            if (r.isAccepted()) accepted++;
+        }
+        return accepted;
+    }
+
+    public double getOrdersPerSecond() {
+        long total = getTotalNanos();
+        return total > 0 ? results.size() * 1_000_000_000.0 / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d orders (%d accepted) in %.2f ms [validate %.2f, reserve %.2f, match %.2f] = %.0f orders/s",
+                results.size(), getAcceptedCount(), getTotalNanos() / 1e6, validateNanos / 1e6,
+                reserveNanos / 1e6, matchNanos / 1e6, getOrdersPerSecond());
+    }
+}
@@ -0,0 +1,92 @@
+package market;
+
+// one OHLCV bar of a stock, prices in paise. Mutable while the bar is open, only the
+// candle builder's thread touches an open bar. missedTrades is set when the event bus
+// dropped events while the bar was open, so its figures may be short.
+public class Candle {
+
+    public enum Interval {
+        S1(1), M1(60), M5(300), H1(3600), D1(86400);
+
+        private final int seconds;
+
+        Interval(int seconds) {
+            this.seconds = seconds;
+        }
+
+        public int getSeconds() { return seconds; }
+        public long getMillis() { return seconds * 1000L; }
+
+        public static Interval ofSeconds(int seconds) {
+            for (Interval i : values()) {
+                if (i.seconds == seconds) return i;
+            }
+            throw new IllegalArgumentException("No candle interval of " + seconds + "s");
+        }
+    }
+
+    private final int stockId;
+    private final Interval interval;
+    private final long startTime;     // epoch millis
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private long volume;
+    private long turnover;
+    private int trades;
+    private boolean missedTrades;
+
+    public Candle(int stockId, Interval interval, long startTime) {
+        this.stockId = stockId;
+        this.interval = interval;
+        this.startTime = startTime;
+    }
+
+    public Candle(int stockId, Interval interval, long startTime, long open, long high, long low,
+                  long close, long volume, long turnover, int trades, boolean missedTrades) {
+        this(stockId, interval, startTime);
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.volume = volume;
+        this.turnover = turnover;
+        this.trades = trades;
+        this.missedTrades = missedTrades;
+    }
+
+    void add(long price, int quantity) {
+        if (trades == 0) {
+            open = high = low = price;
+        }
+        if (price > high) high = price;
+        if (price < low) low = price;
+        close = price;
+        volume += quantity;
+        turnover += quantity * price;
+        trades++;
+    }
+
+    void markMissedTrades() {
+        missedTrades = true;
+    }
+
+    Candle copy() {
+        return new Candle(stockId, interval, startTime, open, high, low, close, volume, turnover, trades,
+                missedTrades);
+    }
+
+    public int getStockId() { return stockId; }
+    public Interval getInterval() { return interval; }
+    public long getStartTime() { return startTime; }
+    public long getEndTime() { return startTime + interval.getMillis(); }
+    public long getOpen() { return open; }
+    public long getHigh() { return high; }
+    public long getLow() { return low; }
+    public long getClose() { return close; }
+    public long getVolume() { return volume; }
+    public long getTurnover() { return turnover; }
+    public int getTrades() { return trades; }
+    public boolean hasMissedTrades() { return missedTrades; }
+}
@@ -0,0 +1,191 @@
+package market;
+
+import dao.CandleDAO;
+import dbConnection.DatabaseConfig;
+import events.EventHandler;
+import events.MarketEvent;
+
+import java.sql.SQLException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// event bus consumer folding every trade into 1s/1m/5m/1h/1d bars per stock. The
+// latest closed bars stay in a ring per stock and interval for charts. Closed bars are
+// written behind: the consumer only queues them and a flusher thread writes them to
+// the candles table every FLUSH_MILLIS, so a slow database never holds up the bus.
+// Open bars are marked when the bus reports dropped events.
+public class CandleBuilder implements EventHandler {
+
+    private static final int HISTORY = 512;           // closed bars kept per stock and interval
+    private static final long FLUSH_MILLIS = 1000;
+
+    // open bar plus recent history of one stock and interval; readers on other
+    // threads synchronize on it with the builder
+    private static class Series {
+        private final Candle[] closed = new Candle[HISTORY];
+        private int count;              // total bars ever closed
+        private Candle open;
+
+        synchronized void close(Candle bar) {
+            closed[count++ % HISTORY] = bar;
+        }
+
+        synchronized List<Candle> latest(int n) {
+            List<Candle> bars = new ArrayList<>();
+            if (open != null) {
+                bars.add(open.copy());
+            }
+            for (int i = count - 1; i >= 0 && i >= count - HISTORY && bars.size() < n; i--) {
+                bars.add(closed[i % HISTORY]);
+            }
+            return bars;
+        }
+    }
+
+    private final CandleDAO candleDAO;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Map<Long, Series> series = new ConcurrentHashMap<>();   // stockId << 8 | interval
+    private final Queue<Candle> closedBars = new ConcurrentLinkedQueue<>();
+    private long lastSweep = System.currentTimeMillis();
+    // flusher-only: bars taken off the queue whose write failed, retried first
+    private final List<Candle> unwritten = new ArrayList<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "candle-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CandleBuilder(CandleDAO candleDAO) {
+        this.candleDAO = candleDAO;
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(() -> {
+            DatabaseConfig.beginOperation("candle-flush");
+            try {
+                flush();
+            } finally {
+                DatabaseConfig.endOperation();
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onEvent(MarketEvent event, boolean endOfBatch) {
+        if (event.getMissedBefore() > 0) {
+            // the dropped events may have been trades of any stock on the lane
+            markOpenBars();
+        }
+        if (event.getType() == MarketEvent.Type.TRADE) {
+            long time = event.getTimestamp();
+            // bars line up with local time, so a 1d bar runs midnight to midnight
+            long offset = zone.getRules().getOffset(Instant.ofEpochMilli(time)).getTotalSeconds() * 1000L;
+            for (Candle.Interval interval : Candle.Interval.values()) {
+                long start = Math.floorDiv(time + offset, interval.getMillis()) * interval.getMillis() - offset;
+                Series s = series.computeIfAbsent(key(event.getStockId(), interval), k -> new Series());
+                synchronized (s) {
+                    Candle bar = s.open;
+                    if (bar == null || bar.getStartTime() != start) {
+                        if (bar != null) {
+                            closeBar(s, bar);
+                        }
+                        bar = new Candle(event.getStockId(), interval, start);
+                    }
+                    bar.add(event.getPrice(), event.getQuantity());
+                    if (event.getMissedBefore() > 0) {
+                        bar.markMissedTrades();
+                    }
+                    s.open = bar;
+                }
+            }
+        }
+        if (endOfBatch) {
+            long now = System.currentTimeMillis();
+            if (now - lastSweep >= FLUSH_MILLIS) {
+                closeExpired(now);
+                lastSweep = now;
+            }
+        }
+    }
+
+    // newest first, starting with the bar still open
+    public List<Candle> latest(int stockId, Candle.Interval interval, int n) {
+        Series s = series.get(key(stockId, interval));
+        return s != null ? s.latest(n) : new ArrayList<>();
+    }
+
+    // writes everything including the open bars; called once the bus has stopped
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Series s : series.values()) {
+            if (s.open != null) {
+                closedBars.add(s.open.copy());
+            }
+        }
+        flush();
+    }
+
+    public void clear() {
+        series.clear();
+        closedBars.clear();
+        synchronized (this) {
+            unwritten.clear();
+        }
+    }
+
+    // bars nobody traded into since their end are closed without waiting for a trade
+    private void closeExpired(long now) {
+        for (Series s : series.values()) {
+            synchronized (s) {
+                Candle bar = s.open;
+                if (bar != null && bar.getEndTime() <= now) {
+                    closeBar(s, bar);
+                    s.open = null;
+                }
+            }
+        }
+    }
+
+    private void markOpenBars() {
+        for (Series s : series.values()) {
+            synchronized (s) {
+                if (s.open != null) {
+                    s.open.markMissedTrades();
+                }
+            }
+        }
+    }
+
+    private void closeBar(Series s, Candle bar) {
+        s.close(bar);
+        closedBars.add(bar);
+    }
+
+    // runs on the flusher thread, or on the caller's once the flusher has stopped
+    private synchronized void flush() {
+        Candle bar;
+        while ((bar = closedBars.poll()) != null) {
+            unwritten.add(bar);
+        }
+        if (unwritten.isEmpty()) {
+            return;
+        }
+        try {
+            candleDAO.saveAll(unwritten);
+            unwritten.clear();
+        } catch (SQLException e) {
+            // kept and retried with the next flush
+            System.out.println("Writing candles failed, will retry: " + e.getMessage());
+        }
+    }
+
+    private static long key(int stockId, Candle.Interval interval) {
+        return ((long) stockId << 8) | interval.ordinal();
+    }
+}
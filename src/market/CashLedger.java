@@ -0,0 +1,242 @@
+package market;
+
+import account.TradingAccount;
+import dao.TradingAccountDAO;
+import dbConnection.DatabaseConfig;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// every user's cash, resident in memory. Holds move between available and reserved with
+// a CAS on the available field, so balance checks never touch MySQL and two lanes
+// reserving for the same user can't both spend the same rupee.
+//
+// MySQL gets two kinds of writes. Fills change an account's total and still reach
+// trading_accounts through the persister, exactly, in journal order. Holds only move
+// cash from balance to reserved_balance; they are summed per account and written behind
+// in batches, always before the persister writes anything that could consume them. After
+// a crash the split is rebuilt from the open orders (see load), so losing the last
+// unflushed holds costs nothing.
+public class CashLedger {
+
+    private static final long FLUSH_MILLIS = 200;
+
+    static final class Account {
+        private static final VarHandle AVAILABLE;
+        private static final VarHandle RESERVED;
+        private static final VarHandle UNFLUSHED;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                AVAILABLE = lookup.findVarHandle(Account.class, "available", long.class);
+                RESERVED = lookup.findVarHandle(Account.class, "reserved", long.class);
+                UNFLUSHED = lookup.findVarHandle(Account.class, "unflushed", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private volatile long available;
+        private volatile long reserved;
+        // held since the last flush, not in trading_accounts yet
+        private volatile long unflushed;
+
+        Account(long available, long reserved) {
+            this.available = available;
+            this.reserved = reserved;
+        }
+
+        boolean reserve(long amount) {
+            long current;
+            do {
+                current = available;
+                if (current < amount) {
+                    return false;
+                }
+            } while (!AVAILABLE.compareAndSet(this, current, current - amount));
+            RESERVED.getAndAdd(this, amount);
+            return true;
+        }
+
+        void release(long amount) {
+            RESERVED.getAndAdd(this, -amount);
+            AVAILABLE.getAndAdd(this, amount);
+        }
+    }
+
+    private final TradingAccountDAO tradingAccountDAO;
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cash-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public CashLedger(TradingAccountDAO tradingAccountDAO) {
+        this.tradingAccountDAO = tradingAccountDAO;
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(() -> {
+            DatabaseConfig.beginOperation("ledger-flush");
+            try {
+                flush();
+            } catch (SQLException e) {
+                System.out.println("Cash flush failed, will retry: " + e.getMessage());
+            } finally {
+                DatabaseConfig.endOperation();
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // loads every account with MySQL caught up with the journal and the books recovered.
+    // holds: user -> cash the open orders and stops hold. Accounts whose reserved_balance
+    // says otherwise (holds lost in a crash) are corrected in memory and in MySQL.
+    public synchronized void load(Map<Integer, Long> holds) throws SQLException {
+        accounts.clear();
+        dirty.clear();
+        Map<Integer, long[]> corrections = new HashMap<>();
+        for (TradingAccount a : tradingAccountDAO.findAll()) {
+            long total = a.getBalance() + a.getReservedBalance();
+            long reserved = holds.getOrDefault(a.getUserId(), 0L);
+            long drift = reserved - a.getReservedBalance();
+            if (drift != 0) {
+                corrections.put(a.getUserId(), new long[]{-drift, drift});
+            }
+            accounts.put(a.getUserId(), new Account(total - reserved, reserved));
+        }
+        if (!corrections.isEmpty()) {
+            tradingAccountDAO.applyDeltas(corrections);
+            System.out.println("Cash ledger: corrected holds of " + corrections.size() + " account(s)");
+        }
+    }
+
+    // moves amount into the hold if it is available; a negative amount releases
+    public boolean tryReserve(int userId, long amount) throws SQLException {
+        Account account = account(userId);
+        if (account == null) {
+            return false;
+        }
+        if (amount >= 0) {
+            if (!account.reserve(amount)) {
+                return false;
+            }
+        } else {
+            account.release(-amount);
+        }
+        Account.UNFLUSHED.getAndAdd(account, amount);
+        dirty.add(userId);
+        return true;
+    }
+
+    // the cash side of a fill, called on the lane that matched it. The buyer pays out of
+    // the hold taken at the order's own price and gets the price improvement back.
+    public void settle(Fill fill) throws SQLException {
+        long total = fill.getQuantity() * fill.getPrice();
+        long held = fill.getQuantity() * fill.getBuyPrice();
+        Account buyer = account(fill.getBuyerId());
+        if (buyer != null) {
+            Account.RESERVED.getAndAdd(buyer, -held);
+            Account.AVAILABLE.getAndAdd(buyer, held - total);
+        }
+        Account seller = account(fill.getSellerId());
+        if (seller != null) {
+            Account.AVAILABLE.getAndAdd(seller, total);
+        }
+    }
+
+    // a deposit: written to MySQL, then added in memory. The account is loaded before the
+    // write, so a row read from MySQL never already holds the amount it is credited with.
+    public boolean deposit(int userId, long amount) throws SQLException {
+        Account account = account(userId);
+        if (account == null || !tradingAccountDAO.credit(userId, amount)) {
+            return false;
+        }
+        Account.AVAILABLE.getAndAdd(account, amount);
+        return true;
+    }
+
+    // point in time copy, or null for a user without an account
+    public TradingAccount get(int userId) throws SQLException {
+        Account account = account(userId);
+        if (account == null) {
+            return null;
+        }
+        TradingAccount copy = new TradingAccount();
+        copy.setUserId(userId);
+        copy.setBalance(account.available);
+        copy.setReservedBalance(account.reserved);
+        return copy;
+    }
+
+    public void remove(int userId) {
+        accounts.remove(userId);
+        dirty.remove(userId);
+    }
+
+    // writes the holds taken since the last flush as one batch. Synchronized so the
+    // persister's flush waits for one the flusher has in flight.
+    public synchronized void flush() throws SQLException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Integer, long[]> deltas = new HashMap<>();
+        for (Iterator<Integer> it = dirty.iterator(); it.hasNext(); ) {
+            int userId = it.next();
+            it.remove();
+            Account account = accounts.get(userId);
+            if (account == null) continue;
+            long held = (long) Account.UNFLUSHED.getAndSet(account, 0L);
+            if (held != 0) {
+                deltas.put(userId, new long[]{-held, held});
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        DatabaseConfig.beginTransaction();
+        try {
+            tradingAccountDAO.applyDeltas(deltas);
+            DatabaseConfig.commit();
+        } catch (SQLException e) {
+            DatabaseConfig.rollback();
+            // put them back for the next attempt
+            for (Map.Entry<Integer, long[]> d : deltas.entrySet()) {
+                Account account = accounts.get(d.getKey());
+                if (account != null) {
+                    Account.UNFLUSHED.getAndAdd(account, d.getValue()[1]);
+                    dirty.add(d.getKey());
+                }
+            }
+            throw e;
+        }
+    }
+
+    public void close() {
+        flusher.shutdown();
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Final cash flush failed: " + e.getMessage());
+        }
+    }
+
+    // accounts opened after startup are read from MySQL the first time they are used
+    private Account account(int userId) throws SQLException {
+        Account account = accounts.get(userId);
+        if (account != null) {
+            return account;
+        }
+        TradingAccount a = tradingAccountDAO.findByUserId(userId);
+        if (a == null) {
+            return null;
+        }
+        Account loaded = accounts.putIfAbsent(userId, new Account(a.getBalance(), a.getReservedBalance()));
+        return loaded != null ? loaded : accounts.get(userId);
+    }
+}
@@ -0,0 +1,54 @@
+package market;
+
+import java.util.*;
+
+// market-by-price view of the best levels of one book. Immutable, the order book
+// publishes a new one whenever a change touches the levels it shows, so any thread
+// can read it without going through the matching lane.
+public class Depth {
+
+    public static class Level {
+        private final long price;       // paise
+        private final long quantity;
+        private final int orders;
+
+        Level(long price, long quantity, int orders) {
+            this.price = price;
+            this.quantity = quantity;
+            this.orders = orders;
+        }
+
+        public long getPrice() { return price; }
+        public long getQuantity() { return quantity; }
+        public int getOrders() { return orders; }
+    }
+
+    static final Depth EMPTY = new Depth(Collections.emptyList(), Collections.emptyList(), 0);
+
+    private final List<Level> bids;
+    private final List<Level> asks;
+    private final long version;
+
+    Depth(List<Level> bids, List<Level> asks, long version) {
+        this.bids = bids;
+        this.asks = asks;
+        this.version = version;
+    }
+
+    // best price first
+    public List<Level> getBids() { return bids; }
+    public List<Level> getAsks() { return asks; }
+
+    // bumps on every publish, lets consumers skip unchanged views
+    public long getVersion() { return version; }
+
+    // builds the top n levels of one side
+    static List<Level> of(Collection<PriceLevel> side, int n) {
+        List<Level> levels = new ArrayList<>(Math.min(n, side.size()));
+        for (PriceLevel level : side) {
+            if (levels.size() == n) break;
+            levels.add(new Level(level.getPrice(), level.getTotalQuantity(), level.getOrderCount()));
+        }
+        return Collections.unmodifiableList(levels);
+    }
+}
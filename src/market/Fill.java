@@ -0,0 +1,40 @@
+package market;
+
+// one match between a buy and a sell order, produced by the order book
+public class Fill {
+    private final int stockId;
+    private final int buyOrderId;
+    private final int sellOrderId;
+    private final int buyerId;
+    private final int sellerId;
+    private final int quantity;
+    private final long price;     // trade price in paise (the resting order's price)
+    private final long buyPrice;  // paise the buyer reserved at
+    private final int buyRemaining;
+    private final int sellRemaining;
+
+    public Fill(int stockId, int buyOrderId, int sellOrderId, int buyerId, int sellerId,
+                int quantity, long price, long buyPrice, int buyRemaining, int sellRemaining) {
+        this.stockId = stockId;
+        this.buyOrderId = buyOrderId;
+        this.sellOrderId = sellOrderId;
+        this.buyerId = buyerId;
+        this.sellerId = sellerId;
+        this.quantity = quantity;
+        this.price = price;
+        this.buyPrice = buyPrice;
+        this.buyRemaining = buyRemaining;
+        this.sellRemaining = sellRemaining;
+    }
+
+    public int getStockId() { return stockId; }
+    public int getBuyOrderId() { return buyOrderId; }
+    public int getSellOrderId() { return sellOrderId; }
+    public int getBuyerId() { return buyerId; }
+    public int getSellerId() { return sellerId; }
+    public int getQuantity() { return quantity; }
+    public long getPrice() { return price; }
+    public long getBuyPrice() { return buyPrice; }
+    public int getBuyRemaining() { return buyRemaining; }
+    public int getSellRemaining() { return sellRemaining; }
+}
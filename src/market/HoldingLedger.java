@@ -0,0 +1,283 @@
+package market;
+
+import dao.StockHoldingDAO;
+import dbConnection.DatabaseConfig;
+import trading.StockHolding;
+import util.LongHashMap;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+// every demat account's shares, resident in memory and keyed by demat << 32 | stock.
+// The table is split into stripes, each a primitive long map under its own lock, so
+// lanes working on different holdings rarely meet.
+//
+// Same split as the cash ledger: fills change totals and reach stock_holdings through the
+// persister; holds only move reserved_quantity, are summed per holding and written
+// behind in batches ahead of every persister batch. load() rebuilds the holds from the
+// open orders, so a crash can't leave them wrong.
+public class HoldingLedger {
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    private static final long FLUSH_MILLIS = 200;
+
+    private static final class Holding {
+        int total;
+        int reserved;
+        // held since the last flush, not in stock_holdings yet
+        int unflushed;
+
+        Holding(int total, int reserved) {
+            this.total = total;
+            this.reserved = reserved;
+        }
+    }
+
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final LongHashMap<Holding> holdings = new LongHashMap<>();
+    }
+
+    private final StockHoldingDAO stockHoldingDAO;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "holding-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public HoldingLedger(StockHoldingDAO stockHoldingDAO) {
+        this.stockHoldingDAO = stockHoldingDAO;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public static long key(int dematId, int stockId) {
+        return ((long) dematId << 32) | (stockId & 0xFFFFFFFFL);
+    }
+
+    public void start() {
+        flusher.scheduleWithFixedDelay(() -> {
+            DatabaseConfig.beginOperation("ledger-flush");
+            try {
+                flush();
+            } catch (SQLException e) {
+                System.out.println("Holding flush failed, will retry: " + e.getMessage());
+            } finally {
+                DatabaseConfig.endOperation();
+            }
+        }, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // loads every holding with MySQL caught up with the journal and the books recovered.
+    // holds: demat/stock key -> shares the open sell orders and stops hold. Rows whose
+    // reserved_quantity says otherwise are corrected in memory and in MySQL.
+    public synchronized void load(Map<Long, Integer> holds) throws SQLException {
+        for (Stripe s : stripes) {
+            s.lock.lock();
+            try {
+                s.holdings.clear();
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        dirty.clear();
+        Map<Long, Integer> corrections = new HashMap<>();
+        for (StockHolding h : stockHoldingDAO.findAll()) {
+            long key = key(h.getDematId(), h.getStockId());
+            int reserved = holds.getOrDefault(key, 0);
+            if (reserved != h.getReservedQuantity()) {
+                corrections.put(key, reserved - h.getReservedQuantity());
+            }
+            Stripe s = stripe(key);
+            s.lock.lock();
+            try {
+                s.holdings.put(key, new Holding(h.getTotalQuantity(), reserved));
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        if (!corrections.isEmpty()) {
+            stockHoldingDAO.addReserved(corrections);
+            System.out.println("Holding ledger: corrected holds of " + corrections.size() + " holding(s)");
+        }
+    }
+
+    // reserves quantity shares if that many are unreserved; a negative quantity releases
+    public boolean tryReserve(int dematId, int stockId, int quantity) {
+        long key = key(dematId, stockId);
+        Stripe s = stripe(key);
+        s.lock.lock();
+        try {
+            Holding h = s.holdings.get(key);
+            if (h == null || h.total - h.reserved < quantity || h.reserved + quantity < 0) {
+                return false;
+            }
+            h.reserved += quantity;
+            h.unflushed += quantity;
+        } finally {
+            s.lock.unlock();
+        }
+        dirty.add(key);
+        return true;
+    }
+
+    // the share side of a fill, called on the lane that matched it. The seller's shares
+    // leave the hold, the buyer's land in a holding that is created if needed.
+    public void settle(int sellerDematId, int buyerDematId, int stockId, int quantity) {
+        long sellerKey = key(sellerDematId, stockId);
+        Stripe s = stripe(sellerKey);
+        s.lock.lock();
+        try {
+            Holding h = s.holdings.get(sellerKey);
+            if (h != null) {
+                h.total -= quantity;
+                h.reserved -= quantity;
+                // same rule as the table: an emptied holding is gone, once its last hold
+                // has been written
+                if (h.total <= 0 && h.unflushed == 0) {
+                    s.holdings.remove(sellerKey);
+                }
+            }
+        } finally {
+            s.lock.unlock();
+        }
+
+        long buyerKey = key(buyerDematId, stockId);
+        s = stripe(buyerKey);
+        s.lock.lock();
+        try {
+            Holding h = s.holdings.get(buyerKey);
+            if (h == null) {
+                s.holdings.put(buyerKey, new Holding(quantity, 0));
+            } else {
+                h.total += quantity;
+            }
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    // point in time copy, or null if the account holds none of the stock
+    public StockHolding get(int dematId, int stockId) {
+        long key = key(dematId, stockId);
+        Stripe s = stripe(key);
+        s.lock.lock();
+        try {
+            Holding h = s.holdings.get(key);
+            return h != null ? copy(dematId, stockId, h) : null;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public int getAvailable(int dematId, int stockId) {
+        StockHolding h = get(dematId, stockId);
+        return h != null ? h.getAvailableQuantity() : 0;
+    }
+
+    // walks every stripe; for the portfolio screen, not the order path
+    public List<StockHolding> forDemat(int dematId) {
+        List<StockHolding> list = new ArrayList<>();
+        for (Stripe s : stripes) {
+            s.lock.lock();
+            try {
+                s.holdings.forEach((key, h) -> {
+                    if ((int) (key >>> 32) == dematId && h.total > 0) {
+                        list.add(copy(dematId, (int) (long) key, h));
+                    }
+                });
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        list.sort(Comparator.comparingInt(StockHolding::getStockId));
+        return list;
+    }
+
+    // writes the holds taken since the last flush as one batch. A holding the persister
+    // hasn't inserted yet keeps its hold for the next flush. Synchronized like the cash
+    // ledger's, so the persister never overtakes a flush in flight.
+    public synchronized void flush() throws SQLException {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> deltas = new HashMap<>();
+        for (Iterator<Long> it = dirty.iterator(); it.hasNext(); ) {
+            long key = it.next();
+            it.remove();
+            Stripe s = stripe(key);
+            s.lock.lock();
+            try {
+                Holding h = s.holdings.get(key);
+                if (h != null && h.unflushed != 0) {
+                    deltas.put(key, h.unflushed);
+                    h.unflushed = 0;
+                    if (h.total <= 0) {
+                        s.holdings.remove(key);
+                    }
+                }
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Set<Long> missed;
+        DatabaseConfig.beginTransaction();
+        try {
+            missed = stockHoldingDAO.addReserved(deltas);
+            DatabaseConfig.commit();
+        } catch (SQLException e) {
+            DatabaseConfig.rollback();
+            restore(deltas.keySet(), deltas);
+            throw e;
+        }
+        restore(missed, deltas);
+    }
+
+    public void close() {
+        flusher.shutdown();
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.out.println("Final holding flush failed: " + e.getMessage());
+        }
+    }
+
+    private void restore(Set<Long> keys, Map<Long, Integer> deltas) {
+        for (long key : keys) {
+            Stripe s = stripe(key);
+            s.lock.lock();
+            try {
+                Holding h = s.holdings.get(key);
+                if (h != null) {
+                    h.unflushed += deltas.get(key);
+                    dirty.add(key);
+                }
+            } finally {
+                s.lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripe(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> (64 - STRIPE_BITS))];
+    }
+
+    private static StockHolding copy(int dematId, int stockId, Holding h) {
+        StockHolding holding = new StockHolding();
+        holding.setDematId(dematId);
+        holding.setStockId(stockId);
+        holding.setTotalQuantity(h.total);
+        holding.setReservedQuantity(h.reserved);
+        return holding;
+    }
+}
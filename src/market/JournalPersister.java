@@ -0,0 +1,252 @@
+package market;
+
+import dao.*;
+import dbConnection.DatabaseConfig;
+import journal.JournalEvent;
+import journal.Watermark;
+import trading.Order;
+import trading.User;
+
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// brings MySQL up to date with the journal in the background. Each submitted batch is
+// the events of one command (an order and its fills, a modify, a cancel) and is written
+// in one transaction together with the checkpoint. Lanes submit in the order they
+// finish, not in sequence order, so the checkpoint only moves up to the watermark of
+// contiguously written sequences; whatever a batch writes beyond it is recorded in
+// journal_applied in the same transaction.
+public class JournalPersister {
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final OrderDAO orderDAO;
+    private final JournalCheckpointDAO checkpointDAO;
+    private final Settlement settlement;
+    private final CashLedger cashLedger;
+    private final HoldingLedger holdingLedger;
+
+    private final BlockingQueue<List<JournalEvent>> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread thread;
+    private int lastOrderId;
+    private final Watermark watermark;
+    private volatile long persistedSequence;
+
+    // applied are the sequences already written above persistedSequence
+    public JournalPersister(OrderDAO orderDAO, JournalCheckpointDAO checkpointDAO, Settlement settlement,
+                            CashLedger cashLedger, HoldingLedger holdingLedger,
+                            long persistedSequence, Collection<Long> applied, int lastOrderId) {
+        this.orderDAO = orderDAO;
+        this.checkpointDAO = checkpointDAO;
+        this.settlement = settlement;
+        this.cashLedger = cashLedger;
+        this.holdingLedger = holdingLedger;
+        this.lastOrderId = lastOrderId;
+        this.watermark = new Watermark(persistedSequence, applied);
+        this.persistedSequence = watermark.get();
+        thread = new Thread(this::run, "journal-persister");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // journal sequence up to which every event is in MySQL
+    public long getPersistedSequence() {
+        return persistedSequence;
+    }
+
+    public void submit(List<JournalEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        pending.incrementAndGet();
+        queue.add(events);
+    }
+
+    // waits until everything submitted so far is in MySQL
+    public void drain() {
+        while (pending.get() > 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // after the journal starts over; call drained
+    public synchronized void reset(long sequence) {
+        watermark.reset(sequence);
+        persistedSequence = sequence;
+    }
+
+    public void shutdown() {
+        drain();
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<JournalEvent> events;
+            try {
+                events = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // the journal is the source of truth, keep retrying rather than skip a batch
+            while (true) {
+                DatabaseConfig.beginOperation("settlement");
+                try {
+                    persist(events);
+                    break;
+                } catch (SQLException e) {
+                    System.out.println("Persisting journal batch failed, retrying: " + e.getMessage());
+                } finally {
+                    DatabaseConfig.endOperation();
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+            pending.decrementAndGet();
+        }
+    }
+
+    // applies events in order inside one transaction; also used for crash recovery
+    public synchronized Map<Integer, User> persist(List<JournalEvent> events) throws SQLException {
+        Map<Integer, User> users = new HashMap<>();
+        // every hold these events rely on was taken before they were journaled; writing
+        // the holds first keeps the reserved columns from going below what a fill takes
+        cashLedger.flush();
+        holdingLedger.flush();
+        DatabaseConfig.beginTransaction();
+        try {
+            int maxOrderId = lastOrderId;
+            List<Fill> fills = new ArrayList<>();
+            // orders accepted by the command whose fills are being collected
+            Set<Integer> written = new HashSet<>();
+            // residual rows not inserted yet, a basket writes them as one statement
+            Map<Integer, Order> resting = new LinkedHashMap<>();
+            // a cancelled id never shows up again, so the deletes can wait for one statement
+            List<Integer> cancelled = new ArrayList<>();
+
+            for (int i = 0; i < events.size(); i++) {
+                JournalEvent e = events.get(i);
+                if (e.getType() == JournalEvent.Type.FILL) {
+                    if (!fills.isEmpty() && fills.get(0).getStockId() != e.getStockId()) {
+                        users.putAll(settle(fills, written, resting));
+                        fills = new ArrayList<>();
+                    }
+                    fills.add(toFill(e));
+                    continue;
+                }
+                users.putAll(settle(fills, written, resting));
+                fills = new ArrayList<>();
+                written.clear();
+
+                switch (e.getType()) {
+                    case ORDER_ACCEPTED -> {
+                        // the order was matched before it was journaled as resting, only the
+                        // part its own fills left over ever becomes a row
+                        int residual = residual(events, i);
+                        if (residual > 0) {
+                            Order order = new Order(e.getUserId(), e.getStockId(), residual, e.getPrice(), e.isBuy());
+                            order.setOrderId(e.getOrderId());
+                            resting.put(e.getOrderId(), order);
+                        }
+                        written.add(e.getOrderId());
+                        maxOrderId = Math.max(maxOrderId, e.getOrderId());
+                    }
+                    case ORDER_MODIFIED -> {
+                        flush(resting);
+                        orderDAO.modifyOrder(e.getOrderId(), e.getQuantity(), e.getPrice());
+                    }
+                    case ORDER_CANCELLED -> {
+                        flush(resting);
+                        cancelled.add(e.getOrderId());
+                    }
+                    // pending stops live in the journal and snapshots only, but their ids
+                    // are taken
+                    case STOP_ACCEPTED -> maxOrderId = Math.max(maxOrderId, e.getOrderId());
+                    default -> { }
+                }
+            }
+            users.putAll(settle(fills, written, resting));
+            flush(resting);
+            orderDAO.cancelOrders(cancelled);
+
+            long[] sequences = new long[events.size()];
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = events.get(i).getSequence();
+            }
+            long mark = watermark.with(sequences);
+            List<Long> ahead = new ArrayList<>();
+            for (long s : sequences) {
+                if (s > mark) {
+                    ahead.add(s);
+                }
+            }
+            checkpointDAO.saveApplied(ahead);
+            if (!watermark.getAhead().isEmpty() && watermark.getAhead().first() <= mark) {
+                checkpointDAO.deleteApplied(mark);
+            }
+            checkpointDAO.save(mark, maxOrderId);
+            DatabaseConfig.commit();
+            lastOrderId = maxOrderId;
+            watermark.add(sequences);
+            persistedSequence = watermark.get();
+            return users;
+
+        } catch (SQLException e) {
+            DatabaseConfig.rollback();
+            throw e;
+        }
+    }
+
+    // a later command's fill may update a residual row, so it has to exist by then
+    private Map<Integer, User> settle(List<Fill> fills, Set<Integer> written,
+                                      Map<Integer, Order> resting) throws SQLException {
+        for (Fill fill : fills) {
+            if ((resting.containsKey(fill.getBuyOrderId()) && !written.contains(fill.getBuyOrderId()))
+                    || (resting.containsKey(fill.getSellOrderId()) && !written.contains(fill.getSellOrderId()))) {
+                flush(resting);
+                break;
+            }
+        }
+        return settlement.settle(fills, written);
+    }
+
+    private void flush(Map<Integer, Order> resting) throws SQLException {
+        orderDAO.insertOrders(resting.values());
+        resting.clear();
+    }
+
+    // quantity left of the order accepted at index after the fills that follow it
+    private static int residual(List<JournalEvent> events, int index) {
+        JournalEvent accepted = events.get(index);
+        int residual = accepted.getQuantity();
+        for (int i = index + 1; i < events.size(); i++) {
+            JournalEvent e = events.get(i);
+            if (e.getType() != JournalEvent.Type.FILL) {
+                break;
+            }
+            if (e.getOrderId() == accepted.getOrderId()) {
+                residual = e.getRemaining();
+            } else if (e.getCounterOrderId() == accepted.getOrderId()) {
+                residual = e.getCounterRemaining();
+            }
+        }
+        return residual;
+    }
+
+    static Fill toFill(JournalEvent e) {
+        return new Fill(e.getStockId(), e.getOrderId(), e.getCounterOrderId(), e.getUserId(),
+                e.getCounterUserId(), e.getQuantity(), e.getPrice(), e.getLimitPrice(),
+                e.getRemaining(), e.getCounterRemaining());
+    }
+}
@@ -4,12 +4,36 @@ import account.*;
 import trading.*;
 import dbConnection.*;
 import dao.*;
-
+import dbOperations.Page;
+import dbOperations.UncheckedSQLException;
+import journal.*;
+import events.*;
+import util.Money;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class MarketPlace {
 
+    private static final String JOURNAL_DIR = "journal";
+    private static final int JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int JOURNAL_SYNC_EVERY = 64;       // events per fsync
+    private static final long JOURNAL_SYNC_MILLIS = 5;     // max age of an unsynced event
+    private static final long SNAPSHOT_INTERVAL_SECONDS = 60;
+    private static final int EVENT_RING_SIZE = 8192;         // slots per lane
+    private static final long EVENT_MAX_WAIT_NANOS = 50_000_000;      // lane wait on candles/tickers before dropping
+    private static final long EVENT_LOSSY_MAX_WAIT_NANOS = 1_000_000; // and on best-effort consumers
+    private static final long EVENT_POLL_NANOS = 100_000;
+    private static final int HISTORY_PAGE_SIZE = 20;         // trades per page on the history screens
+
     private OrderDAO orderDAO;
     private TransactionDAO transactionDAO;
     private TradingAccountDAO tradingAccountDAO;
@@ -17,8 +41,48 @@ public class MarketPlace {
     private UserDAO userDAO;
     private StockDAO stockDAO;
     private DematAccountDAO dematAccountDAO;
-
-    public MarketPlace() {
+    private JournalCheckpointDAO checkpointDAO;
+    private CandleDAO candleDAO;
+    private Settlement settlement;
+    // every account's cash; holds and fills happen here, MySQL follows behind
+    private CashLedger cashLedger;
+    private HoldingLedger holdingLedger;
+
+    // a book is only ever touched from its stock's matching lane
+    private final Map<Integer, OrderBook> books = new ConcurrentHashMap<>();
+    // every resting order by id and by user, used to route and check modify/cancel
+    // and to list a user's orders without sql
+    private final OpenOrderIndex openOrders = new OpenOrderIndex();
+    // pending stop orders per stock, lane-confined like the books, plus an index by id
+    // for routing cancels
+    private final Map<Integer, StopBook> stopBooks = new ConcurrentHashMap<>();
+    private final Map<Integer, StopOrder> stopOrders = new ConcurrentHashMap<>();
+    // a user's demat account never changes, so it is looked up once
+    private final Map<Integer, Integer> dematIds = new ConcurrentHashMap<>();
+    private final MatchingScheduler scheduler =
+            new MatchingScheduler(Runtime.getRuntime().availableProcessors(), 1024);
+
+    // stocks are only ever added by seeding the database, so they are cached by name
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+    private final TickerBoard tickers = new TickerBoard();
+    private CandleBuilder candles;
+
+    // market data, logging and analytics consumers; one single-producer ring per lane
+    private final EventBus bus = new EventBus(scheduler.getShardCount(), EVENT_RING_SIZE,
+            WaitStrategy.sleeping(EVENT_POLL_NANOS), EVENT_MAX_WAIT_NANOS, EVENT_LOSSY_MAX_WAIT_NANOS);
+
+    // order ids are handed out here, the row is written later by the persister
+    private final AtomicInteger lastOrderId = new AtomicInteger();
+    private Journal journal;
+    private JournalPersister persister;
+    private SnapshotStore snapshotStore;
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "snapshotter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public MarketPlace() throws SQLException, IOException {
         this.orderDAO = new OrderDAO();
         this.transactionDAO = new TransactionDAO();
         this.tradingAccountDAO = new TradingAccountDAO();
@@ -26,495 +90,1032 @@ public class MarketPlace {
         this.userDAO = new UserDAO();
         this.stockDAO = new StockDAO();
         this.dematAccountDAO = new DematAccountDAO();
-    }
+        this.checkpointDAO = new JournalCheckpointDAO();
+        this.candleDAO = new CandleDAO();
+        this.settlement = new Settlement(userDAO, tradingAccountDAO, stockHoldingDAO, orderDAO, transactionDAO);
+        this.journal = new Journal(Paths.get(JOURNAL_DIR), JOURNAL_SEGMENT_SIZE,
+                JOURNAL_SYNC_EVERY, JOURNAL_SYNC_MILLIS);
+        this.snapshotStore = new SnapshotStore(Paths.get(JOURNAL_DIR, "snapshots"));
+        this.cashLedger = new CashLedger(tradingAccountDAO);
+        this.holdingLedger = new HoldingLedger(stockHoldingDAO);
+        DatabaseConfig.beginOperation("startup");
+        try {
+            stockHoldingDAO.createKeyIfMissing();
+            transactionDAO.createIndexesIfMissing();
+            recover();
+            cashLedger.load(cashHolds());
+            holdingLedger.load(shareHolds());
+        } finally {
+            DatabaseConfig.endOperation();
+        }
+        cashLedger.start();
+        holdingLedger.start();
 
-    public Order placeBuyOrder(int userId, String stockName, int quantity, double price) throws SQLException {
-        Stock stock = stockDAO.findByName(stockName);
-        if (stock == null) {
-            System.out.println("Stock not found: " + stockName);
-            return null;
+        for (Stock stock : stockDAO.listAllStocks()) {
+            stocks.put(stock.getStockName(), stock);
+        }
+        Map<Integer, Long> lastPrices = transactionDAO.findLastPrices();
+        tickers.seed(lastPrices);
+        // books that replayed a fill already know their price
+        for (Map.Entry<Integer, Long> e : lastPrices.entrySet()) {
+            OrderBook book = getBook(e.getKey());
+            if (book.getLastTradePrice() == 0) {
+                book.setLastTradePrice(e.getValue());
+            }
         }
 
-        double total = quantity * price;
+        candleDAO.createTableIfMissing();
+        candles = new CandleBuilder(candleDAO);
+        candles.start();
 
-        try {
-            DatabaseConfig.beginTransaction();
-            if (!tradingAccountDAO.reserveBalance(userId, total)) {
-                DatabaseConfig.rollback();
-                System.out.println("Insufficient balance!");
-                return null;
-            }
+        bus.addConsumer("market-data", tickers);
+        bus.addConsumer("candles", candles);
+        bus.addLossyConsumer("trade-logger", new TradeLogger(userDAO));
+        bus.start();
 
-            Order order = orderDAO.createOrder(userId, stockName, quantity, price, true);
-            if (order == null) {
-                DatabaseConfig.rollback();
-                System.out.println("Failed to create order!");
-                return null;
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                System.out.println("Snapshot failed: " + e.getMessage());
             }
+        }, SNAPSHOT_INTERVAL_SECONDS, SNAPSHOT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
 
-            DatabaseConfig.commit();
-            System.out.println("BUY order placed: #" + order.getOrderId());
+    // builds the books from the latest snapshot plus the journal after it, and brings
+    // MySQL up to date with the journal. Without a snapshot the books come from MySQL.
+    private void recover() throws SQLException, IOException {
+        long started = System.nanoTime();
+        SnapshotStore.Snapshot snapshot = snapshotStore.loadLatest();
+        long loaded = System.nanoTime();
+
+        checkpointDAO.createTableIfMissing();
+        long checkpoint = checkpointDAO.getLastSequence();
+        int lastPersistedOrderId = checkpointDAO.getLastOrderId();
+        // batches that overtook an older one are in MySQL already
+        Set<Long> applied = new HashSet<>(checkpointDAO.getApplied());
+        List<JournalEvent> tail = new ArrayList<>();
+        journal.replay(checkpoint, e -> {
+            if (!applied.contains(e.getSequence())) {
+                tail.add(e);
+            }
+        });
+        persister = new JournalPersister(orderDAO, checkpointDAO, settlement, cashLedger, holdingLedger,
+                checkpoint, applied, lastPersistedOrderId);
+        if (!tail.isEmpty()) {
+            persister.persist(tail);
+        }
+        long caughtUp = System.nanoTime();
+
+        int[] replayed = new int[1];
+        String source;
+        if (snapshot != null) {
+            books.putAll(snapshot.getBooks());
+            for (OrderBook book : books.values()) {
+                book.forEachOrder(openOrders::add);
+            }
+            for (StopOrder stop : snapshot.getStops()) {
+                getStopBook(stop.getStockId()).add(stop);
+                stopOrders.put(stop.getOrderId(), stop);
+            }
+            lastOrderId.set(snapshot.getLastOrderId());
+            journal.replay(snapshot.getSequence(), e -> {
+                replay(e);
+                replayed[0]++;
+            });
+            source = "snapshot #" + snapshot.getSequence() + " (" + snapshot.getOrderCount() + " orders)";
+        } else {
+            loadBooks();
+            // pending stops have no rows; with no snapshot yet the journal still holds them all
+            journal.replay(0, this::replayStop);
+            source = "orders table (" + openOrders.size() + " orders, " + stopOrders.size() + " stops)";
+        }
+        lastOrderId.set(Math.max(lastOrderId.get(),
+                Math.max(checkpointDAO.getLastOrderId(), orderDAO.findMaxOrderId())));
+        long ready = System.nanoTime();
+
+        System.out.println("Startup: books from " + source);
+        System.out.printf("  snapshot load  : %6d ms%n", (loaded - started) / 1_000_000);
+        System.out.printf("  db catch-up    : %6d ms (%d events)%n", (caughtUp - loaded) / 1_000_000, tail.size());
+        System.out.printf("  journal replay : %6d ms (%d events)%n", (ready - caughtUp) / 1_000_000, replayed[0]);
+        System.out.printf("  total          : %6d ms%n", (ready - started) / 1_000_000);
+    }
 
-            autoMatchBuy(order);
+    // re-applies one journaled event to the in-memory books
+    private void replay(JournalEvent e) {
+        OrderBook book = getBook(e.getStockId());
+        switch (e.getType()) {
+            case ORDER_ACCEPTED -> {
+                Order order = new Order();
+                order.setOrderId(e.getOrderId());
+                order.setUserId(e.getUserId());
+                order.setStockId(e.getStockId());
+                order.setBuy(e.isBuy());
+                order.setQuantity(e.getQuantity());
+                order.setPrice(e.getPrice());
+                book.add(order);
+                openOrders.add(order);
+                lastOrderId.accumulateAndGet(order.getOrderId(), Math::max);
+                replayStop(e);
+            }
+            case ORDER_MODIFIED -> {
+                Order order = book.remove(e.getOrderId());
+                if (order != null) {
+                    order.setQuantity(e.getQuantity());
+                    order.setPrice(e.getPrice());
+                    book.add(order);
+                }
+            }
+            case ORDER_CANCELLED -> {
+                book.remove(e.getOrderId());
+                openOrders.remove(e.getOrderId());
+            }
+            case FILL -> {
+                book.setLastTradePrice(e.getPrice());
+                book.updateQuantity(e.getOrderId(), e.getRemaining());
+                book.updateQuantity(e.getCounterOrderId(), e.getCounterRemaining());
+                if (e.getRemaining() == 0) openOrders.remove(e.getOrderId());
+                if (e.getCounterRemaining() == 0) openOrders.remove(e.getCounterOrderId());
+            }
+            case STOP_ACCEPTED, STOP_CANCELLED -> replayStop(e);
+        }
+    }
 
-            return orderDAO.findById(order.getOrderId());
+    // a stop leaves its book when cancelled or when its order is accepted on trigger
+    private void replayStop(JournalEvent e) {
+        switch (e.getType()) {
+            case STOP_ACCEPTED -> {
+                StopOrder stop = new StopOrder(e.getOrderId(), e.getUserId(), e.getStockId(), e.isBuy(),
+                        e.getQuantity(), e.getPrice(), e.getLimitPrice());
+                getStopBook(stop.getStockId()).add(stop);
+                stopOrders.put(stop.getOrderId(), stop);
+                lastOrderId.accumulateAndGet(stop.getOrderId(), Math::max);
+            }
+            case STOP_CANCELLED, ORDER_ACCEPTED -> {
+                if (stopOrders.remove(e.getOrderId()) != null) {
+                    getStopBook(e.getStockId()).remove(e.getOrderId());
+                }
+            }
+            default -> { }
+        }
+    }
 
-        } catch (SQLException e) {
-            DatabaseConfig.rollback();
-            throw e;
+    // pauses all lanes just long enough to serialize the books, then writes to disk and
+    // drops journal segments that neither the snapshot nor MySQL still need
+    public void takeSnapshot() throws IOException {
+        long[] sequence = new long[1];
+        byte[][] data = new byte[1][];
+        try {
+            scheduler.pauseAll(() -> {
+                sequence[0] = journal.getLastSequence();
+                data[0] = snapshotStore.encode(sequence[0], lastOrderId.get(), books.values(),
+                        stopBooks.values());
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         }
+        snapshotStore.write(sequence[0], data[0]);
+        journal.deleteSegmentsBefore(Math.min(sequence[0], persister.getPersistedSequence()));
+    }
+
+    public Order placeBuyOrder(int userId, String stockName, int quantity, long price) throws SQLException {
+        return await(placeBuyOrderAsync(userId, stockName, quantity, price));
     }
 
-    public Order placeSellOrder(int userId, String stockName, int quantity, double price) throws SQLException {
-        Stock stock = stockDAO.findByName(stockName);
+    public CompletableFuture<Order> placeBuyOrderAsync(int userId, String stockName,
+                                                       int quantity, long price) throws SQLException {
+        Stock stock = findStock(stockName);
         if (stock == null) {
             System.out.println("Stock not found: " + stockName);
+            return CompletableFuture.completedFuture(null);
+        }
+        return scheduler.submit(stock.getStockId(), () -> buy(userId, stock, quantity, price));
+    }
+
+    private Order buy(int userId, Stock stock, int quantity, long price) throws SQLException, IOException {
+        long total = quantity * price;
+
+        if (!cashLedger.tryReserve(userId, total)) {
+            System.out.println("Insufficient balance!");
             return null;
         }
 
-        User user = userDAO.findById(userId);
-        if (user == null) {
+        Order order = newOrder(userId, stock, quantity, price, true);
+        List<JournalEvent> events = new ArrayList<>();
+        try {
+            events.add(append(JournalEvent.accepted(order.getOrderId(), userId, stock.getStockId(),
+                    true, quantity, price)));
+            System.out.println("BUY order placed: #" + order.getOrderId());
+
+            autoMatchBuy(order, events);
+        } finally {
+            // whatever reached the journal is submitted even if the command failed,
+            // or the persister's watermark could never pass it
+            persister.submit(events);
+        }
+
+        return order.getQuantity() > 0 ? order : null;
+    }
+
+    public Order placeSellOrder(int userId, String stockName, int quantity, long price) throws SQLException {
+        return await(placeSellOrderAsync(userId, stockName, quantity, price));
+    }
+
+    public CompletableFuture<Order> placeSellOrderAsync(int userId, String stockName,
+                                                        int quantity, long price) throws SQLException {
+        Stock stock = findStock(stockName);
+        if (stock == null) {
+            System.out.println("Stock not found: " + stockName);
+            return CompletableFuture.completedFuture(null);
+        }
+        return scheduler.submit(stock.getStockId(), () -> sell(userId, stock, quantity, price));
+    }
+
+    private Order sell(int userId, Stock stock, int quantity, long price) throws SQLException, IOException {
+        Integer dematId = dematOf(userId);
+        if (dematId == null) {
             System.out.println("User not found!");
             return null;
         }
+        if (!holdingLedger.tryReserve(dematId, stock.getStockId(), quantity)) {
+            System.out.println("Insufficient stocks! Available: "
+                    + holdingLedger.getAvailable(dematId, stock.getStockId()));
+            return null;
+        }
 
-        StockHolding holding = stockHoldingDAO.findByDematAndStock(user.getDematId(), stock.getStockId());
-        int available = holding != null ? holding.getAvailableQuantity() : 0;
-
+        Order order = newOrder(userId, stock, quantity, price, false);
+        List<JournalEvent> events = new ArrayList<>();
         try {
-            DatabaseConfig.beginTransaction();
+            events.add(append(JournalEvent.accepted(order.getOrderId(), userId, stock.getStockId(),
+                    false, quantity, price)));
+            System.out.println("SELL order placed: #" + order.getOrderId());
 
-            if (!stockHoldingDAO.reserveStocks(user.getDematId(), stock.getStockId(), quantity)) {
-                DatabaseConfig.rollback();
-                System.out.println("Insufficient stocks! Available: " + available);
+            autoMatchSell(order, events);
+        } finally {
+            persister.submit(events);
+        }
+
+        return order.getQuantity() > 0 ? order : null;
+    }
+
+    // stop-limit when limitPrice > 0; a limit of 0 is a stop-loss, sells only, since a
+    // buy at any price has no amount to hold
+    public StopOrder placeStopOrder(int userId, String stockName, boolean isBuy, int quantity,
+                                    long triggerPrice, long limitPrice) throws SQLException {
+        return await(placeStopOrderAsync(userId, stockName, isBuy, quantity, triggerPrice, limitPrice));
+    }
+
+    public CompletableFuture<StopOrder> placeStopOrderAsync(int userId, String stockName, boolean isBuy,
+                                                            int quantity, long triggerPrice,
+                                                            long limitPrice) throws SQLException {
+        if (isBuy && limitPrice == 0) {
+            System.out.println("A stop-loss buy needs a limit price!");
+            return CompletableFuture.completedFuture(null);
+        }
+        Stock stock = findStock(stockName);
+        if (stock == null) {
+            System.out.println("Stock not found: " + stockName);
+            return CompletableFuture.completedFuture(null);
+        }
+        return scheduler.submit(stock.getStockId(),
+                () -> stop(userId, stock, isBuy, quantity, triggerPrice, limitPrice));
+    }
+
+    // holds cash or shares up front the way buy/sell do, so a fired stop can't bounce
+    private StopOrder stop(int userId, Stock stock, boolean isBuy, int quantity, long triggerPrice,
+                           long limitPrice) throws SQLException, IOException {
+        if (isBuy) {
+            if (!cashLedger.tryReserve(userId, quantity * limitPrice)) {
+                System.out.println("Insufficient balance!");
+                return null;
+            }
+        } else {
+            Integer dematId = dematOf(userId);
+            if (dematId == null) {
+                System.out.println("User not found!");
+                return null;
+            }
+            if (!holdingLedger.tryReserve(dematId, stock.getStockId(), quantity)) {
+                System.out.println("Insufficient stocks!");
                 return null;
             }
+        }
+
+        StopOrder stop = new StopOrder(lastOrderId.incrementAndGet(), userId, stock.getStockId(), isBuy,
+                quantity, triggerPrice, limitPrice);
+        List<JournalEvent> events = new ArrayList<>();
+        try {
+            events.add(append(JournalEvent.stopAccepted(stop.getOrderId(), userId, stock.getStockId(), isBuy,
+                    quantity, triggerPrice, limitPrice)));
+            getStopBook(stock.getStockId()).add(stop);
+            stopOrders.put(stop.getOrderId(), stop);
+            System.out.println((isBuy ? "BUY" : "SELL") + " stop order placed: #" + stop.getOrderId());
+
+            // already through the trigger: fires right away. The book's own last price is
+            // current on this lane; the ticker trails behind on the event bus.
+            long last = getBook(stock.getStockId()).getLastTradePrice();
+            if (last > 0) {
+                fireStops(stock.getStockId(), new long[]{last, last}, events);
+            }
+        } finally {
+            persister.submit(events);
+        }
+        return stop;
+    }
+
+    // basket entry: validates every request, takes all reservations in one transaction
+    // with one batch per table, then matches each stock's orders in one lane task whose
+    // events are persisted as a single batch. Results line up with the requests.
+    public BatchResult placeOrders(List<OrderRequest> requests) throws SQLException {
+        long started = System.nanoTime();
+        OrderResult[] results = new OrderResult[requests.size()];
+        Stock[] stocks = new Stock[requests.size()];
+
+        Map<String, Stock> byName = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            OrderRequest r = requests.get(i);
+            if (r.getQuantity() <= 0 || r.getPrice() <= 0) {
+                results[i] = OrderResult.rejected(r, "Quantity and price must be positive");
+                continue;
+            }
+            if (!byName.containsKey(r.getStockName())) {
+                byName.put(r.getStockName(), findStock(r.getStockName()));
+            }
+            stocks[i] = byName.get(r.getStockName());
+            if (stocks[i] == null) {
+                results[i] = OrderResult.rejected(r, "Stock not found: " + r.getStockName());
+            }
+        }
+        long validated = System.nanoTime();
+
+        reserveAll(requests, stocks, results);
+        long reserved = System.nanoTime();
 
-            Order order = orderDAO.createOrder(userId, stockName, quantity, price, false);
-            if (order == null) {
-                DatabaseConfig.rollback();
-                System.out.println("Failed to create order!");
+        Map<Integer, List<Integer>> byStock = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] == null) {
+                byStock.computeIfAbsent(stocks[i].getStockId(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<CompletableFuture<Void>> lanes = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> e : byStock.entrySet()) {
+            lanes.add(scheduler.submit(e.getKey(), () -> {
+                List<JournalEvent> events = new ArrayList<>();
+                try {
+                    for (int i : e.getValue()) {
+                        OrderRequest r = requests.get(i);
+                        Order order = newOrder(r.getUserId(), stocks[i], r.getQuantity(), r.getPrice(), r.isBuy());
+                        events.add(append(JournalEvent.accepted(order.getOrderId(), r.getUserId(),
+                                order.getStockId(), r.isBuy(), r.getQuantity(), r.getPrice())));
+                        match(order, events);
+                        results[i] = OrderResult.placed(r, order);
+                    }
+                } finally {
+                    persister.submit(events);
+                }
                 return null;
+            }));
+        }
+        for (CompletableFuture<Void> lane : lanes) {
+            await(lane);
+        }
+        long matched = System.nanoTime();
+
+        return new BatchResult(Arrays.asList(results), validated - started,
+                reserved - validated, matched - reserved);
+    }
+
+    // reserves cash for the buys and shares for the sells of a basket, in request order
+    // per user, rejecting whatever the user can't cover. Both kinds of hold are taken in
+    // the ledgers; only users not seen before cost a query, all of them in one.
+    private void reserveAll(List<OrderRequest> requests, Stock[] stocks, OrderResult[] results)
+            throws SQLException {
+        Set<Integer> unknown = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] == null && !dematIds.containsKey(requests.get(i).getUserId())) {
+                unknown.add(requests.get(i).getUserId());
+            }
+        }
+        if (!unknown.isEmpty()) {
+            for (User user : userDAO.findByIds(unknown).values()) {
+                dematIds.put(user.getUserId(), user.getDematId());
             }
+        }
 
-            DatabaseConfig.commit();
-            System.out.println("SELL order placed: #" + order.getOrderId());
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] != null) continue;
+            OrderRequest r = requests.get(i);
+            Integer dematId = dematIds.get(r.getUserId());
+            if (dematId == null) {
+                results[i] = OrderResult.rejected(r, "User not found!");
+                continue;
+            }
+            if (r.isBuy()) {
+                if (!cashLedger.tryReserve(r.getUserId(), r.getQuantity() * r.getPrice())) {
+                    results[i] = OrderResult.rejected(r, "Insufficient balance!");
+                }
+            } else if (!holdingLedger.tryReserve(dematId, stocks[i].getStockId(), r.getQuantity())) {
+                results[i] = OrderResult.rejected(r, "Insufficient stocks! Available: "
+                        + holdingLedger.getAvailable(dematId, stocks[i].getStockId()));
+            }
+        }
+    }
 
-            autoMatchSell(order);
+    private Order newOrder(int userId, Stock stock, int quantity, long price, boolean isBuy)
+            throws SQLException {
+        Order order = new Order(userId, stock.getStockId(), quantity, price, isBuy);
+        order.setOrderId(lastOrderId.incrementAndGet());
+        order.setStockName(stock.getStockName());
+        return order;
+    }
 
-            return orderDAO.findById(order.getOrderId());
+    void autoMatchBuy(Order buyOrder, List<JournalEvent> events) throws SQLException, IOException {
+        match(buyOrder, events);
+    }
+
+    void autoMatchSell(Order sellOrder, List<JournalEvent> events) throws SQLException, IOException {
+        match(sellOrder, events);
+    }
 
-        } catch (SQLException e) {
-            DatabaseConfig.rollback();
-            throw e;
+    // matches in memory and journals every fill, rests whatever is left.
+    // The fills reach MySQL later through the persister.
+    private void match(Order order, List<JournalEvent> events) throws SQLException, IOException {
+        long[] traded = cross(order, events);
+        if (order.getQuantity() > 0) {
+            getBook(order.getStockId()).add(order);
+            openOrders.add(order);
         }
+        fireStops(order.getStockId(), traded, events);
     }
 
-    void autoMatchBuy(Order buyOrder) throws SQLException {
+    // takes what the book offers and journals the fills; returns the lowest and highest
+    // trade price, or null when nothing traded
+    private long[] cross(Order order, List<JournalEvent> events) throws SQLException, IOException {
+        long[] traded = null;
+        for (Fill fill : getBook(order.getStockId()).match(order)) {
+            events.add(append(JournalEvent.fill(fill.getStockId(), fill.getBuyOrderId(), fill.getSellOrderId(),
+                    fill.getBuyerId(), fill.getSellerId(), fill.getQuantity(), fill.getPrice(),
+                    fill.getBuyPrice(), fill.getBuyRemaining(), fill.getSellRemaining())));
+            if (fill.getBuyRemaining() == 0) openOrders.remove(fill.getBuyOrderId());
+            if (fill.getSellRemaining() == 0) openOrders.remove(fill.getSellOrderId());
+            cashLedger.settle(fill);
+            holdingLedger.settle(dematOf(fill.getSellerId()), dematOf(fill.getBuyerId()),
+                    fill.getStockId(), fill.getQuantity());
+            traded = widen(traded, fill.getPrice(), fill.getPrice());
+        }
+        return traded;
+    }
 
-        int stockId = buyOrder.getStockId();
-        double buyPrice = buyOrder.getPrice();
+    private static long[] widen(long[] range, long low, long high) {
+        if (range == null) {
+            return new long[]{low, high};
+        }
+        range[0] = Math.min(range[0], low);
+        range[1] = Math.max(range[1], high);
+        return range;
+    }
 
-        double lastPrice = Double.MAX_VALUE;
-        int lastOrderId = 0;
+    // releases every stop the trades fired into matching, round after round while the
+    // triggered orders' own trades fire more
+    private void fireStops(int stockId, long[] traded, List<JournalEvent> events) throws SQLException, IOException {
+        StopBook stops = stopBooks.get(stockId);
+        while (traded != null && stops != null && stops.size() > 0) {
+            List<StopOrder> fired = stops.trigger(traded[0], traded[1]);
+            traded = null;
+            for (StopOrder stop : fired) {
+                stopOrders.remove(stop.getOrderId());
+                long[] more = release(stop, events);
+                if (more != null) {
+                    traded = widen(traded, more[0], more[1]);
+                }
+            }
+        }
+    }
 
-        while (true) {
-            List<Order> sells = (lastOrderId == 0)
-                    ? orderDAO.getSellOrders(stockId)
-                    : orderDAO.getNextSellOrders(stockId, lastPrice, lastOrderId);
+    // a fired stop becomes a plain order under its own id, its hold already taken. A
+    // stop-loss keeps nothing on the book, the unfilled part is cancelled and released.
+    private long[] release(StopOrder stop, List<JournalEvent> events) throws SQLException, IOException {
+        Order order = new Order(stop.getUserId(), stop.getStockId(), stop.getQuantity(),
+                stop.getLimitPrice(), stop.isBuy());
+        order.setOrderId(stop.getOrderId());
+        order.setStockName(stockName(stop.getStockId()));
+        events.add(append(JournalEvent.accepted(order.getOrderId(), order.getUserId(), order.getStockId(),
+                order.isBuy(), order.getQuantity(), order.getPrice())));
+        System.out.println("Stop order #" + stop.getOrderId() + " triggered at Rs." + Money.format(stop.getTriggerPrice()));
+
+        long[] traded = cross(order, events);
+        if (order.getQuantity() == 0) {
+            return traded;
+        }
+        if (!stop.isMarket()) {
+            getBook(order.getStockId()).add(order);
+            openOrders.add(order);
+            return traded;
+        }
+        // never rests; the persister's residual row and this cancel land in the same batch
+        events.add(append(JournalEvent.cancelled(order.getOrderId(), order.getUserId(), order.getStockId(),
+                false)));
+        holdingLedger.tryReserve(dematOf(order.getUserId()), order.getStockId(), -order.getQuantity());
+        return traded;
+    }
 
-            if (sells.isEmpty()) break;
+    // journals an event and publishes it to the bus; only called on the event's lane
+    private JournalEvent append(JournalEvent event) throws IOException {
+        journal.append(event);
+        publish(event);
+        return event;
+    }
 
-            for (Order sell : sells) {
-                if (sell.getPrice() > buyPrice) { // price can never match
-                    return;
+    private void publish(JournalEvent e) {
+        int lane = scheduler.shardOf(e.getStockId());
+        switch (e.getType()) {
+            case ORDER_ACCEPTED, ORDER_MODIFIED, ORDER_CANCELLED -> bus.publish(lane,
+                    MarketEvent.Type.valueOf(e.getType().name()), e.getSequence(), e.getTimestamp(),
+                    e.getStockId(), e.getOrderId(), e.getUserId(), e.isBuy(), e.getQuantity(), e.getPrice(),
+                    0, 0, e.getRemaining(), 0);
+            case FILL -> {
+                bus.publish(lane, MarketEvent.Type.TRADE, e.getSequence(), e.getTimestamp(), e.getStockId(),
+                        e.getOrderId(), e.getUserId(), true, e.getQuantity(), e.getPrice(),
+                        e.getCounterOrderId(), e.getCounterUserId(), e.getRemaining(), e.getCounterRemaining());
+                if (e.getRemaining() == 0) {
+                    bus.publish(lane, MarketEvent.Type.ORDER_FILLED, e.getSequence(), e.getTimestamp(),
+                            e.getStockId(), e.getOrderId(), e.getUserId(), true, e.getQuantity(), e.getPrice(),
+                            0, 0, 0, 0);
                 }
-                if (sell.getUserId() == buyOrder.getUserId()) continue;
-                if (sell.getQuantity() <= 0) continue;
-
-                // execute trade
-                boolean done = executeTrade(buyOrder, sell);
-                if (!done) return;
-                buyOrder = orderDAO.findById(buyOrder.getOrderId());
-                if (buyOrder == null || buyOrder.getQuantity() <= 0) return;
-            }
-            // 5Move cursor
-            Order last = sells.get(sells.size() - 1);
-            lastPrice = last.getPrice();
-            lastOrderId = last.getOrderId();
-        }
-    }
-
-    void autoMatchSell(Order sellOrder) throws SQLException {
-        int stockId = sellOrder.getStockId();
-        double sellPrice = sellOrder.getPrice();
-        double lastPrice = 0;
-        int lastOrderId = 0;
-        while (true) {
-            List<Order> buys = (lastOrderId == 0)
-                    ? orderDAO.getBuyOrders(stockId)
-                    : orderDAO.getNextBuyOrders(stockId, lastPrice, lastOrderId);
-
-            if (buys.isEmpty()) break;
-            for (Order buy : buys) {
-                if (buy.getPrice() < sellPrice) {
-                    return;
+                if (e.getCounterRemaining() == 0) {
+                    bus.publish(lane, MarketEvent.Type.ORDER_FILLED, e.getSequence(), e.getTimestamp(),
+                            e.getStockId(), e.getCounterOrderId(), e.getCounterUserId(), false, e.getQuantity(),
+                            e.getPrice(), 0, 0, 0, 0);
                 }
-                if (buy.getUserId() == sellOrder.getUserId()) continue;
-                if (buy.getQuantity() <= 0) continue;
-                boolean done = executeTrade(buy, sellOrder);
-                if (!done) return;
-
-                sellOrder = orderDAO.findById(sellOrder.getOrderId());
-                if (sellOrder == null || sellOrder.getQuantity() <= 0) return;
-            }
-            Order last = buys.get(buys.size() - 1);
-            lastPrice = last.getPrice();
-            lastOrderId = last.getOrderId();
-        }
-    }
-
-//    private void autoMatch(int stockId) throws SQLException {
-//        while (true) {
-//
-//            List<Order> buyOrders = orderDAO.getBuyOrders(stockId);
-//            List<Order> sellOrders = orderDAO.getSellOrders(stockId);
-//
-//            // 🚫 No possible match
-//            if (buyOrders.isEmpty() || sellOrders.isEmpty()) {
-//                break;
-//            }
-//
-//            Order bestBuy = buyOrders.get(0);   // highest price
-//            Order bestSell = sellOrders.get(0); // lowest price
-//
-//            // 🚫 Price mismatch
-//            if (bestBuy.getPrice() < bestSell.getPrice()) {
-//                break;
-//            }
-//
-//            Order buy = null;
-//            Order sell = null;
-//
-//            if (bestBuy.getUserId() != bestSell.getUserId()) {
-//                buy = bestBuy;
-//                sell = bestSell;
-//            } else { // alternate sell
-//                for (Order s : sellOrders) {
-//                    if (s.getPrice() > bestBuy.getPrice()) break;
-//                    if (s.getUserId() != bestBuy.getUserId() && s.getQuantity() > 0) {
-//                        sell = s;
-//                        buy = bestBuy;
-//                        break;
-//                    }
-//                }
-//
-//                if (sell == null && !sellOrders.isEmpty()) {
-//                    Order lastSell = sellOrders.get(sellOrders.size() - 1);
-//                    if (lastSell.getPrice() <= bestBuy.getPrice()) {
-//                        List<Order> nextSellBatch = orderDAO.getNextSellOrders(stockId, lastSell.getPrice(), lastSell.getOrderId());
-//                        for (Order s : nextSellBatch) {
-//                            if (s.getPrice() > bestBuy.getPrice()) break;
-//                            if (s.getUserId() != bestBuy.getUserId() && s.getQuantity() > 0) {
-//                                sell = s;
-//                                buy = bestBuy;
-//                                break;
-//                            }
-//                        }
-//                    }
-//                }
-//
-//                if (sell == null) {
-//                    sell = orderDAO.findMatchingOrder(stockId, false, bestBuy.getUserId(), bestBuy.getPrice());
-//                    if (sell != null) {
-//                        buy = bestBuy;
-//                    }
-//                }
-//
-//                // no match -> Try alternate buy
-//                if (sell == null) {
-//                    for (Order b : buyOrders) {
-//                        if (b.getPrice() < bestSell.getPrice()) break;
-//                        if (b.getUserId() != bestSell.getUserId() && b.getQuantity() > 0) {
-//                            buy = b;
-//                            sell = bestSell;
-//                            break;
-//                        }
-//                    }
-//
-//                    // searching in next batches
-//                    if (buy == null && !buyOrders.isEmpty()) {
-//                        Order lastBuy = buyOrders.get(buyOrders.size() - 1);
-//                        if (lastBuy.getPrice() >= bestSell.getPrice()) {
-//                            List<Order> nextBuyBatch = orderDAO.getNextBuyOrders(stockId, lastBuy.getPrice(), lastBuy.getOrderId());
-//                            for (Order b : nextBuyBatch) {
-//                                if (b.getPrice() < bestSell.getPrice()) break;
-//                                if (b.getUserId() != bestSell.getUserId() && b.getQuantity() > 0) {
-//                                    buy = b;
-//                                    sell = bestSell;
-//                                    break;
-//                                }
-//                            }
-//                        }
-//                    }
-//
-//                    if (buy == null) {
-//                        buy = orderDAO.findMatchingOrder(stockId, true, bestSell.getUserId(), bestSell.getPrice());
-//                        if (buy != null) {
-//                            sell = bestSell;
-//                        }
-//                    }
-//                }
-//            }
-//
-//            // 🚫 No match
-//            if (buy == null || sell == null) {
-//                break;
-//            }
-//
-//            if (buy.getQuantity() <= 0 || sell.getQuantity() <= 0) {
-//                if (buy.getQuantity() <= 0) {
-//                    orderDAO.cancelOrder(buy.getOrderId());
-//                }
-//                if (sell.getQuantity() <= 0) {
-//                    orderDAO.cancelOrder(sell.getOrderId());
-//                }
-//                continue;
-//            }
-//
-//            boolean tradeDone = executeTrade(buy, sell);
-//
-//            // 🚫 Trade failed, this will stop the infinite loop
-//            if (!tradeDone) {
-//                break;
-//            }
-//        }
-//    }
-
-    private boolean executeTrade(Order buy, Order sell) throws SQLException {
-        try {
-            DatabaseConfig.beginTransaction();
+            }
+        }
+    }
 
-            int quantity = Math.min(buy.getQuantity(), sell.getQuantity());
-            double tradePrice = sell.getPrice();
-            double total = Math.round(quantity * tradePrice * 100.0) / 100.0;
+    // cash each user's open buy orders and buy stops hold; run while the lanes are idle
+    private Map<Integer, Long> cashHolds() {
+        Map<Integer, Long> holds = new HashMap<>();
+        for (OrderBook book : books.values()) {
+            book.forEachOrder(o -> {
+                if (o.isBuy()) holds.merge(o.getUserId(), o.getQuantity() * o.getPrice(), Long::sum);
+            });
+        }
+        for (StopOrder stop : stopOrders.values()) {
+            if (stop.isBuy()) holds.merge(stop.getUserId(), stop.getHold(), Long::sum);
+        }
+        return holds;
+    }
 
-            User buyer = userDAO.findById(buy.getUserId());
-            User seller = userDAO.findById(sell.getUserId());
+    // shares each demat account's open sell orders and sell stops hold, keyed like the
+    // holding ledger; run while the lanes are idle
+    private Map<Long, Integer> shareHolds() throws SQLException {
+        List<long[]> sells = new ArrayList<>();   // {user, stock, qty}
+        for (OrderBook book : books.values()) {
+            book.forEachOrder(o -> {
+                if (!o.isBuy()) sells.add(new long[]{o.getUserId(), o.getStockId(), o.getQuantity()});
+            });
+        }
+        for (StopOrder stop : stopOrders.values()) {
+            if (!stop.isBuy()) sells.add(new long[]{stop.getUserId(), stop.getStockId(), stop.getQuantity()});
+        }
+        Set<Integer> unknown = new HashSet<>();
+        for (long[] s : sells) {
+            if (!dematIds.containsKey((int) s[0])) unknown.add((int) s[0]);
+        }
+        if (!unknown.isEmpty()) {
+            for (User user : userDAO.findByIds(unknown).values()) {
+                dematIds.put(user.getUserId(), user.getDematId());
+            }
+        }
+        Map<Long, Integer> holds = new HashMap<>();
+        for (long[] s : sells) {
+            Integer dematId = dematIds.get((int) s[0]);
+            if (dematId != null) {
+                holds.merge(HoldingLedger.key(dematId, (int) s[1]), (int) s[2], Integer::sum);
+            }
+        }
+        return holds;
+    }
 
-            double buyerReserved = Math.round(quantity * buy.getPrice() * 100.0) / 100.0;
-            double refund = Math.round((buyerReserved - total) * 100.0) / 100.0;
+    private OrderBook getBook(int stockId) {
+        return books.computeIfAbsent(stockId, OrderBook::new);
+    }
 
-            // buyer
-            tradingAccountDAO.debit(buy.getUserId(), total);
-            if (refund > 0) {
-                tradingAccountDAO.releaseReservedBalance(buy.getUserId(), refund);
-            }
+    private StopBook getStopBook(int stockId) {
+        return stopBooks.computeIfAbsent(stockId, StopBook::new);
+    }
+
+    private void loadBooks() throws SQLException {
+        books.clear();
+        openOrders.clear();
+        for (Order order : orderDAO.findAllOpen()) {
+            getBook(order.getStockId()).add(order);
+            openOrders.add(order);
+        }
+    }
+
+    private Stock findStock(String stockName) throws SQLException {
+        Stock stock = stocks.get(stockName);
+        if (stock != null) {
+            return stock;
+        }
+        stock = stockDAO.findByName(stockName);
+        if (stock != null) {
+            stocks.put(stockName, stock);
+        }
+        return stock;
+    }
 
-            // seller
-            tradingAccountDAO.credit(sell.getUserId(), total);
+    // null for an unknown user; only the first lookup of a user touches the database
+    private Integer dematOf(int userId) throws SQLException {
+        Integer dematId = dematIds.get(userId);
+        if (dematId == null) {
+            User user = userDAO.findById(userId);
+            if (user == null) {
+                return null;
+            }
+            dematId = user.getDematId();
+            dematIds.put(userId, dematId);
+        }
+        return dematId;
+    }
 
-            stockHoldingDAO.sellShares(seller.getDematId(), sell.getStockId(), quantity);
-            stockHoldingDAO.addShares(buyer.getDematId(), buy.getStockId(), quantity);
+    private String stockName(int stockId) {
+        for (Stock stock : stocks.values()) {
+            if (stock.getStockId() == stockId) return stock.getStockName();
+        }
+        return String.valueOf(stockId);
+    }
 
-            // Updating orders
-            int newBuyQty = buy.getQuantity() - quantity;
-            int newSellQty = sell.getQuantity() - quantity;
-            orderDAO.updateQuantity(buy.getOrderId(), newBuyQty);
-            orderDAO.updateQuantity(sell.getOrderId(), newSellQty);
+    public List<Stock> listStocks() {
+        List<Stock> list = new ArrayList<>(stocks.values());
+        list.sort(Comparator.comparing(Stock::getStockName));
+        return list;
+    }
 
-            transactionDAO.createTransaction(buy.getUserId(), sell.getUserId(),
-                    buy.getStockId(), quantity, tradePrice);
+    // null until the stock has traded
+    public Ticker getTicker(int stockId) {
+        return tickers.get(stockId);
+    }
 
-            DatabaseConfig.commit();
+    // recent bars from memory, newest first and starting with the open one;
+    // older history is in the candles table
+    public List<Candle> getCandles(int stockId, Candle.Interval interval, int n) {
+        return candles.latest(stockId, interval, n);
+    }
 
-            printTradeDetails(buy.getOrderId(), quantity, tradePrice, total, buyer, seller);
-            return true;
+    // unwraps lane failures back into the checked exception callers expect
+    private static <T> T await(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the matching lane", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new SQLException(cause);
+        }
+    }
 
-        } catch (SQLException e) {
-            DatabaseConfig.rollback();
-            throw e;
+    // wipes the tables and the journal, then starts over from the seed data
+    public void resetDatabase() throws SQLException, IOException {
+        persister.drain();
+        DatabaseConfig.resetDatabase();
+        journal.reset(0);
+        persister.reset(0);
+        snapshotStore.clear();
+        tickers.clear();
+        candles.clear();
+        dematIds.clear();
+        stopBooks.clear();
+        stopOrders.clear();
+        // the reset re-seeds the stocks table
+        stocks.clear();
+        for (Stock stock : stockDAO.listAllStocks()) {
+            stocks.put(stock.getStockName(), stock);
         }
+        lastOrderId.set(orderDAO.findMaxOrderId());
+        loadBooks();
+        cashLedger.load(cashHolds());
+        holdingLedger.load(shareHolds());
     }
 
-    private void printTradeDetails(int stockId, int qty, double price, double total, User buyer, User seller) {
-        System.out.println("\n+---------------------------------------+");
-        System.out.println("+           ORDER MATCHED               +");
-        System.out.println("+---------------------------------------+");
-        System.out.printf("+ Stock      : %-24d +%n", stockId);
-        System.out.printf("+ Quantity   : %-24d +%n", qty);
-        System.out.printf("+ Price      : Rs.%-22.2f+%n", price);
-        System.out.printf("+ Total      : Rs.%-22.2f+%n", total);
-        System.out.printf("+ Buyer      : %d (%s)%-10d+%n", buyer.getUserId(), buyer.getUserName());
-        System.out.printf("+ Seller     : %d (%s)%-10d+%n", seller.getUserId(), seller.getUserName());
-        System.out.println("+---------------------------------------+\n");
+    public void shutdown() {
+        snapshotter.shutdown();
+        try {
+            // a fresh snapshot makes the next start skip the replay
+            persister.drain();
+            takeSnapshot();
+            scheduler.shutdown();
+            bus.shutdown();
+            candles.close();
+            persister.shutdown();
+            cashLedger.close();
+            holdingLedger.close();
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    public boolean modifyOrder(int userId, int orderId, int newQuantity, double newPrice)
+    public boolean modifyOrder(int userId, int orderId, int newQuantity, long newPrice)
             throws SQLException {
+        return await(modifyOrderAsync(userId, orderId, newQuantity, newPrice));
+    }
 
-        try {
-            DatabaseConfig.beginTransaction();
+    public CompletableFuture<Boolean> modifyOrderAsync(int userId, int orderId, int newQuantity,
+                                                       long newPrice) {
+        Order routed = openOrders.get(orderId);
+        if (routed == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return scheduler.submit(routed.getStockId(),
+                () -> modify(userId, orderId, newQuantity, newPrice));
+    }
 
-            Order order = orderDAO.findById(orderId);
-            if (order == null || order.getUserId() != userId) {
-                DatabaseConfig.rollback();
-                return false;
-            }
+    private boolean modify(int userId, int orderId, int newQuantity, long newPrice)
+            throws SQLException, IOException {
 
-            User user = userDAO.findById(userId);
+        Order order = openOrders.get(orderId);
+        if (order == null || order.getUserId() != userId) {
+            return false;
+        }
 
+        // the hold moves by the difference
+        boolean reserved;
+        if (order.isBuy()) {
+            long delta = newQuantity * newPrice - order.getQuantity() * order.getPrice();
+            reserved = cashLedger.tryReserve(userId, delta);
+        } else {
+            reserved = holdingLedger.tryReserve(dematOf(userId), order.getStockId(),
+                    newQuantity - order.getQuantity());
+        }
+        if (!reserved) {
+            System.out.println(order.isBuy() ? "Insufficient balance!" : "Insufficient stocks!");
+            return false;
+        }
+
+        // re-price in memory, a modified order loses its time priority
+        OrderBook book = getBook(order.getStockId());
+        book.remove(orderId);
+        openOrders.remove(orderId);
+        order.setQuantity(newQuantity);
+        order.setPrice(newPrice);
+
+        List<JournalEvent> events = new ArrayList<>();
+        try {
+            events.add(append(JournalEvent.modified(orderId, userId, order.getStockId(), order.isBuy(),
+                    newQuantity, newPrice)));
+
+            // side-specific matching
             if (order.isBuy()) {
-                double oldReserved = order.getQuantity() * order.getPrice();
-                tradingAccountDAO.releaseReservedBalance(userId, oldReserved);
-
-                double newReserved = newQuantity * newPrice;
-                if (!tradingAccountDAO.reserveBalance(userId, newReserved)) {
-                    tradingAccountDAO.reserveBalance(userId, oldReserved);
-                    DatabaseConfig.rollback();
-                    return false;
-                }
+                autoMatchBuy(order, events);
             } else {
-                stockHoldingDAO.releaseReservedStocks(
-                        user.getDematId(), order.getStockId(), order.getQuantity()
-                );
-
-                if (!stockHoldingDAO.reserveStocks(
-                        user.getDematId(), order.getStockId(), newQuantity
-                )) {
-                    stockHoldingDAO.reserveStocks(
-                            user.getDematId(), order.getStockId(), order.getQuantity()
-                    );
-                    DatabaseConfig.rollback();
-                    return false;
-                }
+                autoMatchSell(order, events);
             }
+        } finally {
+            persister.submit(events);
+        }
 
-            orderDAO.modifyOrder(orderId, newQuantity, newPrice);
+        return true;
+    }
 
-            DatabaseConfig.commit();
 
-        } catch (SQLException e) {
-            DatabaseConfig.rollback();
-            throw e;
+
+    public boolean cancelOrder(int userId, int orderId) throws SQLException {
+        return await(cancelOrderAsync(userId, orderId));
+    }
+
+    public CompletableFuture<Boolean> cancelOrderAsync(int userId, int orderId) {
+        Order routed = openOrders.get(orderId);
+        if (routed == null) {
+            StopOrder stop = stopOrders.get(orderId);
+            if (stop != null) {
+                return scheduler.submit(stop.getStockId(), () -> cancelStop(userId, orderId));
+            }
+            System.out.println("Order not found!");
+            return CompletableFuture.completedFuture(false);
         }
+        return scheduler.submit(routed.getStockId(), () -> cancel(userId, orderId));
+    }
 
-        // 🔥 CRITICAL FIX: re-fetch updated order
-        Order updatedOrder = orderDAO.findById(orderId);
-        if (updatedOrder == null || updatedOrder.getQuantity() <= 0) {
-            return true;
+    private boolean cancel(int userId, int orderId) throws SQLException, IOException {
+        Order order = openOrders.get(orderId);
+        if (order == null) {
+            System.out.println("Order not found!");
+            return false;
         }
 
-        // 🔥 side-specific matching
-        if (updatedOrder.isBuy()) {
-            autoMatchBuy(updatedOrder);
+        if (order.getUserId() != userId) {
+            System.out.println("This is not your order!");
+            return false;
+        }
+
+        if (order.isBuy()) {
+            cashLedger.tryReserve(userId, -(order.getQuantity() * order.getPrice()));
         } else {
-            autoMatchSell(updatedOrder);
+            holdingLedger.tryReserve(dematOf(userId), order.getStockId(), -order.getQuantity());
         }
 
+        getBook(order.getStockId()).remove(orderId);
+        openOrders.remove(orderId);
+        persister.submit(List.of(append(JournalEvent.cancelled(orderId, userId, order.getStockId(),
+                order.isBuy()))));
+
+        System.out.println("Order #" + orderId + " cancelled successfully!");
         return true;
     }
 
+    private boolean cancelStop(int userId, int orderId) throws SQLException, IOException {
+        StopOrder stop = stopOrders.get(orderId);
+        if (stop == null) {
+            // fired since it was routed; it is a plain order now
+            return cancel(userId, orderId);
+        }
+        if (stop.getUserId() != userId) {
+            System.out.println("This is not your order!");
+            return false;
+        }
 
+        if (stop.isBuy()) {
+            cashLedger.tryReserve(userId, -stop.getHold());
+        } else {
+            holdingLedger.tryReserve(dematOf(userId), stop.getStockId(), -stop.getQuantity());
+        }
 
-    public boolean cancelOrder(int userId, int orderId) throws SQLException {
-        try {
-            DatabaseConfig.beginTransaction();
-            Order order = orderDAO.findById(orderId);
-            if (order == null) {
-                System.out.println("Order not found!");
-                DatabaseConfig.rollback();
-                return false;
-            }
+        getStopBook(stop.getStockId()).remove(orderId);
+        stopOrders.remove(orderId);
+        persister.submit(List.of(append(JournalEvent.stopCancelled(orderId, userId, stop.getStockId(),
+                stop.isBuy()))));
 
-            if (order.getUserId() != userId) {
-                System.out.println("This is not your order!");
-                DatabaseConfig.rollback();
-                return false;
-            }
+        System.out.println("Stop order #" + orderId + " cancelled successfully!");
+        return true;
+    }
 
-//            if (!order.getStatus().equals("OPEN") && !order.getStatus().equals("PARTIAL")) {
-//                System.out.println("Cannot cancel " + order.getStatus() + " order!");
-//                DatabaseConfig.rollback();
-//                return false;
-//            }
+    public int cancelAll(int userId) throws SQLException {
+        return cancelAll(userId, null);
+    }
 
-            User user = userDAO.findById(userId);
+    public int cancelAll(int userId, int stockId) throws SQLException {
+        return cancelAll(userId, (Integer) stockId);
+    }
 
-            if (order.isBuy()) {
-                // Releasing reserved balance
-                double reserved = order.getQuantity() * order.getPrice();
-                tradingAccountDAO.releaseReservedBalance(userId, reserved);
-            } else {
-                // Releasing reserved stocks
-                stockHoldingDAO.releaseReservedStocks(user.getDematId(), order.getStockId(), order.getQuantity());
+    // pulls the orders and stops off their books lane by lane, then gives the holds back
+    // with one update for the cash and one per holding, whatever the number of orders
+    private int cancelAll(int userId, Integer stockId) throws SQLException {
+        Map<Integer, List<Integer>> byStock = new LinkedHashMap<>();
+        for (Order order : openOrders.forUser(userId)) {
+            if (stockId == null || order.getStockId() == stockId) {
+                byStock.computeIfAbsent(order.getStockId(), k -> new ArrayList<>()).add(order.getOrderId());
+            }
+        }
+        for (StopOrder stop : stopOrders.values()) {
+            if (stop.getUserId() == userId && (stockId == null || stop.getStockId() == stockId)) {
+                byStock.computeIfAbsent(stop.getStockId(), k -> new ArrayList<>()).add(stop.getOrderId());
             }
+        }
 
-            orderDAO.cancelOrder(orderId);
+        Map<Integer, CompletableFuture<long[]>> lanes = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Integer>> e : byStock.entrySet()) {
+            lanes.put(e.getKey(), scheduler.submit(e.getKey(), () -> {
+                long[] released = new long[3];   // cash, shares, orders
+                List<JournalEvent> events = new ArrayList<>();
+                try {
+                    OrderBook book = getBook(e.getKey());
+                    for (int orderId : e.getValue()) {
+                        // a stop may have fired and an order filled since they were listed
+                        StopOrder stop = stopOrders.remove(orderId);
+                        if (stop != null) {
+                            getStopBook(e.getKey()).remove(orderId);
+                            events.add(append(JournalEvent.stopCancelled(orderId, userId, e.getKey(),
+                                    stop.isBuy())));
+                            released[stop.isBuy() ? 0 : 1] += stop.getHold();
+                            released[2]++;
+                            continue;
+                        }
+                        Order order = openOrders.remove(orderId);
+                        if (order == null) continue;
+                        book.remove(orderId);
+                        events.add(append(JournalEvent.cancelled(orderId, userId, e.getKey(), order.isBuy())));
+                        if (order.isBuy()) {
+                            released[0] += order.getQuantity() * order.getPrice();
+                        } else {
+                            released[1] += order.getQuantity();
+                        }
+                        released[2]++;
+                    }
+                } finally {
+                    persister.submit(events);
+                }
+                return released;
+            }));
+        }
 
-            DatabaseConfig.commit();
-            System.out.println("Order #" + orderId + " cancelled successfully!");
-            return true;
+        long cash = 0;
+        int count = 0;
+        Map<Integer, Integer> shares = new HashMap<>();
+        for (Map.Entry<Integer, CompletableFuture<long[]>> e : lanes.entrySet()) {
+            long[] released = await(e.getValue());
+            cash += released[0];
+            if (released[1] > 0) {
+                shares.put(e.getKey(), (int) released[1]);
+            }
+            count += (int) released[2];
+        }
 
-        } catch (SQLException e) {
-            DatabaseConfig.rollback();
-            throw e;
+        if (cash > 0) {
+            cashLedger.tryReserve(userId, -cash);
         }
+        if (!shares.isEmpty()) {
+            int dematId = dematOf(userId);
+            for (Map.Entry<Integer, Integer> e : shares.entrySet()) {
+                holdingLedger.tryReserve(dematId, e.getKey(), -e.getValue());
+            }
+        }
+
+        System.out.println(count + " order(s) cancelled.");
+        return count;
+    }
+
+    // open orders go through cancelAll so their holds are released and the books stay in
+    // step; waits for the persister so the user's rows are gone before the account is
+    public boolean deleteUser(int userId) throws SQLException {
+        cancelAll(userId);
+        persister.drain();
+        dematIds.remove(userId);
+        cashLedger.remove(userId);
+        return userDAO.deleteUser(userId);
     }
 
     public void showOrderBook(String stockName) throws SQLException {
-        Stock stock = stockDAO.findByName(stockName);
+        Stock stock = findStock(stockName);
         if (stock == null) {
             System.out.println("Stock not found: " + stockName);
             return;
         }
 
-        int stockId = StockDAO.getStockIdByName(stockName);
-        List<Order> buyOrders = orderDAO.getBuyOrders(stockId);
-        List<Order> sellOrders = orderDAO.getSellOrders(stockId);
+        // the book keeps its depth view current, no lane hop and no queries needed
+        Depth depth = getBook(stock.getStockId()).getDepth();
 
         System.out.println("\n+---------------------------------------------------------------+");
         System.out.println("+                    ORDER BOOK: " + stockName + "        +");
-        System.out.println("+--------------------------------------------------------------  -+");
+        System.out.println("+---------------------------------------------------------------+");
 
         // Buy orders
         System.out.println("+ BUY ORDERS                                                    +");
         System.out.println("+---------------------------------------------------------------+");
-        if (buyOrders.isEmpty()) {
-            System.out.println("+   No active buy orders                                        +");
-        } else {
-            System.out.printf("+ %-8s %-10s %-10s %-12s +%n",
-                    "OrderID", "User", "Qty", "Price");
-            System.out.println("+---------------------------------------------------------------+");
-            for (Order o : buyOrders) {
-                System.out.printf("║ %-8d %-10s %-10d Rs.%-9.2f  ║%n",
-                        o.getOrderId(), UserDAO.findUsernameById(o.getUserId()), o.getQuantity(), o.getPrice());
-            }
-        }
+        printDepthSide(depth.getBids(), "+   No active buy orders                                        +");
 
         System.out.println("+---------------------------------------------------------------+");
 
         // Sell orders
         System.out.println("+                       SELL ORDERS                             +");
         System.out.println("+---------------------------------------------------------------+");
-        if (sellOrders.isEmpty()) {
-            System.out.println("+   No active sell orders                                       +");
-        } else {
-            System.out.printf("+ %-8s %-10s %-10s %-12s  +%n",
-                    "OrderID", "User", "Qty", "Price");
-            System.out.println("+---------------------------------------------------------------+");
+        printDepthSide(depth.getAsks(), "+   No active sell orders                                       +");
 
-            for (Order o : sellOrders) {
-                System.out.printf("+ %-8d %-10s %-10d Rs.%-9.2f +%n",
-                        o.getOrderId(), UserDAO.findUsernameById(o.getUserId()), o.getQuantity(), o.getPrice());
-            }
-        }
+        System.out.println("+---------------------------------------------------------------+");
+    }
 
+    private static void printDepthSide(List<Depth.Level> levels, String emptyLine) {
+        if (levels.isEmpty()) {
+            System.out.println(emptyLine);
+            return;
+        }
+        System.out.printf("+ %-14s %-12s %-10s %-21s +%n", "Price", "Qty", "Orders", "");
         System.out.println("+---------------------------------------------------------------+");
+        for (Depth.Level level : levels) {
+            System.out.printf("+ Rs.%-11s %-12d %-10d %-21s +%n",
+                    Money.format(level.getPrice()), level.getQuantity(), level.getOrders(), "");
+        }
     }
 
-    public void showUserOrders(int userId) throws SQLException {
-        List<Order> orders = orderDAO.findByUserId(userId);
+    // live prices straight from the tickers, no queries
+    public void showAvailableStocks() {
+        System.out.println("\n+-----------------------------------------------------------------------+");
+        System.out.println("+                          AVAILABLE STOCKS                             +");
+        System.out.println("+-----------------------------------------------------------------------+");
+        System.out.printf("+ %-10s %-12s %-12s %-12s %-10s %-8s +%n",
+                "Stock", "Last", "VWAP", "High/Low", "Volume", "Trades");
+        System.out.println("+-----------------------------------------------------------------------+");
+        for (Stock stock : listStocks()) {
+            Ticker ticker = tickers.get(stock.getStockId());
+            Ticker.Quote q = ticker != null ? ticker.read() : null;
+            String last = q != null && q.getLastPrice() > 0 ? Money.format(q.getLastPrice()) : "-";
+            if (q == null || !q.hasTraded()) {
+                System.out.printf("+ %-10s %-12s %-12s %-12s %-10d %-8d +%n", stock.getStockName(), last, "-", "-", 0, 0);
+                continue;
+            }
+            System.out.printf("+ %-10s %-12s %-12s %-12s %-10d %-8d +%n",
+                    stock.getStockName(), last, Money.format(q.getVwap()),
+                    Money.format(q.getHigh()) + "/" + Money.format(q.getLow()), q.getVolume(), q.getTrades());
+        }
+        System.out.println("+-----------------------------------------------------------------------+");
+    }
+
+    public void showUserOrders(int userId) {
+        List<Order> orders = openOrders.forUser(userId);
 
         System.out.println("\n+-----------------------------------------------------------------------+");
         System.out.println("+                           YOUR ORDERS                                 +");
@@ -527,52 +1128,109 @@ public class MarketPlace {
                     "ID", "Type", "Stock", "Qty","Price");
             System.out.println("+-----------------------------------------------------------------------+");
             for (Order o : orders) {
-                System.out.printf("+ %-6d %-6s %-8s %-6d Rs.%-9.2f+%n",
+                System.out.printf("+ %-6d %-6s %-8s %-6d Rs.%-9s+%n",
                         o.getOrderId(),
                         o.isBuy() ? "BUY" : "SELL",
-                        o.getStockName(),
+                        stockName(o.getStockId()),
                         o.getQuantity(),
-                        o.getPrice()
+                        Money.format(o.getPrice())
+                );
+            }
+        }
+
+        List<StopOrder> stops = new ArrayList<>();
+        for (StopOrder stop : stopOrders.values()) {
+            if (stop.getUserId() == userId) stops.add(stop);
+        }
+        if (!stops.isEmpty()) {
+            stops.sort(Comparator.comparingInt(StopOrder::getOrderId));
+            System.out.println("+-----------------------------------------------------------------------+");
+            System.out.printf("+ %-6s %-6s %-8s %-6s %-12s %-12s +%n",
+                    "ID", "Stop", "Stock", "Qty", "Trigger", "Limit");
+            System.out.println("+-----------------------------------------------------------------------+");
+            for (StopOrder s : stops) {
+                System.out.printf("+ %-6d %-6s %-8s %-6d Rs.%-9s %-12s +%n",
+                        s.getOrderId(),
+                        s.isBuy() ? "BUY" : "SELL",
+                        stockName(s.getStockId()),
+                        s.getQuantity(),
+                        Money.format(s.getTriggerPrice()),
+                        s.isMarket() ? "MARKET" : "Rs." + Money.format(s.getLimitPrice())
                 );
             }
         }
         System.out.println("+-----------------------------------------------------------------------+");
     }
 
-    public void showTransactions(int userId) throws SQLException {
-        List<Transaction> transactions = transactionDAO.findByUserId(userId);
-
+    // prints one page of the user's trades, newest first, and returns the token for the
+    // next page, null once there are no older ones
+    public String showTransactions(int userId, String token) throws SQLException {
         System.out.println("+-------------------------------------------------------------------------------+");
         System.out.println("+                            YOUR TRANSACTIONS                                  +");
         System.out.println("+-------------------------------------------------------------------------------+");
-
-        if (transactions.isEmpty()) {
-            System.out.println("+   No transactions found                                                    +");
-        } else {
-            System.out.printf("+ %-5s %-8s %-10s %-10s %-6s %-12s %-12s +%n",
-                    "ID", "Stock", "Buyer", "Seller", "Qty", "Price", "Total");
-            System.out.println("+-------------------------------------------------------------------------------+");
-            for (Transaction t : transactions) {
-                System.out.printf("+ %-5d %-8s %-10s %-10s %-6d Rs.%-9.2f Rs.%-9.2f +%n",
-                        t.getTransactionId(),
-                        t.getStockName(),
-                        t.getUserName(t.getBuyerId()),
-                        t.getUserName(t.getSellerId()),
-                        t.getQuantity(),
-                        t.getPrice(),
-                        t.getTotal());
-            }
+        Page<Transaction> page;
+        DatabaseConfig.beginOperation("reporting");
+        try {
+            page = transactionDAO.pageByUserId(userId, token, HISTORY_PAGE_SIZE);
+        } finally {
+            DatabaseConfig.endOperation();
         }
-        System.out.println("+-------------------------------------------------------------------------------+");
+        printTransactions(page.getItems());
+        return page.getNextToken();
     }
 
-    public void showAllTransactions() throws SQLException {
-        List<Transaction> transactions = transactionDAO.findAll();
-
+    public String showAllTransactions(String token) throws SQLException {
         System.out.println("\n+-------------------------------------------------------------------------------+");
         System.out.println("+                            ALL TRANSACTIONS                                   ║");
         System.out.println("+-------------------------------------------------------------------------------+");
+        Page<Transaction> page;
+        DatabaseConfig.beginOperation("reporting");
+        try {
+            page = transactionDAO.pageAll(token, HISTORY_PAGE_SIZE);
+        } finally {
+            DatabaseConfig.endOperation();
+        }
+        printTransactions(page.getItems());
+        return page.getNextToken();
+    }
+
+    // writes the user's whole trade history as CSV, streamed row by row from a cursor so
+    // memory stays flat however long the history is; returns the rows written
+    public int exportTransactions(int userId, Path file) throws SQLException, IOException {
+        int rows = 0;
+        DatabaseConfig.beginOperation("reporting");
+        try (Stream<Transaction> trades = transactionDAO.streamByUserId(userId);
+             BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("id,stock,buyer,seller,quantity,price,total");
+            out.newLine();
+            Iterator<Transaction> it = trades.iterator();
+            while (it.hasNext()) {
+                Transaction t = it.next();
+                out.write(t.getTransactionId() + "," + csv(t.getStockName()) + "," + csv(t.getBuyerName()) + ","
+                        + csv(t.getSellerName()) + "," + t.getQuantity() + "," + Money.format(t.getPrice()) + ","
+                        + Money.format(t.getTotal()));
+                out.newLine();
+                rows++;
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        } finally {
+            DatabaseConfig.endOperation();
+        }
+        return rows;
+    }
+
+    private static String csv(String field) {
+        if (field == null) {
+            return "";
+        }
+        if (field.contains(",") || field.contains("\"") || field.contains("\n")) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
 
+    private void printTransactions(List<Transaction> transactions) {
         if (transactions.isEmpty()) {
             System.out.println("+   No transactions found                                                       +");
         } else {
@@ -580,21 +1238,21 @@ public class MarketPlace {
                     "ID", "Stock", "Buyer", "Seller", "Qty", "Price", "Total");
             System.out.println("+-------------------------------------------------------------------------------+");
             for (Transaction t : transactions) {
-                System.out.printf("+ %-5d %-8s %-10s %-10s %-6d Rs.%-9.2f Rs.%-9.2f +%n",
+                System.out.printf("+ %-5d %-8s %-10s %-10s %-6d Rs.%-9s Rs.%-9s +%n",
                         t.getTransactionId(),
                         t.getStockName(),
-                        t.getUserName(t.getBuyerId()),
-                        t.getUserName(t.getSellerId()),
+                        t.getBuyerName(),
+                        t.getSellerName(),
                         t.getQuantity(),
-                        t.getPrice(),
-                        t.getTotal());
+                        Money.format(t.getPrice()),
+                        Money.format(t.getTotal()));
             }
         }
         System.out.println("+-------------------------------------------------------------------------------+");
     }
 
     public void showBalance(int userId) throws SQLException {
-        TradingAccount ta = tradingAccountDAO.findByUserId(userId);
+        TradingAccount ta = cashLedger.get(userId);
 
         if (ta == null) {
             System.out.println("Trading account not found!");
@@ -604,20 +1262,20 @@ public class MarketPlace {
         System.out.println("\n+---------------------------------------+");
         System.out.println("+          TRADING ACCOUNT              +");
         System.out.println("+---------------------------------------+");
-        System.out.printf("+ Available Balance : Rs.%-14.2f +%n", ta.getAvailableBalance());
-        System.out.printf("+ Reserved Balance  : Rs.%-14.2f +%n", ta.getReservedBalance());
-        System.out.printf("+ Total Balance     : Rs.%-14.2f +%n", ta.getBalance());
+        System.out.printf("+ Available Balance : Rs.%-14s +%n", Money.format(ta.getAvailableBalance()));
+        System.out.printf("+ Reserved Balance  : Rs.%-14s +%n", Money.format(ta.getReservedBalance()));
+        System.out.printf("+ Total Balance     : Rs.%-14s +%n", Money.format(ta.getTotalBalance()));
         System.out.println("+---------------------------------------+");
     }
 
     public void showPortfolio(int userId) throws SQLException {
-        User user = userDAO.findById(userId);
-        if (user == null) {
+        Integer dematId = dematOf(userId);
+        if (dematId == null) {
             System.out.println("User not found!");
             return;
         }
 
-        List<StockHolding> holdings = stockHoldingDAO.findByDematId(user.getDematId());
+        List<StockHolding> holdings = holdingLedger.forDemat(dematId);
 
         System.out.println("\n+---------------------------------------------------+");
         System.out.println("+                STOCK PORTFOLIO                    +");
@@ -640,14 +1298,14 @@ public class MarketPlace {
         System.out.println("+---------------------------------------------------+");
     }
 
-    public boolean addBalance(int userId, double amount) throws SQLException {
+    public boolean addBalance(int userId, long amount) throws SQLException {
         if (amount <= 0) {
             System.out.println("Amount must be positive!");
             return false;
         }
-        boolean success = tradingAccountDAO.credit(userId, amount);
+        boolean success = cashLedger.deposit(userId, amount);
         if (success) {
-            System.out.println("Rs." + amount + " added to your account.");
+            System.out.println("Rs." + Money.format(amount) + " added to your account.");
         } else {
             System.out.println("Failed to add balance!");
         }
@@ -662,4 +1320,5 @@ public class MarketPlace {
     public StockHoldingDAO getStockHoldingDAO() { return stockHoldingDAO; }
     public OrderDAO getOrderDAO() { return orderDAO; }
     public TransactionDAO getTransactionDAO() { return transactionDAO; }
+    public CandleDAO getCandleDAO() { return candleDAO; }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package market;
+
+import dbConnection.DatabaseConfig;
+
+import java.util.concurrent.*;
+
+// one single-writer lane per shard of stock ids. Every command for a stock runs on
+// the same thread in submission order, so a book is never touched by two threads.
+public class MatchingScheduler {
+
+    private final Shard[] shards;
+
+    public MatchingScheduler(int shardCount, int queueCapacity) {
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard("matcher-" + i, queueCapacity);
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(int stockId) {
+        return Math.floorMod(stockId, shards.length);
+    }
+
+    // blocks the caller while the lane's queue is full
+    public <T> CompletableFuture<T> submit(int stockId, Callable<T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            DatabaseConfig.beginOperation("order-entry");
+            try {
+                future.complete(command.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                DatabaseConfig.endOperation();
+            }
+        };
+        try {
+            shards[shardOf(stockId)].queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // parks every lane, runs action while nothing is matching, then lets them go.
+    // Gives a consistent cut across all books for snapshots.
+    public void pauseAll(Runnable action) throws InterruptedException {
+        CountDownLatch parked = new CountDownLatch(shards.length);
+        CountDownLatch release = new CountDownLatch(1);
+        for (Shard shard : shards) {
+            shard.queue.put(() -> {
+                parked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        try {
+            parked.await();
+            action.run();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    private static class Shard implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private final Thread thread;
+
+        Shard(String name, int capacity) {
+            queue = new ArrayBlockingQueue<>(capacity);
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    queue.take().run();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
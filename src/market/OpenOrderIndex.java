@@ -0,0 +1,54 @@
+package market;
+
+import trading.Order;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every resting order by id and by user. Written from the matching lanes, read from
+// anywhere; routes modify/cancel to the right lane and lists a user's orders without sql.
+public class OpenOrderIndex {
+
+    private final Map<Integer, Order> byId = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Order>> byUser = new ConcurrentHashMap<>();
+
+    public void add(Order order) {
+        byId.put(order.getOrderId(), order);
+        byUser.computeIfAbsent(order.getUserId(), k -> ConcurrentHashMap.newKeySet()).add(order);
+    }
+
+    public Order remove(int orderId) {
+        Order order = byId.remove(orderId);
+        if (order != null) {
+            Set<Order> orders = byUser.get(order.getUserId());
+            if (orders != null) {
+                orders.remove(order);
+            }
+        }
+        return order;
+    }
+
+    public Order get(int orderId) {
+        return byId.get(orderId);
+    }
+
+    // oldest first
+    public List<Order> forUser(int userId) {
+        Set<Order> orders = byUser.get(userId);
+        if (orders == null) {
+            return new ArrayList<>();
+        }
+        List<Order> list = new ArrayList<>(orders);
+        list.sort(Comparator.comparingInt(Order::getOrderId));
+        return list;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public void clear() {
+        byId.clear();
+        byUser.clear();
+    }
+}
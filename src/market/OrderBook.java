@@ -0,0 +1,215 @@
+package market;
+
+import trading.Order;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// resting orders of one stock, price-time priority
+public class OrderBook {
+    public static final int DEPTH_LEVELS = 10;
+
+    private final int stockId;
+
+    // best price first on both sides
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();
+    // order id -> handle, for O(1) cancel and modify
+    private final HashMap<Integer, OrderNode> orders = new HashMap<>();
+
+    // cached heads of the two trees so best bid/ask is O(1)
+    private PriceLevel bestBid;
+    private PriceLevel bestAsk;
+
+    // published L2 view; a side is rebuilt only when a change falls inside its levels
+    private volatile Depth depth = Depth.EMPTY;
+    private boolean bidsDirty;
+    private boolean asksDirty;
+    // price of the last fill, kept on the lane so stop checks don't wait on market data
+    private long lastTradePrice;
+
+    public OrderBook(int stockId) {
+        this.stockId = stockId;
+    }
+
+    public int getStockId() { return stockId; }
+
+    public PriceLevel getBestBid() { return bestBid; }
+
+    public PriceLevel getBestAsk() { return bestAsk; }
+
+    // safe to call from any thread
+    public Depth getDepth() { return depth; }
+
+    public long getLastTradePrice() { return lastTradePrice; }
+
+    // seeds the price at startup and follows replayed fills
+    public void setLastTradePrice(long price) { this.lastTradePrice = price; }
+
+    public Order getOrder(int orderId) {
+        OrderNode node = orders.get(orderId);
+        return node != null ? node.order : null;
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    public void add(Order order) {
+        TreeMap<Long, PriceLevel> side = order.isBuy() ? bids : asks;
+        PriceLevel level = side.get(order.getPrice());
+        if (level == null) {
+            level = new PriceLevel(order.getPrice());
+            side.put(order.getPrice(), level);
+        }
+        OrderNode node = new OrderNode(order);
+        level.add(node);
+        orders.put(order.getOrderId(), node);
+        refreshBest(order.isBuy());
+        touch(order.isBuy(), order.getPrice());
+        publishDepth();
+    }
+
+    public Order remove(int orderId) {
+        OrderNode node = orders.remove(orderId);
+        if (node == null) {
+            return null;
+        }
+        Order order = node.order;
+        PriceLevel level = node.level;
+        level.unlink(node);
+        if (level.isEmpty()) {
+            (order.isBuy() ? bids : asks).remove(level.getPrice());
+        }
+        refreshBest(order.isBuy());
+        touch(order.isBuy(), order.getPrice());
+        publishDepth();
+        return order;
+    }
+
+    // sets a resting order's quantity, dropping it at zero. Used when replaying fills.
+    public void updateQuantity(int orderId, int quantity) {
+        OrderNode node = orders.get(orderId);
+        if (node == null) {
+            return;
+        }
+        if (quantity <= 0) {
+            remove(orderId);
+            return;
+        }
+        Order order = node.order;
+        node.level.reduce(order.getQuantity() - quantity);
+        order.setQuantity(quantity);
+        touch(order.isBuy(), order.getPrice());
+        publishDepth();
+    }
+
+    // every resting order, bids then asks, each in matching order
+    public void forEachOrder(Consumer<Order> action) {
+        for (PriceLevel level : bids.values()) {
+            for (OrderNode n = level.head(); n != null; n = n.next) action.accept(n.order);
+        }
+        for (PriceLevel level : asks.values()) {
+            for (OrderNode n = level.head(); n != null; n = n.next) action.accept(n.order);
+        }
+    }
+
+    // matches incoming against the opposite side; incoming quantity is reduced in place,
+    // the caller decides whether the rest goes into the book
+    public List<Fill> match(Order incoming) {
+        List<Fill> fills = new ArrayList<>();
+        TreeMap<Long, PriceLevel> side = incoming.isBuy() ? asks : bids;
+
+        Iterator<PriceLevel> levels = side.values().iterator();
+        while (incoming.getQuantity() > 0 && levels.hasNext()) {
+            PriceLevel level = levels.next();
+            if (incoming.isBuy() ? level.getPrice() > incoming.getPrice()
+                                 : level.getPrice() < incoming.getPrice()) {
+                break; // price can never match
+            }
+
+            OrderNode node = level.head();
+            while (incoming.getQuantity() > 0 && node != null) {
+                OrderNode next = node.next;
+                Order resting = node.order;
+                if (resting.getUserId() == incoming.getUserId()) {
+                    node = next;
+                    continue;
+                }
+
+                int qty = Math.min(incoming.getQuantity(), resting.getQuantity());
+                touch(resting.isBuy(), level.getPrice());
+                incoming.setQuantity(incoming.getQuantity() - qty);
+                resting.setQuantity(resting.getQuantity() - qty);
+                level.reduce(qty);
+                lastTradePrice = level.getPrice();
+
+                Order buy = incoming.isBuy() ? incoming : resting;
+                Order sell = incoming.isBuy() ? resting : incoming;
+                // trades at the resting order's price; an incoming sell priced below the
+                // bid (a market stop-loss comes in at 0) still gets the bid
+                fills.add(new Fill(stockId, buy.getOrderId(), sell.getOrderId(),
+                        buy.getUserId(), sell.getUserId(), qty, level.getPrice(), buy.getPrice(),
+                        buy.getQuantity(), sell.getQuantity()));
+
+                if (resting.getQuantity() == 0) {
+                    level.unlink(node);
+                    orders.remove(resting.getOrderId());
+                }
+                node = next;
+            }
+            if (level.isEmpty()) {
+                levels.remove();
+            }
+        }
+        refreshBest(!incoming.isBuy());
+        publishDepth();
+        return fills;
+    }
+
+    // best n orders of a side in matching order
+    public List<Order> top(boolean isBuy, int n) {
+        List<Order> result = new ArrayList<>();
+        for (PriceLevel level : (isBuy ? bids : asks).values()) {
+            for (OrderNode node = level.head(); node != null; node = node.next) {
+                if (result.size() == n) return result;
+                result.add(node.order);
+            }
+        }
+        return result;
+    }
+
+    // marks a side for rebuild if price is within the levels the current view shows,
+    // or the view still has room for more levels
+    private void touch(boolean isBuy, long price) {
+        List<Depth.Level> shown = isBuy ? depth.getBids() : depth.getAsks();
+        boolean inView = shown.size() < DEPTH_LEVELS
+                || (isBuy ? price >= shown.get(shown.size() - 1).getPrice()
+                          : price <= shown.get(shown.size() - 1).getPrice());
+        if (!inView) {
+            return;
+        }
+        if (isBuy) bidsDirty = true;
+        else asksDirty = true;
+    }
+
+    private void publishDepth() {
+        if (!bidsDirty && !asksDirty) {
+            return;
+        }
+        Depth current = depth;
+        depth = new Depth(bidsDirty ? Depth.of(bids.values(), DEPTH_LEVELS) : current.getBids(),
+                asksDirty ? Depth.of(asks.values(), DEPTH_LEVELS) : current.getAsks(),
+                current.getVersion() + 1);
+        bidsDirty = false;
+        asksDirty = false;
+    }
+
+    private void refreshBest(boolean isBuy) {
+        if (isBuy) {
+            bestBid = bids.isEmpty() ? null : bids.firstEntry().getValue();
+        } else {
+            bestAsk = asks.isEmpty() ? null : asks.firstEntry().getValue();
+        }
+    }
+}
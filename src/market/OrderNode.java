@@ -0,0 +1,16 @@
+package market;
+
+import trading.Order;
+
+// handle of a resting order: its place in the price level's queue, so the book can
+// unlink it in O(1) given only the order id
+class OrderNode {
+    final Order order;
+    PriceLevel level;
+    OrderNode prev;
+    OrderNode next;
+
+    OrderNode(Order order) {
+        this.order = order;
+    }
+}
@@ -0,0 +1,32 @@
+package market;
+
+// one order of a basket passed to MarketPlace.placeOrders
+public class OrderRequest {
+    private final int userId;
+    private final String stockName;
+    private final boolean isBuy;
+    private final int quantity;
+    private final long price;     // paise
+
+    public OrderRequest(int userId, String stockName, boolean isBuy, int quantity, long price) {
+        this.userId = userId;
+        this.stockName = stockName;
+        this.isBuy = isBuy;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public static OrderRequest buy(int userId, String stockName, int quantity, long price) {
+        return new OrderRequest(userId, stockName, true, quantity, price);
+    }
+
+    public static OrderRequest sell(int userId, String stockName, int quantity, long price) {
+        return new OrderRequest(userId, stockName, false, quantity, price);
+    }
+
+    public int getUserId() { return userId; }
+    public String getStockName() { return stockName; }
+    public boolean isBuy() { return isBuy; }
+    public int getQuantity() { return quantity; }
+    public long getPrice() { return price; }
+}
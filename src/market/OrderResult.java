@@ -0,0 +1,52 @@
+package market;
+
+import trading.Order;
+
+// outcome of one request of a basket, in the same position as the request
+public class OrderResult {
+
+    public enum Status { RESTING, FILLED, REJECTED }
+
+    private final OrderRequest request;
+    private final Status status;
+    private final int orderId;
+    private final int filledQuantity;
+    private final Order order;        // resting order, null unless RESTING
+    private final String message;
+
+    private OrderResult(OrderRequest request, Status status, int orderId, int filledQuantity,
+                        Order order, String message) {
+        this.request = request;
+        this.status = status;
+        this.orderId = orderId;
+        this.filledQuantity = filledQuantity;
+        this.order = order;
+        this.message = message;
+    }
+
+    static OrderResult rejected(OrderRequest request, String message) {
+        return new OrderResult(request, Status.REJECTED, 0, 0, null, message);
+    }
+
+    // called right after matching, order.getQuantity() is what is left to rest
+    static OrderResult placed(OrderRequest request, Order order) {
+        int left = order.getQuantity();
+        return new OrderResult(request, left > 0 ? Status.RESTING : Status.FILLED, order.getOrderId(),
+                request.getQuantity() - left, left > 0 ? order : null, null);
+    }
+
+    public OrderRequest getRequest() { return request; }
+    public Status getStatus() { return status; }
+    public boolean isAccepted() { return status != Status.REJECTED; }
+    public int getOrderId() { return orderId; }
+    public int getFilledQuantity() { return filledQuantity; }
+    public Order getOrder() { return order; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return status == Status.REJECTED
+                ? "REJECTED: " + message
+                : String.format("%s #%d (filled %d/%d)", status, orderId, filledQuantity, request.getQuantity());
+    }
+}
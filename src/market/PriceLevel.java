@@ -0,0 +1,75 @@
+package market;
+
+import trading.Order;
+
+import java.util.*;
+
+// all resting orders at one price, oldest first. An intrusive doubly linked list of
+// the book's order handles, so an order anywhere in the queue unlinks in O(1).
+public class PriceLevel {
+    private final long price;
+    private OrderNode head;
+    private OrderNode tail;
+    private int orderCount;
+    private long totalQuantity;
+
+    public PriceLevel(long price) {
+        this.price = price;
+    }
+
+    public long getPrice() { return price; }
+
+    public long getTotalQuantity() { return totalQuantity; }
+
+    public int getOrderCount() { return orderCount; }
+
+    public boolean isEmpty() { return head == null; }
+
+    void add(OrderNode node) {
+        node.level = this;
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+        orderCount++;
+        totalQuantity += node.order.getQuantity();
+    }
+
+    void unlink(OrderNode node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = node.next = null;
+        node.level = null;
+        orderCount--;
+        totalQuantity -= node.order.getQuantity();
+    }
+
+    // called after a resting order in this level traded qty shares
+    void reduce(int qty) {
+        totalQuantity -= qty;
+    }
+
+    OrderNode head() {
+        return head;
+    }
+
+    public List<Order> getOrders() {
+        List<Order> orders = new ArrayList<>(orderCount);
+        for (OrderNode n = head; n != null; n = n.next) {
+            orders.add(n.order);
+        }
+        return orders;
+    }
+}
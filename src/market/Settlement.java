@@ -0,0 +1,101 @@
+package market;
+
+import dao.*;
+import trading.*;
+
+import java.sql.SQLException;
+import java.util.*;
+
+// writes every fill of one incoming order as a few batched statements. Fills are folded
+// into net deltas per account, per holding and per order, so a sweep through many
+// price levels costs a fixed handful of statements instead of ~20 per fill.
+// Runs inside the caller's transaction.
+public class Settlement {
+
+    private final UserDAO userDAO;
+    private final TradingAccountDAO tradingAccountDAO;
+    private final StockHoldingDAO stockHoldingDAO;
+    private final OrderDAO orderDAO;
+    private final TransactionDAO transactionDAO;
+
+    public Settlement(UserDAO userDAO, TradingAccountDAO tradingAccountDAO, StockHoldingDAO stockHoldingDAO,
+                      OrderDAO orderDAO, TransactionDAO transactionDAO) {
+        this.userDAO = userDAO;
+        this.tradingAccountDAO = tradingAccountDAO;
+        this.stockHoldingDAO = stockHoldingDAO;
+        this.orderDAO = orderDAO;
+        this.transactionDAO = transactionDAO;
+    }
+
+    public Map<Integer, User> settle(List<Fill> fills) throws SQLException {
+        return settle(fills, Collections.emptySet());
+    }
+
+    // all fills must belong to the same stock; returns the users involved for reporting.
+    // Orders in written were just inserted with their post-match residual, their rows
+    // need no remaining-quantity update.
+    public Map<Integer, User> settle(List<Fill> fills, Set<Integer> written) throws SQLException {
+        if (fills.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        int stockId = fills.get(0).getStockId();
+
+        Set<Integer> userIds = new HashSet<>();
+        for (Fill fill : fills) {
+            userIds.add(fill.getBuyerId());
+            userIds.add(fill.getSellerId());
+        }
+
+        Map<Integer, User> users = userDAO.findByIds(userIds);
+
+        Map<Integer, long[]> cash = new HashMap<>();       // user -> {balance, reserved} in paise
+        Map<Integer, int[]> shares = new HashMap<>();      // demat -> {total, reserved}
+        Map<Integer, Integer> remaining = new LinkedHashMap<>();
+        List<Transaction> trades = new ArrayList<>();
+
+        for (Fill fill : fills) {
+            int quantity = fill.getQuantity();
+            long total = quantity * fill.getPrice();
+            long refund = quantity * fill.getBuyPrice() - total;
+
+            // buyer pays out of the reservation and gets the price improvement back
+            long[] buyer = cash.computeIfAbsent(fill.getBuyerId(), k -> new long[2]);
+            buyer[1] -= total;
+            if (refund > 0) {
+                buyer[0] += refund;
+                buyer[1] -= refund;
+            }
+            cash.computeIfAbsent(fill.getSellerId(), k -> new long[2])[0] += total;
+
+            int[] sold = shares.computeIfAbsent(demat(users, fill.getSellerId()), k -> new int[2]);
+            sold[0] -= quantity;
+            sold[1] -= quantity;
+            shares.computeIfAbsent(demat(users, fill.getBuyerId()), k -> new int[2])[0] += quantity;
+
+            // later fills carry the later remaining quantity
+            if (!written.contains(fill.getBuyOrderId())) {
+                remaining.put(fill.getBuyOrderId(), fill.getBuyRemaining());
+            }
+            if (!written.contains(fill.getSellOrderId())) {
+                remaining.put(fill.getSellOrderId(), fill.getSellRemaining());
+            }
+
+            trades.add(new Transaction(fill.getBuyerId(), fill.getSellerId(), stockId,
+                    quantity, fill.getPrice()));
+        }
+
+        tradingAccountDAO.applyDeltas(cash);
+        stockHoldingDAO.applyDeltas(stockId, shares);
+        orderDAO.applyRemaining(remaining);
+        transactionDAO.createTransactions(trades);
+        return users;
+    }
+
+    private static int demat(Map<Integer, User> users, int userId) throws SQLException {
+        User user = users.get(userId);
+        if (user == null) {
+            throw new SQLException("User not found: " + userId);
+        }
+        return user.getDematId();
+    }
+}
@@ -0,0 +1,193 @@
+package market;
+
+import trading.Order;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// compact binary snapshots of the resting books at a journal sequence.
+// Layout: magic, version, sequence, last order id, then per book the stock id, order
+// count and each order in matching order, then the pending stop orders, ending with a
+// crc32 of everything before it.
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".snapshot";
+    private static final int KEEP = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int ORDER_SIZE = 21;
+    private static final int STOP_SIZE = 33;
+
+    private final Path dir;
+
+    public SnapshotStore(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+    }
+
+    public static class Snapshot {
+        private final long sequence;
+        private final int lastOrderId;
+        private final Map<Integer, OrderBook> books;
+        private final List<StopOrder> stops;
+        private final int orderCount;
+
+        Snapshot(long sequence, int lastOrderId, Map<Integer, OrderBook> books, List<StopOrder> stops,
+                 int orderCount) {
+            this.sequence = sequence;
+            this.lastOrderId = lastOrderId;
+            this.books = books;
+            this.stops = stops;
+            this.orderCount = orderCount;
+        }
+
+        public long getSequence() { return sequence; }
+        public int getLastOrderId() { return lastOrderId; }
+        public Map<Integer, OrderBook> getBooks() { return books; }
+        public List<StopOrder> getStops() { return stops; }
+        public int getOrderCount() { return orderCount; }
+    }
+
+    // serializes in memory, meant to run while the lanes are paused
+    public byte[] encode(long sequence, int lastOrderId, Collection<OrderBook> books,
+                         Collection<StopBook> stopBooks) {
+        int size = HEADER_SIZE + 4 + 8;
+        for (OrderBook book : books) {
+            size += 8 + book.size() * ORDER_SIZE;
+        }
+        int stopCount = 0;
+        for (StopBook stops : stopBooks) {
+            stopCount += stops.size();
+        }
+        size += stopCount * STOP_SIZE;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(sequence);
+        buf.putInt(lastOrderId);
+        buf.putInt(books.size());
+        for (OrderBook book : books) {
+            buf.putInt(book.getStockId());
+            buf.putInt(book.size());
+            book.forEachOrder(o -> {
+                buf.putInt(o.getOrderId());
+                buf.putInt(o.getUserId());
+                buf.put((byte) (o.isBuy() ? 1 : 0));
+                buf.putInt(o.getQuantity());
+                buf.putLong(o.getPrice());
+            });
+        }
+        buf.putInt(stopCount);
+        for (StopBook stops : stopBooks) {
+            stops.forEach(s -> {
+                buf.putInt(s.getOrderId());
+                buf.putInt(s.getUserId());
+                buf.putInt(s.getStockId());
+                buf.put((byte) (s.isBuy() ? 1 : 0));
+                buf.putInt(s.getQuantity());
+                buf.putLong(s.getTriggerPrice());
+                buf.putLong(s.getLimitPrice());
+            });
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        return buf.array();
+    }
+
+    // writes to a temp file first so a crash never leaves a half written snapshot
+    public void write(long sequence, byte[] data) throws IOException {
+        Path tmp = dir.resolve(String.format("%020d%s.tmp", sequence, SUFFIX));
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(data));
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(String.format("%020d%s", sequence, SUFFIX)),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> files = snapshots();
+        for (int i = 0; i < files.size() - KEEP; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // newest snapshot that passes its crc check, or null
+    public Snapshot loadLatest() throws IOException {
+        List<Path> files = snapshots();
+        for (int i = files.size() - 1; i >= 0; i--) {
+            Snapshot s = read(files.get(i));
+            if (s != null) {
+                return s;
+            }
+            System.out.println("Skipping damaged snapshot " + files.get(i).getFileName());
+        }
+        return null;
+    }
+
+    public void clear() throws IOException {
+        for (Path p : snapshots()) {
+            Files.delete(p);
+        }
+    }
+
+    private Snapshot read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        if (data.length < HEADER_SIZE + 8) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 8);
+        if (buf.getLong(data.length - 8) != crc.getValue()) {
+            return null;
+        }
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            return null;
+        }
+        long sequence = buf.getLong();
+        int lastOrderId = buf.getInt();
+        int bookCount = buf.getInt();
+        Map<Integer, OrderBook> books = new HashMap<>();
+        int orderCount = 0;
+        for (int b = 0; b < bookCount; b++) {
+            OrderBook book = new OrderBook(buf.getInt());
+            int n = buf.getInt();
+            for (int i = 0; i < n; i++) {
+                Order order = new Order();
+                order.setOrderId(buf.getInt());
+                order.setUserId(buf.getInt());
+                order.setStockId(book.getStockId());
+                order.setBuy(buf.get() == 1);
+                order.setQuantity(buf.getInt());
+                order.setPrice(buf.getLong());
+                book.add(order);
+            }
+            orderCount += n;
+            books.put(book.getStockId(), book);
+        }
+        int stopCount = buf.getInt();
+        List<StopOrder> stops = new ArrayList<>(stopCount);
+        for (int i = 0; i < stopCount; i++) {
+            stops.add(new StopOrder(buf.getInt(), buf.getInt(), buf.getInt(), buf.get() == 1,
+                    buf.getInt(), buf.getLong(), buf.getLong()));
+        }
+        return new Snapshot(sequence, lastOrderId, books, stops, orderCount);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
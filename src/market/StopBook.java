@@ -0,0 +1,74 @@
+package market;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// stop orders of one stock keyed by trigger price. Buy stops fire on a trade at or above
+// their trigger, sell stops at or below, so the triggered ones always sit at the front of
+// their tree and a trade never looks at a stop it doesn't fire. Only the stock's lane
+// touches it.
+public class StopBook {
+
+    private final int stockId;
+    // lowest trigger first
+    private final TreeMap<Long, ArrayDeque<StopOrder>> buyStops = new TreeMap<>();
+    // highest trigger first
+    private final TreeMap<Long, ArrayDeque<StopOrder>> sellStops = new TreeMap<>(Comparator.reverseOrder());
+    private final HashMap<Integer, StopOrder> stops = new HashMap<>();
+
+    public StopBook(int stockId) {
+        this.stockId = stockId;
+    }
+
+    public int getStockId() { return stockId; }
+
+    public int size() {
+        return stops.size();
+    }
+
+    public void add(StopOrder stop) {
+        (stop.isBuy() ? buyStops : sellStops)
+                .computeIfAbsent(stop.getTriggerPrice(), k -> new ArrayDeque<>()).add(stop);
+        stops.put(stop.getOrderId(), stop);
+    }
+
+    public StopOrder remove(int orderId) {
+        StopOrder stop = stops.remove(orderId);
+        if (stop != null) {
+            TreeMap<Long, ArrayDeque<StopOrder>> side = stop.isBuy() ? buyStops : sellStops;
+            ArrayDeque<StopOrder> queue = side.get(stop.getTriggerPrice());
+            queue.remove(stop);
+            if (queue.isEmpty()) {
+                side.remove(stop.getTriggerPrice());
+            }
+        }
+        return stop;
+    }
+
+    // takes out every stop fired by trades printed between low and high, in trigger
+    // order and oldest first within a price
+    public List<StopOrder> trigger(long low, long high) {
+        List<StopOrder> fired = new ArrayList<>();
+        drain(buyStops, high, true, fired);
+        drain(sellStops, low, false, fired);
+        return fired;
+    }
+
+    private void drain(TreeMap<Long, ArrayDeque<StopOrder>> side, long price, boolean isBuy,
+                       List<StopOrder> fired) {
+        Map.Entry<Long, ArrayDeque<StopOrder>> first;
+        while ((first = side.firstEntry()) != null
+                && (isBuy ? first.getKey() <= price : first.getKey() >= price)) {
+            side.pollFirstEntry();
+            for (StopOrder stop : first.getValue()) {
+                stops.remove(stop.getOrderId());
+                fired.add(stop);
+            }
+        }
+    }
+
+    public void forEach(Consumer<StopOrder> action) {
+        for (ArrayDeque<StopOrder> queue : buyStops.values()) queue.forEach(action);
+        for (ArrayDeque<StopOrder> queue : sellStops.values()) queue.forEach(action);
+    }
+}
@@ -0,0 +1,41 @@
+package market;
+
+// an order parked until the stock trades through its trigger price. A limit of zero is
+// a stop-loss: on trigger it takes whatever the book offers and drops the rest.
+public class StopOrder {
+    private final int orderId;
+    private final int userId;
+    private final int stockId;
+    private final boolean isBuy;
+    private final int quantity;
+    private final long triggerPrice;   // paise
+    private final long limitPrice;     // paise, 0 = market
+
+    public StopOrder(int orderId, int userId, int stockId, boolean isBuy, int quantity,
+                     long triggerPrice, long limitPrice) {
+        this.orderId = orderId;
+        this.userId = userId;
+        this.stockId = stockId;
+        this.isBuy = isBuy;
+        this.quantity = quantity;
+        this.triggerPrice = triggerPrice;
+        this.limitPrice = limitPrice;
+    }
+
+    public int getOrderId() { return orderId; }
+    public int getUserId() { return userId; }
+    public int getStockId() { return stockId; }
+    public boolean isBuy() { return isBuy; }
+    public int getQuantity() { return quantity; }
+    public long getTriggerPrice() { return triggerPrice; }
+    public long getLimitPrice() { return limitPrice; }
+
+    public boolean isMarket() {
+        return limitPrice == 0;
+    }
+
+    // cash a buy stop holds, or shares a sell stop holds
+    public long getHold() {
+        return isBuy ? quantity * limitPrice : quantity;
+    }
+}
@@ -0,0 +1,145 @@
+package market;
+
+import java.time.*;
+import java.util.concurrent.locks.StampedLock;
+
+// live statistics of one stock for the current session. Written by the market data
+// consumer only; readers take an optimistic stamp and retry if a trade landed in
+// between (a seqlock), so reads never block and never see half an update.
+public class Ticker {
+
+    // consistent copy of a ticker at one point in time, prices in paise
+    public static class Quote {
+        private final int stockId;
+        private final long lastPrice;
+        private final int lastQuantity;
+        private final long lastTradeTime;
+        private final long open;
+        private final long high;
+        private final long low;
+        private final long volume;
+        private final long turnover;
+        private final int trades;
+
+        Quote(int stockId, long lastPrice, int lastQuantity, long lastTradeTime, long open, long high,
+              long low, long volume, long turnover, int trades) {
+            this.stockId = stockId;
+            this.lastPrice = lastPrice;
+            this.lastQuantity = lastQuantity;
+            this.lastTradeTime = lastTradeTime;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.volume = volume;
+            this.turnover = turnover;
+            this.trades = trades;
+        }
+
+        public int getStockId() { return stockId; }
+        public long getLastPrice() { return lastPrice; }
+        public int getLastQuantity() { return lastQuantity; }
+        public long getLastTradeTime() { return lastTradeTime; }
+        public long getOpen() { return open; }
+        public long getHigh() { return high; }
+        public long getLow() { return low; }
+        public long getVolume() { return volume; }
+        public long getTurnover() { return turnover; }
+        public int getTrades() { return trades; }
+
+        public boolean hasTraded() {
+            return trades > 0;
+        }
+
+        // volume weighted average price, rounded to the paisa
+        public long getVwap() {
+            return volume > 0 ? (turnover + volume / 2) / volume : 0;
+        }
+    }
+
+    private final int stockId;
+    private final StampedLock lock = new StampedLock();
+
+    private long lastPrice;
+    private int lastQuantity;
+    private long lastTradeTime;
+    private long open;
+    private long high;
+    private long low;
+    private long volume;
+    private long turnover;
+    private int trades;
+    private LocalDate session;
+
+    public Ticker(int stockId) {
+        this.stockId = stockId;
+    }
+
+    public int getStockId() { return stockId; }
+
+    // last price carried over from before a restart, no session figures yet
+    void seed(long price) {
+        long stamp = lock.writeLock();
+        try {
+            lastPrice = price;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // single writer; the first trade of a new day starts a new session
+    void onTrade(long price, int quantity, long timestamp) {
+        LocalDate day = Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+        long stamp = lock.writeLock();
+        try {
+            if (!day.equals(session)) {
+                session = day;
+                open = high = low = price;
+                volume = turnover = 0;
+                trades = 0;
+            }
+            lastPrice = price;
+            lastQuantity = quantity;
+            lastTradeTime = timestamp;
+            if (price > high) high = price;
+            if (price < low) low = price;
+            volume += quantity;
+            turnover += quantity * price;
+            trades++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Quote read() {
+        long stamp = lock.tryOptimisticRead();
+        Quote quote = copy();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                quote = copy();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return quote;
+    }
+
+    public long getLastPrice() {
+        long stamp = lock.tryOptimisticRead();
+        long price = lastPrice;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                price = lastPrice;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return price;
+    }
+
+    private Quote copy() {
+        return new Quote(stockId, lastPrice, lastQuantity, lastTradeTime, open, high, low, volume,
+                turnover, trades);
+    }
+}
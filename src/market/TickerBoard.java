@@ -0,0 +1,38 @@
+package market;
+
+import events.EventHandler;
+import events.MarketEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// event bus consumer keeping a Ticker per stock current with every trade.
+// Lookups are lock-free, any thread may read.
+public class TickerBoard implements EventHandler {
+
+    private final Map<Integer, Ticker> tickers = new ConcurrentHashMap<>();
+
+    @Override
+    public void onEvent(MarketEvent event, boolean endOfBatch) {
+        if (event.getType() == MarketEvent.Type.TRADE) {
+            tickers.computeIfAbsent(event.getStockId(), Ticker::new)
+                    .onTrade(event.getPrice(), event.getQuantity(), event.getTimestamp());
+        }
+    }
+
+    // called before the bus starts
+    public void seed(Map<Integer, Long> lastPrices) {
+        for (Map.Entry<Integer, Long> e : lastPrices.entrySet()) {
+            tickers.computeIfAbsent(e.getKey(), Ticker::new).seed(e.getValue());
+        }
+    }
+
+    public void clear() {
+        tickers.clear();
+    }
+
+    // null until the stock trades
+    public Ticker get(int stockId) {
+        return tickers.get(stockId);
+    }
+}
@@ -0,0 +1,48 @@
+package market;
+
+import dao.UserDAO;
+import events.EventHandler;
+import events.MarketEvent;
+import util.Money;
+
+import java.sql.SQLException;
+import java.util.*;
+
+// event bus consumer that prints every trade, off the matching path. Usernames are
+// looked up once per user and cached.
+public class TradeLogger implements EventHandler {
+
+    private final UserDAO userDAO;
+    private final Map<Integer, String> names = new HashMap<>();
+
+    public TradeLogger(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    @Override
+    public void onEvent(MarketEvent event, boolean endOfBatch) throws SQLException {
+        if (event.getType() != MarketEvent.Type.TRADE) {
+            return;
+        }
+        long total = event.getQuantity() * event.getPrice();
+        System.out.println("\n+---------------------------------------+");
+        System.out.println("+           ORDER MATCHED               +");
+        System.out.println("+---------------------------------------+");
+        System.out.printf("+ Stock      : %-24d +%n", event.getStockId());
+        System.out.printf("+ Quantity   : %-24d +%n", event.getQuantity());
+        System.out.printf("+ Price      : Rs.%-22s+%n", Money.format(event.getPrice()));
+        System.out.printf("+ Total      : Rs.%-22s+%n", Money.format(total));
+        System.out.printf("+ Buyer      : %-24s +%n", event.getUserId() + " (" + name(event.getUserId()) + ")");
+        System.out.printf("+ Seller     : %-24s +%n", event.getCounterUserId() + " (" + name(event.getCounterUserId()) + ")");
+        System.out.println("+---------------------------------------+\n");
+    }
+
+    private String name(int userId) throws SQLException {
+        String name = names.get(userId);
+        if (name == null) {
+            name = UserDAO.findUsernameById(userId);
+            names.put(userId, name);
+        }
+        return name;
+    }
+}
@@ -2,6 +2,7 @@ package trading;
 
 import account.*;
 import dao.StockDAO;
+import util.Money;
 
 import java.sql.SQLException;
 
@@ -10,16 +11,15 @@ public class Order {
     private int userId;
     private int stockId;
     private int quantity;
-    private double price;
+    private long price;      // paise
     private boolean isBuy;
-    private double total;
+    private long total;
+    private String stockName;
 
-    public Order() throws SQLException {
+    public Order() {
     }
 
-    String stockName = getStockName();
-
-    public Order(int userId, int stockId, int quantity, double price, boolean isBuy) throws SQLException {
+    public Order(int userId, int stockId, int quantity, long price, boolean isBuy) {
         this.userId = userId;
         this.stockId = stockId;
         this.quantity = quantity;
@@ -56,10 +56,10 @@ public class Order {
         this.quantity = quantity;
     }
 
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
-    public void setPrice(double price){
+    public void setPrice(long price){
         this.price = price;
     }
 
@@ -70,18 +70,24 @@ public class Order {
         this.isBuy = b;
     }
 
-    public double getTotal(){
+    public long getTotal(){
         return this.total = getPrice() * getQuantity();
     }
 
     public String getStockName() throws SQLException{
-        return StockDAO.getStockNameById(stockId);
+        if (stockName == null) {
+            stockName = StockDAO.getStockNameById(stockId);
+        }
+        return stockName;
+    }
+    public void setStockName(String stockName){
+        this.stockName = stockName;
     }
 
     @Override
     public String toString() {
-        return String.format("Order #%d [%s %s: %d @ Rs.%.2f]",
-                orderId, isBuy ? "BUY" : "SELL", stockName , quantity, price);
+        return String.format("Order #%d [%s %s: %d @ Rs.%s]",
+                orderId, isBuy ? "BUY" : "SELL", stockName , quantity, Money.format(price));
     }
 
 }
\ No newline at end of file
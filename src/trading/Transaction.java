@@ -1,6 +1,7 @@
 package trading;
 
 import dao.UserDAO;
+import util.Money;
 
 import java.sql.SQLException;
 
@@ -10,14 +11,26 @@ public class Transaction {
     private int sellerId;
     private int stockId;
     private int quantity;
-    private double price;
+    private long price;      // paise
 
     private String stockName;
-    private double total;
+    private long total;
     private String userName;
 
+    private String buyerName;
+    private String sellerName;
+
     public Transaction() throws SQLException {}
 
+    public Transaction(int buyerId, int sellerId, int stockId, int quantity, long price) {
+        this.buyerId = buyerId;
+        this.sellerId = sellerId;
+        this.stockId = stockId;
+        this.quantity = quantity;
+        this.price = price;
+        this.total = quantity * price;
+    }
+
     public String getUserName(int id) throws SQLException{
         return UserDAO.findUsernameById(id);
     }
@@ -44,18 +57,21 @@ public class Transaction {
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
 
-    public double getPrice() { return price; }
-    public void setPrice(double price) { this.price = price; }
+    public long getPrice() { return price; }
+    public void setPrice(long price) { this.price = price; }
+
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
 
-    public double getTotal() { return total; }
-    public void setTotal(double total) { this.total = total; }
+    public String getBuyerName() { return buyerName; }
+    public void setBuyerName(String buyerName) { this.buyerName = buyerName; }
 
-    String buyerName = UserDAO.findUsernameById(getBuyerId());
-    String sellerName = UserDAO.findUsernameById(getSellerId());
+    public String getSellerName() { return sellerName; }
+    public void setSellerName(String sellerName) { this.sellerName = sellerName; }
 
     @Override
     public String toString() {
-        return String.format("Transaction #%d: %s -> %s | %s x%d @ Rs.%.2f = Rs.%.2f",
-                transactionId, sellerName, buyerName, sellerName, quantity, price, total);
+        return String.format("Transaction #%d: %s -> %s | %s x%d @ Rs.%s = Rs.%s",
+                transactionId, sellerName, buyerName, stockName, quantity, Money.format(price), Money.format(total));
     }
 }
\ No newline at end of file
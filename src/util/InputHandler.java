@@ -113,6 +113,28 @@ public class InputHandler {
         }
     }
 
+    // a rupee amount like "1500.25", returned exactly as paise
+    public static long getPositiveAmount(String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            try {
+                String input = scanner.nextLine().trim();
+                if (input.isEmpty()) {
+                    System.out.println("Input cannot be empty!");
+                    continue;
+                }
+                long paise = Money.parse(input);
+                if (paise <= 0) {
+                    System.out.println("Value must be positive!");
+                    continue;
+                }
+                return paise;
+            } catch (NumberFormatException | ArithmeticException e) {
+                System.out.println("Invalid input! Please enter a valid amount.");
+            }
+        }
+    }
+
     public static boolean getYesNo(String prompt) {
         while(true){
             System.out.println(prompt);
@@ -0,0 +1,36 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// prices and amounts are carried as long paise everywhere, this converts at the edges:
+// DECIMAL columns, user input and printing
+public class Money {
+
+    public static final int SCALE = 2;
+
+    public static long fromDecimal(BigDecimal rupees) {
+        return rupees.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    // a value read from a DECIMAL (or any numeric) column
+    public static long fromNumber(Number rupees) {
+        if (rupees instanceof BigDecimal) {
+            return fromDecimal((BigDecimal) rupees);
+        }
+        return fromDecimal(new BigDecimal(rupees.toString()));
+    }
+
+    // exact parse of user input like "1500.25"
+    public static long parse(String rupees) {
+        return fromDecimal(new BigDecimal(rupees.trim()));
+    }
+
+    public static BigDecimal toDecimal(long paise) {
+        return BigDecimal.valueOf(paise, SCALE);
+    }
+
+    public static String format(long paise) {
+        return toDecimal(paise).toPlainString();
+    }
+}
@@ -0,0 +1,47 @@
+package dbConnection;
+
+import java.sql.*;
+
+import static testing.Assert.*;
+
+public class ConnectionPoolTest {
+
+    private static ConnectionPool pool() throws SQLException {
+        StubDriver.register();
+        return new ConnectionPool(StubDriver.URL, "u", "p", 0, 1, 1, 1_000, 0, 8, null);
+    }
+
+    public static void testPlainPrepareIsReused() throws SQLException {
+        ConnectionPool pool = pool();
+        try (Connection con = pool.getConnection()) {
+            con.prepareStatement("SELECT 1").close();
+            con.prepareStatement("SELECT 1").close();
+        }
+        equal(1L, pool.getStats().getStatementHits(), "hits");
+        pool.shutdown();
+    }
+
+    public static void testResultSetTypeIsNotTakenForGeneratedKeys() throws SQLException {
+        ConnectionPool pool = pool();
+        try (Connection con = pool.getConnection()) {
+            con.prepareStatement("SELECT 2", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY).close();
+            con.prepareStatement("SELECT 2").close();
+        }
+        equal(0L, pool.getStats().getStatementHits(), "three argument prepare never cached");
+        pool.shutdown();
+    }
+
+    public static void testTunedStatementIsNotReused() throws SQLException {
+        ConnectionPool pool = pool();
+        try (Connection con = pool.getConnection()) {
+            PreparedStatement ps = con.prepareStatement("SELECT 3");
+            ps.setFetchSize(500);
+            ps.close();
+            PreparedStatement again = con.prepareStatement("SELECT 3");
+            equal(0, again.getFetchSize(), "fetch size of the next use");
+            again.close();
+        }
+        equal(0L, pool.getStats().getStatementHits(), "hits");
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package dbConnection;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+// connections that accept transactions and prepares but reach no database; prepared
+// statements only remember their fetch size
+public class StubDriver implements Driver {
+
+    public static final String URL = "jdbc:pooltest:stub";
+
+    private static boolean registered;
+
+    public static synchronized void register() throws SQLException {
+        if (!registered) {
+            DriverManager.registerDriver(new StubDriver());
+            registered = true;
+        }
+    }
+
+    // points DatabaseConfig at stub connections, for code that begins and commits
+    // transactions around fake DAOs
+    public static synchronized void useForDatabaseConfig() throws SQLException {
+        register();
+        if (!URL.equals(DatabaseConfig.url)) {
+            DatabaseConfig.pool.shutdown();
+            DatabaseConfig.url = URL;
+            DatabaseConfig.pool = new ConnectionPool(URL, "u", "p", 0, 1, 4, 1_000, 0, 8, null);
+        }
+    }
+
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "prepareStatement" -> statement();
+                    case "getAutoCommit", "isValid" -> true;
+                    default -> null;
+                });
+    }
+
+    private static PreparedStatement statement() {
+        int[] fetchSize = new int[1];
+        return (PreparedStatement) Proxy.newProxyInstance(StubDriver.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "setFetchSize" -> {
+                        fetchSize[0] = (Integer) args[0];
+                        yield null;
+                    }
+                    case "getFetchSize" -> fetchSize[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    public boolean acceptsURL(String url) { return URL.equals(url); }
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+    public int getMajorVersion() { return 1; }
+    public int getMinorVersion() { return 0; }
+    public boolean jdbcCompliant() { return false; }
+    public Logger getParentLogger() { return Logger.getGlobal(); }
+}
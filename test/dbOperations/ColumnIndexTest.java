@@ -0,0 +1,51 @@
+package dbOperations;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import static testing.Assert.*;
+
+public class ColumnIndexTest {
+
+    // a result that only answers the metadata calls ColumnIndex makes
+    private static ResultSet result(String... labels) {
+        ResultSetMetaData meta = (ResultSetMetaData) Proxy.newProxyInstance(
+                ColumnIndexTest.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getColumnCount" -> labels.length;
+                    case "getColumnLabel" -> labels[(Integer) args[0] - 1];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return (ResultSet) Proxy.newProxyInstance(
+                ColumnIndexTest.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getMetaData")) {
+                        return meta;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    public static void testSameShapeSharesTheIndex() throws SQLException {
+        String sql = "SELECT * FROM same_shape";
+        ColumnIndex first = ColumnIndex.of(sql, result("id", "name"));
+        isTrue(first == ColumnIndex.of(sql, result("id", "name")), "cached index reused");
+        equal(2, first.get("name"), "position of name");
+    }
+
+    public static void testChangedShapeGetsAFreshIndex() throws SQLException {
+        String sql = "SELECT * FROM changed_shape";
+        ColumnIndex before = ColumnIndex.of(sql, result("id", "name"));
+        ColumnIndex after = ColumnIndex.of(sql, result("id", "created_at", "name"));
+        isTrue(before != after, "stale index replaced");
+        equal(3, after.get("name"), "position of name after the new column");
+        fails(SQLException.class, () -> before.get("created_at"), "old index lacks the new column");
+    }
+
+    public static void testRepeatedLabelResolvesToTheFirstColumn() throws SQLException {
+        ColumnIndex index = ColumnIndex.of("SELECT a.id, b.id", result("id", "id"));
+        equal(1, index.get("id"), "first id");
+    }
+}
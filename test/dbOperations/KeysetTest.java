@@ -0,0 +1,52 @@
+package dbOperations;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static testing.Assert.*;
+
+public class KeysetTest {
+
+    private static final Keyset HISTORY = new Keyset().desc("t.transactions_id");
+
+    public static void testEveryKeyTypeRoundTrips() throws SQLException {
+        Keyset keyset = new Keyset().asc("a").asc("b").asc("c").asc("d").asc("e").asc("f").asc("g");
+        Timestamp ts = Timestamp.valueOf("2026-01-02 03:04:05.123456789");
+        Object[] key = {42, 1L << 40, new BigDecimal("1234.50"), "RELIANCE", true, ts,
+                LocalDateTime.of(2026, 1, 2, 3, 4, 5)};
+
+        Object[] back = keyset.parse(keyset.token(key));
+        equal(key.length, back.length, "key length");
+        for (int i = 0; i < key.length; i++) {
+            equal(key[i], back[i], "key[" + i + "]");
+        }
+        equal(ts.getNanos(), ((Timestamp) back[5]).getNanos(), "timestamp nanos");
+    }
+
+    public static void testTokenIsUrlSafe() throws SQLException {
+        String token = HISTORY.token(new Object[]{Integer.MAX_VALUE});
+        isTrue(token.matches("[A-Za-z0-9_-]+"), "url safe, unpadded: " + token);
+    }
+
+    public static void testTokenOfAnotherOrderIsRejected() throws SQLException {
+        String token = new Keyset().asc("t.transactions_id").token(new Object[]{7});
+        fails(SQLException.class, () -> HISTORY.parse(token), "token from an ascending keyset");
+    }
+
+    public static void testGarbageTokenIsRejected() {
+        fails(SQLException.class, () -> HISTORY.parse("not a token!"), "non base64 token");
+        fails(SQLException.class, () -> HISTORY.parse("AAAA"), "truncated token");
+    }
+
+    public static void testUnsupportedKeyTypeIsRejected() {
+        fails(SQLException.class, () -> HISTORY.token(new Object[]{null}), "NULL key");
+    }
+
+    // a UNION is sorted by its result labels, not by the table qualified columns
+    public static void testOuterOrderUsesLabels() {
+        Keyset keyset = new Keyset().desc("t.transactions_id").asc("price");
+        equal("transactions_id DESC, price ASC", keyset.toOuterOrderBySQL(), "outer order");
+    }
+}
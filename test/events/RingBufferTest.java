@@ -0,0 +1,81 @@
+package events;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static testing.Assert.*;
+
+public class RingBufferTest {
+
+    private static RingBuffer ring(long maxWaitNanos, Sequence consumer) {
+        RingBuffer ring = new RingBuffer("test", 4, WaitStrategy.busySpin(), maxWaitNanos);
+        ring.addGatingSequence(consumer);
+        return ring;
+    }
+
+    private static void fill(RingBuffer ring, int events) {
+        for (int i = 0; i < events; i++) {
+            ring.publish(ring.next());
+        }
+    }
+
+    public static void testFullRingDropsAfterTheWait() {
+        Sequence consumer = new Sequence(-1);
+        RingBuffer ring = ring(1_000_000, consumer);
+        fill(ring, 4);
+
+        long started = System.nanoTime();
+        equal(-1L, ring.next(), "claim on a full ring");
+        isTrue(System.nanoTime() - started < 1_000_000_000L, "wait is bounded");
+        equal(-1L, ring.next(), "still full");
+        equal(2L, ring.getDropped(), "dropped");
+
+        consumer.set(0);
+        equal(4L, ring.next(), "claim once the consumer moved on");
+        equal(2, ring.getMissedBefore(), "gap reported on the next slot");
+        consumer.set(1);
+        equal(5L, ring.next(), "next claim");
+        equal(0, ring.getMissedBefore(), "no gap");
+    }
+
+    public static void testConsumerThatCatchesUpInTimeMissesNothing() throws InterruptedException {
+        Sequence consumer = new Sequence(-1);
+        RingBuffer ring = ring(2_000_000_000L, consumer);
+        fill(ring, 4);
+
+        Thread slow = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                return;
+            }
+            consumer.set(0);
+        });
+        slow.start();
+        equal(4L, ring.next(), "claim after waiting");
+        equal(0L, ring.getDropped(), "dropped");
+        slow.join();
+    }
+
+    public static void testConsumersOfOneKindDoNotHoldBackTheOther() {
+        EventBus bus = new EventBus(1, 4, WaitStrategy.busySpin(), 2_000_000_000L, 1_000_000);
+        AtomicInteger seen = new AtomicInteger();
+        AtomicInteger missed = new AtomicInteger();
+        bus.addConsumer("counter", (event, endOfBatch) -> {
+            seen.incrementAndGet();
+            missed.addAndGet(event.getMissedBefore());
+        });
+        bus.addLossyConsumer("stuck", (event, endOfBatch) -> Thread.sleep(Long.MAX_VALUE));
+        bus.start();
+        for (int i = 0; i < 20; i++) {
+            bus.publish(0, MarketEvent.Type.TRADE, i, 0, 1, 1, 1, true, 1, 100, 2, 2, 0, 0);
+        }
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (seen.get() < 20 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        equal(20, seen.get(), "consumer saw every event");
+        equal(0, missed.get(), "no gaps reported");
+        equal(0L, bus.getDropped(), "nothing dropped for it");
+        isTrue(bus.getLossyDropped() > 0, "stuck best-effort consumer lost events");
+    }
+}
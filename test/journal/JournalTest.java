@@ -0,0 +1,146 @@
+package journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static testing.Assert.*;
+
+public class JournalTest {
+
+    private static final int RECORD_SIZE = 8 + JournalEvent.PAYLOAD_SIZE;
+    // room for three records; the fourth rolls to a new segment
+    private static final int SEGMENT_SIZE = 4 * RECORD_SIZE;
+
+    private static Journal open(Path dir) throws IOException {
+        return new Journal(dir, SEGMENT_SIZE, 1, 60_000);
+    }
+
+    private static void append(Journal journal, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            journal.append(JournalEvent.accepted(100 + i, 7, 1, i % 2 == 0, 10 + i, 9_000 + i));
+        }
+    }
+
+    private static List<Long> replay(Journal journal, long after) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        journal.replay(after, e -> sequences.add(e.getSequence()));
+        return sequences;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.journal")) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    // overwrites bytes of a closed segment in place
+    private static void overwrite(Path segment, int offset, byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        for (Path p : segments(dir)) {
+            Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    public static void testReplayAfterReopen() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (Journal journal = open(dir)) {
+            append(journal, 2);
+        }
+        try (Journal journal = open(dir)) {
+            equal(2L, journal.getLastSequence(), "last sequence recovered");
+            List<JournalEvent> events = new ArrayList<>();
+            journal.replay(1, events::add);
+            equal(1, events.size(), "events after 1");
+            JournalEvent e = events.get(0);
+            equal(2L, e.getSequence(), "sequence");
+            equal(JournalEvent.Type.ORDER_ACCEPTED, e.getType(), "type");
+            equal(101, e.getOrderId(), "order id");
+            equal(false, e.isBuy(), "side");
+            equal(11, e.getQuantity(), "quantity");
+            equal(9_001L, e.getPrice(), "price");
+        }
+        delete(dir);
+    }
+
+    // a flipped payload byte fails the crc: replay ends before it and the next append
+    // takes its place
+    public static void testBadCrcEndsReplay() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (Journal journal = open(dir)) {
+            append(journal, 3);
+        }
+        overwrite(segments(dir).get(0), RECORD_SIZE + 8 + 20, new byte[]{(byte) 0xFF});
+        try (Journal journal = open(dir)) {
+            equal(1L, journal.getLastSequence(), "last intact sequence");
+            equal(List.of(1L), replay(journal, 0), "replayed");
+            append(journal, 1);
+        }
+        try (Journal journal = open(dir)) {
+            equal(List.of(1L, 2L), replay(journal, 0), "torn record replaced");
+        }
+        delete(dir);
+    }
+
+    // header written, payload never made it to disk
+    public static void testTornTailIsDropped() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (Journal journal = open(dir)) {
+            append(journal, 2);
+        }
+        overwrite(segments(dir).get(0), RECORD_SIZE + 8, new byte[JournalEvent.PAYLOAD_SIZE]);
+        try (Journal journal = open(dir)) {
+            equal(1L, journal.getLastSequence(), "last intact sequence");
+            equal(List.of(1L), replay(journal, 0), "replayed");
+        }
+        delete(dir);
+    }
+
+    public static void testSegmentsRollAndReplayAcrossThem() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (Journal journal = open(dir)) {
+            append(journal, 7);
+            equal(3, segments(dir).size(), "segments of three records");
+            equal(List.of(5L, 6L, 7L), replay(journal, 4), "replay from the middle segment");
+        }
+        try (Journal journal = open(dir)) {
+            equal(7L, journal.getLastSequence(), "last sequence from the newest segment");
+            append(journal, 1);
+            equal(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L), replay(journal, 0), "all");
+        }
+        delete(dir);
+    }
+
+    // a segment goes only once every event in it is at or below the sequence; the
+    // segment being written never goes
+    public static void testDeleteSegmentsBefore() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        try (Journal journal = open(dir)) {
+            append(journal, 7);
+
+            journal.deleteSegmentsBefore(5);
+            equal(2, segments(dir).size(), "first segment deleted");
+            equal(List.of(4L, 5L, 6L, 7L), replay(journal, 0), "left");
+
+            journal.deleteSegmentsBefore(100);
+            equal(1, segments(dir).size(), "open segment kept");
+            equal(List.of(7L), replay(journal, 0), "left");
+            append(journal, 1);
+            equal(8L, journal.getLastSequence(), "sequence continues");
+        }
+        delete(dir);
+    }
+}
@@ -0,0 +1,48 @@
+package journal;
+
+import java.util.List;
+
+import static testing.Assert.*;
+
+public class WatermarkTest {
+
+    public static void testInOrderBatchesMoveTheMark() {
+        Watermark w = new Watermark(0, List.of());
+        w.add(new long[]{1, 2});
+        w.add(new long[]{3});
+        equal(3L, w.get(), "mark");
+        isTrue(w.getAhead().isEmpty(), "nothing ahead");
+    }
+
+    public static void testOvertakingBatchWaitsForTheGap() {
+        // lane A journaled 10 and 12, lane B 11; B finished first
+        Watermark w = new Watermark(9, List.of());
+        w.add(new long[]{11});
+        equal(9L, w.get(), "mark stays below the unwritten 10");
+        equal(List.of(11L), List.copyOf(w.getAhead()), "ahead");
+
+        w.add(new long[]{10, 12});
+        equal(12L, w.get(), "gap filled");
+        isTrue(w.getAhead().isEmpty(), "nothing ahead");
+    }
+
+    public static void testMarkNeverMovesBackwards() {
+        Watermark w = new Watermark(20, List.of());
+        w.add(new long[]{15, 18});
+        equal(20L, w.get(), "older sequences ignored");
+        isTrue(w.getAhead().isEmpty(), "nothing ahead");
+    }
+
+    public static void testWithLeavesTheStateAlone() {
+        Watermark w = new Watermark(4, List.of(6L));
+        equal(6L, w.with(new long[]{5}), "mark after the batch");
+        equal(4L, w.get(), "unchanged until add");
+        equal(List.of(6L), List.copyOf(w.getAhead()), "ahead unchanged");
+    }
+
+    public static void testRecoveredAheadThatIsContiguousIsAbsorbed() {
+        Watermark w = new Watermark(4, List.of(5L, 6L, 8L, 3L));
+        equal(6L, w.get(), "mark");
+        equal(List.of(8L), List.copyOf(w.getAhead()), "ahead");
+    }
+}
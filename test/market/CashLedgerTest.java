@@ -0,0 +1,112 @@
+package market;
+
+import account.TradingAccount;
+import dao.TradingAccountDAO;
+
+import java.util.*;
+
+import static testing.Assert.*;
+
+public class CashLedgerTest {
+
+    // trading_accounts in a map: balance and reserved_balance per user
+    private static class FakeAccounts extends TradingAccountDAO {
+        final Map<Integer, long[]> rows = new HashMap<>();
+
+        @Override
+        public TradingAccount findByUserId(int userId) {
+            long[] row = rows.get(userId);
+            if (row == null) {
+                return null;
+            }
+            TradingAccount account = new TradingAccount();
+            account.setUserId(userId);
+            account.setBalance(row[0]);
+            account.setReservedBalance(row[1]);
+            return account;
+        }
+
+        @Override
+        public List<TradingAccount> findAll() {
+            List<TradingAccount> all = new ArrayList<>();
+            for (int userId : rows.keySet()) {
+                all.add(findByUserId(userId));
+            }
+            return all;
+        }
+
+        @Override
+        public boolean credit(int userId, long amount) {
+            long[] row = rows.get(userId);
+            if (row == null) {
+                return false;
+            }
+            row[0] += amount;
+            return true;
+        }
+
+        @Override
+        public void applyDeltas(Map<Integer, long[]> deltas) {
+            deltas.forEach((userId, d) -> {
+                rows.get(userId)[0] += d[0];
+                rows.get(userId)[1] += d[1];
+            });
+        }
+    }
+
+    // an account opened after startup is first read by the deposit itself
+    public static void testDepositOnAccountNotInMemory() throws Exception {
+        FakeAccounts dao = new FakeAccounts();
+        CashLedger ledger = new CashLedger(dao);
+        ledger.load(Map.of());
+        dao.rows.put(7, new long[]{1_000, 0});
+
+        isTrue(ledger.deposit(7, 500), "deposit accepted");
+        equal(1_500L, ledger.get(7).getBalance(), "balance in memory");
+        equal(1_500L, dao.rows.get(7)[0], "balance in MySQL");
+    }
+
+    public static void testDepositOnLoadedAccount() throws Exception {
+        FakeAccounts dao = new FakeAccounts();
+        dao.rows.put(7, new long[]{1_000, 0});
+        CashLedger ledger = new CashLedger(dao);
+        ledger.load(Map.of());
+
+        isTrue(ledger.deposit(7, 500), "deposit accepted");
+        equal(1_500L, ledger.get(7).getBalance(), "balance in memory");
+    }
+
+    public static void testDepositWithoutAccount() throws Exception {
+        CashLedger ledger = new CashLedger(new FakeAccounts());
+        isTrue(!ledger.deposit(9, 500), "no account, no deposit");
+    }
+
+    public static void testReserveAndRelease() throws Exception {
+        FakeAccounts dao = new FakeAccounts();
+        dao.rows.put(7, new long[]{1_000, 0});
+        CashLedger ledger = new CashLedger(dao);
+        ledger.load(Map.of());
+
+        isTrue(ledger.tryReserve(7, 600), "reserve within balance");
+        isTrue(!ledger.tryReserve(7, 600), "reserve beyond what is left");
+        equal(400L, ledger.get(7).getBalance(), "available");
+        equal(600L, ledger.get(7).getReservedBalance(), "reserved");
+
+        isTrue(ledger.tryReserve(7, -200), "release");
+        equal(600L, ledger.get(7).getBalance(), "available after release");
+        equal(400L, ledger.get(7).getReservedBalance(), "reserved after release");
+    }
+
+    // holds lost in a crash are rebuilt from the open orders
+    public static void testLoadCorrectsHolds() throws Exception {
+        FakeAccounts dao = new FakeAccounts();
+        dao.rows.put(7, new long[]{1_000, 0});
+        CashLedger ledger = new CashLedger(dao);
+        ledger.load(Map.of(7, 300L));
+
+        equal(700L, ledger.get(7).getBalance(), "available");
+        equal(300L, ledger.get(7).getReservedBalance(), "reserved");
+        equal(700L, dao.rows.get(7)[0], "balance in MySQL");
+        equal(300L, dao.rows.get(7)[1], "reserved_balance in MySQL");
+    }
+}
@@ -0,0 +1,138 @@
+package market;
+
+import dao.*;
+import dbConnection.StubDriver;
+import journal.Journal;
+import journal.JournalEvent;
+import trading.Order;
+
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.util.*;
+
+import static testing.Assert.*;
+
+public class JournalPersisterTest {
+
+    // journal_checkpoint and journal_applied in memory
+    private static class FakeCheckpoints extends JournalCheckpointDAO {
+        long sequence;
+        int lastOrderId;
+        final SortedSet<Long> applied = new TreeSet<>();
+        boolean failNextSave;
+
+        @Override
+        public void save(long lastSequence, int lastOrderId) throws SQLException {
+            if (failNextSave) {
+                failNextSave = false;
+                throw new SQLException("checkpoint write failed");
+            }
+            this.sequence = lastSequence;
+            this.lastOrderId = lastOrderId;
+        }
+
+        @Override
+        public void saveApplied(Collection<Long> sequences) {
+            applied.addAll(sequences);
+        }
+
+        @Override
+        public void deleteApplied(long upToSequence) {
+            applied.headSet(upToSequence + 1).clear();
+        }
+    }
+
+    // stop events touch no order rows
+    private static class NoOrders extends OrderDAO {
+        @Override
+        public void insertOrders(Collection<Order> orders) { }
+
+        @Override
+        public int cancelOrders(Collection<Integer> orderIds) { return 0; }
+    }
+
+    private static JournalPersister persister(FakeCheckpoints checkpoints, long persisted,
+                                              Collection<Long> applied) throws SQLException {
+        StubDriver.useForDatabaseConfig();
+        Settlement settlement = new Settlement(new UserDAO(), new TradingAccountDAO(), new StockHoldingDAO(),
+                new NoOrders(), new TransactionDAO());
+        return new JournalPersister(new NoOrders(), checkpoints, settlement,
+                new CashLedger(new TradingAccountDAO()), new HoldingLedger(new StockHoldingDAO()),
+                persisted, applied, 0);
+    }
+
+    // events numbered 1..count by a throwaway journal
+    private static List<JournalEvent> journaled(int count) throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        List<JournalEvent> events = new ArrayList<>();
+        try (Journal journal = new Journal(dir, 1024 * 1024, 1000, 60_000)) {
+            for (int i = 1; i <= count; i++) {
+                JournalEvent e = JournalEvent.stopAccepted(i, 7, 1, false, 10, 9_000, 0);
+                journal.append(e);
+                events.add(e);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+        return events;
+    }
+
+    // lanes finish out of sequence order: the checkpoint only covers what is contiguous
+    public static void testCheckpointWaitsForTheGap() throws Exception {
+        List<JournalEvent> e = journaled(3);
+        FakeCheckpoints checkpoints = new FakeCheckpoints();
+        JournalPersister persister = persister(checkpoints, 0, List.of());
+
+        persister.persist(List.of(e.get(1)));
+        equal(0L, checkpoints.sequence, "checkpoint below the unwritten 1");
+        equal(0L, persister.getPersistedSequence(), "persisted");
+        equal(List.of(2L), List.copyOf(checkpoints.applied), "recorded as applied");
+        equal(2, checkpoints.lastOrderId, "order id saved with the batch");
+
+        persister.persist(List.of(e.get(0)));
+        equal(2L, checkpoints.sequence, "gap filled");
+        equal(2L, persister.getPersistedSequence(), "persisted");
+        isTrue(checkpoints.applied.isEmpty(), "applied rows covered by the checkpoint");
+
+        persister.persist(List.of(e.get(2)));
+        equal(3L, checkpoints.sequence, "in order");
+        equal(3, checkpoints.lastOrderId, "last order id");
+        persister.shutdown();
+    }
+
+    // after a restart the applied rows from before the crash still count
+    public static void testAppliedRowsFromRecovery() throws Exception {
+        List<JournalEvent> e = journaled(3);
+        FakeCheckpoints checkpoints = new FakeCheckpoints();
+        checkpoints.sequence = 1;
+        checkpoints.applied.add(3L);
+        JournalPersister persister = persister(checkpoints, 1, List.of(3L));
+
+        persister.persist(List.of(e.get(1)));
+        equal(3L, checkpoints.sequence, "checkpoint jumps over the applied 3");
+        equal(3L, persister.getPersistedSequence(), "persisted");
+        isTrue(checkpoints.applied.isEmpty(), "applied rows covered by the checkpoint");
+        persister.shutdown();
+    }
+
+    public static void testFailedBatchLeavesTheCheckpoint() throws Exception {
+        List<JournalEvent> e = journaled(2);
+        FakeCheckpoints checkpoints = new FakeCheckpoints();
+        JournalPersister persister = persister(checkpoints, 0, List.of());
+
+        checkpoints.failNextSave = true;
+        fails(SQLException.class, () -> persister.persist(List.of(e.get(0))), "checkpoint write");
+        equal(0L, persister.getPersistedSequence(), "rolled back batch not counted");
+
+        persister.persist(List.of(e.get(1)));
+        equal(0L, persister.getPersistedSequence(), "1 still missing");
+        persister.persist(List.of(e.get(0)));
+        equal(2L, persister.getPersistedSequence(), "retried batch fills the gap");
+        equal(2L, checkpoints.sequence, "checkpoint");
+        persister.shutdown();
+    }
+}
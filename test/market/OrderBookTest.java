@@ -0,0 +1,114 @@
+package market;
+
+import trading.Order;
+
+import java.util.List;
+
+import static testing.Assert.*;
+
+public class OrderBookTest {
+
+    private static int nextId = 1;
+
+    private static Order order(int userId, boolean isBuy, int quantity, long price) {
+        Order order = new Order(userId, 1, quantity, price, isBuy);
+        order.setOrderId(nextId++);
+        return order;
+    }
+
+    public static void testIncomingBuyTradesAtTheAsk() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, false, 10, 9_000));
+        Order buy = order(2, true, 10, 10_000);
+        List<Fill> fills = book.match(buy);
+        equal(1, fills.size(), "fills");
+        equal(9_000L, fills.get(0).getPrice(), "trade price");
+        equal(10_000L, fills.get(0).getBuyPrice(), "buyer's hold price");
+    }
+
+    // every fill at its own ask; the buyer's hold stays at the limit so settlement can
+    // refund the difference
+    public static void testIncomingBuySweepsAsksAtEachLevel() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, false, 4, 9_000));
+        book.add(order(1, false, 4, 9_200));
+        List<Fill> fills = book.match(order(2, true, 6, 10_000));
+        equal(2, fills.size(), "fills");
+        equal(9_000L, fills.get(0).getPrice(), "first level");
+        equal(9_200L, fills.get(1).getPrice(), "second level");
+        equal(2, fills.get(1).getQuantity(), "second fill quantity");
+        equal(10_000L, fills.get(1).getBuyPrice(), "hold price");
+        equal(9_200L, book.getBestAsk().getPrice(), "rest of the second ask stays");
+    }
+
+    public static void testIncomingSellTradesAtTheBid() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, true, 10, 10_000));
+        List<Fill> fills = book.match(order(2, false, 10, 9_500));
+        equal(10_000L, fills.get(0).getPrice(), "trade price");
+    }
+
+    // a fired stop-loss is released as a sell priced at 0 (see MarketPlace.release)
+    public static void testTriggeredMarketStopFillsAtTheBid() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, true, 5, 10_000));
+        book.add(order(3, true, 5, 9_900));
+        StopOrder stop = new StopOrder(nextId++, 2, 1, false, 8, 10_500, 0);
+        Order released = new Order(stop.getUserId(), stop.getStockId(), stop.getQuantity(),
+                stop.getLimitPrice(), stop.isBuy());
+        released.setOrderId(stop.getOrderId());
+
+        List<Fill> fills = book.match(released);
+        equal(2, fills.size(), "fills");
+        equal(10_000L, fills.get(0).getPrice(), "first fill at the best bid");
+        equal(5, fills.get(0).getQuantity(), "first fill quantity");
+        equal(9_900L, fills.get(1).getPrice(), "second fill at the next bid");
+        equal(3, fills.get(1).getQuantity(), "second fill quantity");
+        equal(0, released.getQuantity(), "stop fully filled");
+        equal(9_900L, book.getBestBid().getPrice(), "rest of the second bid stays");
+    }
+
+    public static void testPriceThenTimePriority() {
+        OrderBook book = new OrderBook(1);
+        Order first = order(1, false, 5, 10_000);
+        Order second = order(3, false, 5, 10_000);
+        Order better = order(4, false, 5, 9_000);
+        book.add(first);
+        book.add(second);
+        book.add(better);
+        List<Fill> fills = book.match(order(2, true, 8, 10_000));
+        equal(better.getOrderId(), fills.get(0).getSellOrderId(), "best price first");
+        equal(first.getOrderId(), fills.get(1).getSellOrderId(), "then the older order");
+        equal(3, fills.get(1).getQuantity(), "partial fill");
+        equal(2, first.getQuantity(), "resting remainder");
+        equal(5, second.getQuantity(), "younger order untouched");
+    }
+
+    public static void testNoCrossNoFill() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, false, 5, 10_500));
+        Order buy = order(2, true, 5, 10_000);
+        isTrue(book.match(buy).isEmpty(), "no fill below the ask");
+        equal(5, buy.getQuantity(), "incoming untouched");
+    }
+
+    public static void testSelfTradeSkipped() {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, false, 5, 10_000));
+        Order other = order(3, false, 5, 10_000);
+        book.add(other);
+        List<Fill> fills = book.match(order(1, true, 5, 10_000));
+        equal(1, fills.size(), "fills");
+        equal(other.getOrderId(), fills.get(0).getSellOrderId(), "own order skipped");
+    }
+
+    // stops check this on the lane instead of the ticker
+    public static void testLastTradePriceFollowsFills() {
+        OrderBook book = new OrderBook(1);
+        equal(0L, book.getLastTradePrice(), "no trade yet");
+        book.add(order(1, true, 5, 10_000));
+        book.add(order(3, true, 5, 9_900));
+        book.match(order(2, false, 8, 9_000));
+        equal(9_900L, book.getLastTradePrice(), "price of the last fill");
+    }
+}
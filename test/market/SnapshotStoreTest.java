@@ -0,0 +1,121 @@
+package market;
+
+import trading.Order;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static testing.Assert.*;
+
+public class SnapshotStoreTest {
+
+    private static Order order(int orderId, int userId, boolean isBuy, int quantity, long price) {
+        Order order = new Order(userId, 1, quantity, price, isBuy);
+        order.setOrderId(orderId);
+        return order;
+    }
+
+    private static byte[] encode(SnapshotStore store, long sequence) {
+        OrderBook book = new OrderBook(1);
+        book.add(order(1, 7, true, 10, 9_000));
+        book.add(order(2, 8, true, 5, 9_500));
+        book.add(order(3, 9, false, 4, 10_000));
+        StopBook stops = new StopBook(1);
+        stops.add(new StopOrder(4, 7, 1, false, 3, 8_500, 0));
+        return store.encode(sequence, 4, List.of(book), List.of(stops));
+    }
+
+    private static List<Path> files(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void flipByte(Path file, int offset) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, offset);
+            b.put(0, (byte) ~b.get(0));
+            ch.write(b.rewind(), offset);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        for (Path p : files(dir)) {
+            Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    public static void testWriteAndLoad() throws Exception {
+        Path dir = Files.createTempDirectory("snapshots");
+        SnapshotStore store = new SnapshotStore(dir);
+        store.write(42, encode(store, 42));
+
+        SnapshotStore.Snapshot s = store.loadLatest();
+        equal(42L, s.getSequence(), "sequence");
+        equal(4, s.getLastOrderId(), "last order id");
+        equal(3, s.getOrderCount(), "orders");
+
+        OrderBook book = s.getBooks().get(1);
+        equal(9_500L, book.getBestBid().getPrice(), "best bid");
+        equal(10_000L, book.getBestAsk().getPrice(), "best ask");
+        List<Integer> ids = new ArrayList<>();
+        book.forEachOrder(o -> ids.add(o.getOrderId()));
+        equal(3, ids.size(), "orders in the book");
+        Order bid = book.getOrder(2);
+        equal(8, bid.getUserId(), "user");
+        equal(5, bid.getQuantity(), "quantity");
+        isTrue(bid.isBuy(), "side");
+
+        equal(1, s.getStops().size(), "stops");
+        StopOrder stop = s.getStops().get(0);
+        equal(4, stop.getOrderId(), "stop id");
+        equal(8_500L, stop.getTriggerPrice(), "trigger");
+        equal(3, stop.getQuantity(), "stop quantity");
+        delete(dir);
+    }
+
+    public static void testDamagedSnapshotFallsBackToOlder() throws Exception {
+        Path dir = Files.createTempDirectory("snapshots");
+        SnapshotStore store = new SnapshotStore(dir);
+        store.write(10, encode(store, 10));
+        store.write(20, encode(store, 20));
+        flipByte(files(dir).get(1), 30);
+
+        equal(10L, store.loadLatest().getSequence(), "older intact snapshot");
+        delete(dir);
+    }
+
+    public static void testTruncatedSnapshotIsSkipped() throws Exception {
+        Path dir = Files.createTempDirectory("snapshots");
+        SnapshotStore store = new SnapshotStore(dir);
+        store.write(10, encode(store, 10));
+        try (FileChannel ch = FileChannel.open(files(dir).get(0), StandardOpenOption.WRITE)) {
+            ch.truncate(20);
+        }
+
+        equal(null, store.loadLatest(), "nothing to load");
+        delete(dir);
+    }
+
+    public static void testKeepsTheNewestTwo() throws Exception {
+        Path dir = Files.createTempDirectory("snapshots");
+        SnapshotStore store = new SnapshotStore(dir);
+        store.write(10, encode(store, 10));
+        store.write(20, encode(store, 20));
+        store.write(30, encode(store, 30));
+
+        equal(2, files(dir).size(), "snapshots kept");
+        equal(30L, store.loadLatest().getSequence(), "newest");
+        delete(dir);
+    }
+}
@@ -0,0 +1,66 @@
+package market;
+
+import java.util.List;
+
+import static testing.Assert.*;
+
+public class StopBookTest {
+
+    private static StopOrder stop(int id, boolean isBuy, long trigger, long limit) {
+        return new StopOrder(id, 1, 1, isBuy, 10, trigger, limit);
+    }
+
+    public static void testSellStopsFireAtOrBelowTheLow() {
+        StopBook book = new StopBook(1);
+        book.add(stop(1, false, 9_000, 0));
+        book.add(stop(2, false, 9_500, 0));
+        book.add(stop(3, false, 8_000, 0));
+
+        List<StopOrder> fired = book.trigger(9_000, 9_800);
+        equal(2, fired.size(), "fired");
+        equal(2, fired.get(0).getOrderId(), "highest trigger first");
+        equal(1, fired.get(1).getOrderId(), "trigger equal to the low fires");
+        equal(1, book.size(), "left resting");
+    }
+
+    public static void testBuyStopsFireAtOrAboveTheHigh() {
+        StopBook book = new StopBook(1);
+        book.add(stop(1, true, 11_000, 11_500));
+        book.add(stop(2, true, 10_500, 11_000));
+        book.add(stop(3, true, 12_000, 12_500));
+
+        List<StopOrder> fired = book.trigger(10_000, 11_000);
+        equal(2, fired.size(), "fired");
+        equal(2, fired.get(0).getOrderId(), "lowest trigger first");
+        equal(1, fired.get(1).getOrderId(), "trigger equal to the high fires");
+    }
+
+    public static void testSamePriceFiresOldestFirstAndOnlyOnce() {
+        StopBook book = new StopBook(1);
+        book.add(stop(1, false, 9_000, 0));
+        book.add(stop(2, false, 9_000, 0));
+
+        List<StopOrder> fired = book.trigger(8_500, 8_500);
+        equal(1, fired.get(0).getOrderId(), "oldest first");
+        equal(2, fired.get(1).getOrderId(), "then the next");
+        isTrue(book.trigger(8_000, 8_000).isEmpty(), "a fired stop is gone");
+        equal(0, book.size(), "empty");
+    }
+
+    public static void testCancelledStopNeverFires() {
+        StopBook book = new StopBook(1);
+        book.add(stop(1, false, 9_000, 0));
+        book.add(stop(2, false, 9_000, 0));
+        equal(1, book.remove(1).getOrderId(), "removed");
+        List<StopOrder> fired = book.trigger(9_000, 9_000);
+        equal(1, fired.size(), "fired");
+        equal(2, fired.get(0).getOrderId(), "only the one left");
+    }
+
+    public static void testMarketStopHoldsShares() {
+        StopOrder stop = stop(1, false, 9_000, 0);
+        isTrue(stop.isMarket(), "limit 0 is a market stop");
+        equal(10L, stop.getHold(), "sell stop holds its shares");
+        equal(10L * 11_000, stop(2, true, 10_000, 11_000).getHold(), "buy stop holds cash at its limit");
+    }
+}
@@ -0,0 +1,38 @@
+package testing;
+
+import java.util.Objects;
+
+// the few checks the tests need; a failure throws and names what differed
+public final class Assert {
+
+    private Assert() {
+    }
+
+    public static void equal(Object expected, Object actual, String what) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    public static void isTrue(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    public static void fails(Class<? extends Throwable> type, ThrowingRunnable action, String what) {
+        try {
+            action.run();
+        } catch (Throwable t) {
+            if (type.isInstance(t)) {
+                return;
+            }
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + " but got " + t, t);
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName() + ", nothing thrown");
+    }
+
+    public interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,47 @@
+package testing;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+// runs every public static no-argument test* method of the listed classes; exits
+// non-zero if any fails
+public class RunAll {
+
+    private static final List<String> CLASSES = List.of(
+            "market.OrderBookTest",
+            "market.CashLedgerTest",
+            "market.StopBookTest",
+            "market.SnapshotStoreTest",
+            "market.JournalPersisterTest",
+            "dbConnection.ConnectionPoolTest",
+            "dbOperations.KeysetTest",
+            "dbOperations.ColumnIndexTest",
+            "events.RingBufferTest",
+            "journal.WatermarkTest",
+            "journal.JournalTest"
+    );
+
+    public static void main(String[] args) throws Exception {
+        int passed = 0, failed = 0;
+        for (String name : CLASSES) {
+            for (Method m : Class.forName(name).getDeclaredMethods()) {
+                if (!m.getName().startsWith("test") || m.getParameterCount() != 0
+                        || !Modifier.isStatic(m.getModifiers())) {
+                    continue;
+                }
+                try {
+                    m.invoke(null);
+                    passed++;
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    failed++;
+                    System.out.println("FAIL " + name + "." + m.getName() + ": " + e.getCause());
+                }
+            }
+        }
+        System.out.println(passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}